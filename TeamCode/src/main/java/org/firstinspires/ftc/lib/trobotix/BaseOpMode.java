@@ -4,12 +4,19 @@
 package org.firstinspires.ftc.lib.trobotix;
 
 import com.outoftheboxrobotics.photoncore.Photon;
-import com.qualcomm.hardware.lynx.LynxModule;
-import com.qualcomm.hardware.lynx.LynxVoltageSensor;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 import java.util.ArrayList;
 import java.util.HashMap;
-import org.firstinspires.ftc.lib.trobotix.hardware.Encoder;
+import org.firstinspires.ftc.lib.trobotix.hardware.BusVoltage;
+import org.firstinspires.ftc.lib.trobotix.hardware.DeviceRegistry;
+import org.firstinspires.ftc.lib.trobotix.hardware.GamepadSnapshot;
+import org.firstinspires.ftc.lib.trobotix.hardware.HardwareInputs;
+import org.firstinspires.ftc.lib.trobotix.hardware.HardwareIoThread;
+import org.firstinspires.ftc.lib.trobotix.hardware.HardwareOutputs;
+import org.firstinspires.ftc.lib.trobotix.hardware.PowerBudget;
+import org.firstinspires.ftc.lib.trobotix.logging.AsyncLogReceiver;
+import org.firstinspires.ftc.lib.trobotix.loop.FixedPeriodLoop;
+import org.firstinspires.ftc.lib.trobotix.loop.LoopProfiler;
 import org.firstinspires.ftc.lib.wpilib.command.CommandScheduler;
 import org.firstinspires.ftc.lib.wpilib.command.button.CommandXboxController;
 import org.firstinspires.ftc.lib.wpilib.command.button.Trigger;
@@ -23,25 +30,51 @@ import org.psilynx.psikit.ftc.PsiKitOpMode;
 @Photon
 public abstract class BaseOpMode extends PsiKitOpMode {
   private final String name;
+  private final FixedPeriodLoop fixedPeriodLoop;
+  private final boolean hardwareIoThread;
 
+  /** Constructs a BaseOpMode whose loop runs as fast as the hardware allows. */
   protected BaseOpMode() {
+    this(0);
+  }
+
+  /**
+   * Constructs a BaseOpMode whose loop runs at a fixed rate.
+   *
+   * @param loopFrequencyHz The rate to run the loop at. If 0 or less, the loop runs as fast as the
+   *     hardware allows.
+   */
+  protected BaseOpMode(double loopFrequencyHz) {
+    this(loopFrequencyHz, false);
+  }
+
+  /**
+   * Constructs a BaseOpMode.
+   *
+   * @param loopFrequencyHz The rate to run the loop at. If 0 or less, the loop runs as fast as the
+   *     hardware allows.
+   * @param hardwareIoThread Whether to do hub I/O on the {@link HardwareIoThread}, so that it
+   *     overlaps with the loop instead of blocking it.
+   */
+  protected BaseOpMode(double loopFrequencyHz, boolean hardwareIoThread) {
     var name = getClass().getName();
     this.name = name.substring(name.lastIndexOf('.') + 1);
+    fixedPeriodLoop = loopFrequencyHz > 0 ? new FixedPeriodLoop(1 / loopFrequencyHz) : null;
+    this.hardwareIoThread = hardwareIoThread;
   }
 
   @Override
   public final void runOpMode() {
     // Pre-user code initialization
-    final var lynxModules = super.hardwareMap.getAll(LynxModule.class);
-    for (var module : lynxModules) {
-      module.setBulkCachingMode(LynxModule.BulkCachingMode.MANUAL);
-    }
-    var voltageSensor = super.hardwareMap.getAll(LynxVoltageSensor.class).iterator().next();
+    HardwareInputs.init(super.hardwareMap);
     activeOpMode = name;
+    activeOpModeId = Trigger.getContextId(name);
     BaseOpMode.hardwareMap = super.hardwareMap;
-    Logger.addDataReceiver(new RLOGServer());
+    // Both receivers run on one writer thread, so that network or SD card stalls don't stall the
+    // loop, and the loop only has to snapshot each frame once.
+    final var logReceiver = new AsyncLogReceiver("Receivers", new RLOGServer(), new RLOGWriter());
+    Logger.addDataReceiver(logReceiver);
     //    Logger.setReplaySource(new RLOGReplay(""));
-    Logger.addDataReceiver(new RLOGWriter());
     Logger.recordMetadata("Active Op Mode", activeOpMode);
     Logger.recordMetadata("Build Date", BuildConstants.BUILD_DATE);
     Logger.recordMetadata("Git Commit Hash", BuildConstants.GIT_SHA);
@@ -59,6 +92,11 @@ public abstract class BaseOpMode extends PsiKitOpMode {
       Logger.periodicBeforeUser();
       double periodicBeforeUserTime = Logger.getTimestamp();
       processHardwareInputs();
+      HardwareInputs.update(System.nanoTime());
+      BusVoltage.reset();
+      BusVoltage.update();
+      busVoltage = BusVoltage.get();
+      captureGamepads();
       Robot.init();
       if (!initializedOpModes.contains(activeOpMode)) {
         initialize();
@@ -72,33 +110,99 @@ public abstract class BaseOpMode extends PsiKitOpMode {
       hook.run();
     }
 
-    double dt = 1;
+    if (fixedPeriodLoop != null) {
+      CommandScheduler.getInstance().setOverrunThreshold(fixedPeriodLoop.getPeriodSeconds());
+      fixedPeriodLoop.reset();
+    }
+    LoopProfiler.reset();
+    // Started after init, as devices can't be registered while it's running.
+    if (hardwareIoThread && !Logger.isReplay()) {
+      HardwareIoThread.start();
+    }
+    double lastInputTimestamp = HardwareInputs.getTimestamp();
+    double lastStartTime = Logger.getTimestamp();
     while (!getPsiKitIsStopRequested()) {
+      long profilerTime = System.nanoTime();
       double startTime = Logger.getTimestamp();
+      // The time between the starts of consecutive loops, including the wait for the next period,
+      // unlike the time spent working in the loop.
+      double dt = startTime - lastStartTime;
+      lastStartTime = startTime;
       Logger.periodicBeforeUser();
       double periodicBeforeUserTime = Logger.getTimestamp();
+      profilerTime = LoopProfiler.record(LoopProfiler.Phase.LOGGING, profilerTime);
       telemetry.addData("Active Op Mode", name);
       telemetry.addData("Current time", startTime);
       //noinspection ConstantValue
       telemetry.addData("Uncommited changes?", BuildConstants.DIRTY == 1 ? "YES" : "No");
       robotEnabled = getPsiKitIsStarted();
       processHardwareInputs();
-      Encoder.recalculateVelocity(dt);
-      busVoltage = voltageSensor.getVoltage();
+      captureGamepads();
+      // Clears the bulk caches and reads every encoder and Pinpoint exactly once, and the voltage
+      // if it's due, or takes the newest frame from the I/O thread.
+      profilerTime = HardwareInputs.update(profilerTime);
+      BusVoltage.update();
+      busVoltage = BusVoltage.get();
+      // Velocities are over the time between when the frames were read, not when the loops ran, as
+      // with the I/O thread the two don't line up, and a loop might not get a new frame at all.
+      double inputTimestamp = HardwareInputs.getTimestamp();
+      if (inputTimestamp > lastInputTimestamp) {
+        DeviceRegistry.updateEncoders(inputTimestamp - lastInputTimestamp);
+        lastInputTimestamp = inputTimestamp;
+      }
+      LoopProfiler.record(LoopProfiler.Phase.ENCODER_VELOCITY, profilerTime);
       CommandScheduler.getInstance().run();
-      dt = Logger.getTimestamp() - startTime;
+      // Every motor and servo set by the commands is written here, once.
+      profilerTime = System.nanoTime();
+      DeviceRegistry.applyMotorOutputs();
+      profilerTime = HardwareOutputs.flush(profilerTime);
+      double workTime = Logger.getTimestamp() - startTime;
       telemetry.update();
-      Logger.periodicAfterUser(dt - periodicBeforeUserTime, periodicBeforeUserTime);
+      profilerTime = LoopProfiler.record(LoopProfiler.Phase.TELEMETRY, profilerTime);
+      Logger.recordOutput("LoopTiming/DtMs", dt * 1E3);
+      if (fixedPeriodLoop != null) {
+        fixedPeriodLoop.log();
+      }
+      DeviceRegistry.log();
+      BusVoltage.log();
+      PowerBudget.log();
+      HardwareOutputs.log();
+      logReceiver.log();
+      LoopProfiler.endLoop();
+      Logger.periodicAfterUser(workTime - periodicBeforeUserTime, periodicBeforeUserTime);
+      // Counted towards the next loop, as this loop's statistics have already been logged.
+      LoopProfiler.record(LoopProfiler.Phase.LOGGING, profilerTime);
+      if (fixedPeriodLoop != null && !Logger.isReplay()) {
+        fixedPeriodLoop.waitForNextPeriod();
+      }
     }
     robotEnabled = false;
     CommandScheduler.getInstance().run();
+    DeviceRegistry.applyMotorOutputs();
+    HardwareOutputs.flush(System.nanoTime());
+    HardwareIoThread.stop();
     activeOpMode = null;
+    activeOpModeId = -1;
     BaseOpMode.hardwareMap = null;
     Logger.end();
   }
 
   protected abstract void initialize();
 
+  private void captureGamepads() {
+    // gamepad1/gamepad2 are read here rather than held onto, as instead of the values inside
+    // Gamepad being mutated, the value of gamepad1/gamepad2 itself is replaced when new data comes
+    // in.
+    //
+    // The behaviour is counter-intuitive, completely undocumented AFAIK, and not immediately
+    // obvious from source-code trawling. From looking at how the values inside Gamepad are marked
+    // volatile you would think that it's mutating and not replacing the whole thing, but nope.
+    // The values inside Gamepad (Ex, left_bumper) should be treated as final even though they're
+    // actually volatile variables.
+    primaryGamepad.capture(gamepad1);
+    secondaryGamepad.capture(gamepad2);
+  }
+
   /**
    * The {@link Trigger} for when this specific OpMode is enabled. Can be safely called multiple
    * times, as it's cached.
@@ -114,13 +218,18 @@ public abstract class BaseOpMode extends PsiKitOpMode {
     resetHooks.add(hook);
   }
 
+  // Static, as bindings made by the first instance of an OpMode outlive it, and must keep seeing
+  // the inputs of later instances.
+  private static final GamepadSnapshot primaryGamepad = new GamepadSnapshot("Gamepad1");
+  private static final GamepadSnapshot secondaryGamepad = new GamepadSnapshot("Gamepad2");
+
   /**
    * A {@link CommandXboxController} that wraps gamepad1 to use the Commands framework.
    *
    * <p>USERS SHOULD NOT USE GAMEPAD1 DIRECTLY, IT WILL NOT UPDATE. USE THIS INSTEAD.
    */
   protected final CommandXboxController primaryController =
-      new CommandXboxController(() -> gamepad1);
+      new CommandXboxController(primaryGamepad);
 
   /**
    * A {@link CommandXboxController} that wraps gamepad2 to use the Commands framework.
@@ -128,7 +237,7 @@ public abstract class BaseOpMode extends PsiKitOpMode {
    * <p>USERS SHOULD NOT USE GAMEPAD2 DIRECTLY, IT WILL NOT UPDATE. USE THIS INSTEAD.
    */
   protected final CommandXboxController secondaryController =
-      new CommandXboxController(() -> gamepad2);
+      new CommandXboxController(secondaryGamepad);
 
   private static final ArrayList<String> initializedOpModes = new ArrayList<>();
   private static final HashMap<String, Trigger> opModeEnableTriggers = new HashMap<>();
@@ -137,6 +246,9 @@ public abstract class BaseOpMode extends PsiKitOpMode {
 
   public static String activeOpMode = null;
 
+  /** The interned {@link Trigger} context ID of {@link #activeOpMode}, or -1 if there isn't one. */
+  public static int activeOpModeId = -1;
+
   public static HardwareMap hardwareMap = null;
 
   public static double timeOffset = 0;
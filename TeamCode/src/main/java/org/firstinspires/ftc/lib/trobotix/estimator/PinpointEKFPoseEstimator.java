@@ -0,0 +1,719 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.estimator;
+
+import java.util.Arrays;
+import java.util.Optional;
+import org.firstinspires.ftc.lib.trobotix.hardware.HardwareInputs;
+import org.firstinspires.ftc.lib.trobotix.hardware.Pinpoint;
+import org.firstinspires.ftc.lib.wpilib.math.MathUtil;
+import org.firstinspires.ftc.lib.wpilib.math.Matrix;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose2d;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Rotation2d;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Translation2d;
+import org.firstinspires.ftc.lib.wpilib.math.numbers.N1;
+import org.firstinspires.ftc.lib.wpilib.math.numbers.N3;
+
+/**
+ * Fuses latency-compensated vision measurements with {@link Pinpoint} odometry with an extended
+ * Kalman filter. Has the same API as {@link PinpointPoseEstimator}, which can be swapped for it.
+ *
+ * <p>Unlike {@link PinpointPoseEstimator}, which trusts every vision measurement the same amount,
+ * this tracks the covariance of the estimate. It grows as the robot dead reckons on odometry, and
+ * shrinks with every vision measurement, so a measurement made after a long time without one moves
+ * the estimate further than one made right after another.
+ *
+ * <p>The state is the robot's field relative pose. Each update, it's propagated by the change in
+ * the odometry pose since the last update, and the covariance is propagated through the linearized
+ * motion, plus the process noise for the time that passed. Vision measurements measure the pose
+ * directly. To compensate for their latency, the odometry pose, state, and covariance of every
+ * update are kept for a short history, along with the vision measurements applied at each. A
+ * measurement is applied at the time it was made, and every update after it is replayed from the
+ * odometry, with the measurements already applied to those updates applied again.
+ *
+ * <p>All of the 3x3 math is unrolled on primitives, and the history is a flat circular buffer, so
+ * nothing is allocated once the buffer has grown to fit the history, unless a {@link Pose2d} is
+ * asked for.
+ */
+public class PinpointEKFPoseEstimator {
+  private final Pinpoint m_odometry;
+
+  private static final double kBufferDuration = 1.5;
+  private static final int kInitialCapacity = 64;
+
+  // Every history entry is a timestamp, the odometry pose, the state, the upper triangle of the
+  // covariance, and the vision measurement applied at that time and its variances, if there was
+  // one.
+  private static final int kTime = 0;
+  private static final int kOdometryX = 1;
+  private static final int kOdometryY = 2;
+  private static final int kOdometryTheta = 3;
+  private static final int kX = 4;
+  private static final int kY = 5;
+  private static final int kTheta = 6;
+  private static final int kP00 = 7;
+  private static final int kP01 = 8;
+  private static final int kP02 = 9;
+  private static final int kP11 = 10;
+  private static final int kP12 = 11;
+  private static final int kP22 = 12;
+  private static final int kMeasured = 13;
+  private static final int kMeasurementX = 14;
+  private static final int kMeasurementY = 15;
+  private static final int kMeasurementTheta = 16;
+  private static final int kMeasurementRX = 17;
+  private static final int kMeasurementRY = 18;
+  private static final int kMeasurementRTheta = 19;
+  private static final int kStride = 20;
+
+  // A circular buffer of history entries, oldest first.
+  private double[] m_history = new double[kInitialCapacity * kStride];
+  private int m_capacity = kInitialCapacity;
+  private int m_head = 0;
+  private int m_size = 0;
+
+  // Process noise variance per second, and vision measurement noise variance.
+  private final double m_qX;
+  private final double m_qY;
+  private final double m_qTheta;
+  private double m_rX;
+  private double m_rY;
+  private double m_rTheta;
+
+  // The odometry pose read in the last update, and an odometry pose interpolated between entries.
+  private final double[] m_odometryPose = new double[3];
+  private final double[] m_interpolatedOdometry = new double[3];
+  // The state of the newest entry, or the odometry pose while the history is empty.
+  private final double[] m_estimate = new double[3];
+  private Pose2d m_poseEstimate = new Pose2d();
+  private boolean m_poseEstimateStale = false;
+
+  /**
+   * Constructs a PinpointEKFPoseEstimator.
+   *
+   * @param pinpoint The {@link Pinpoint} to be used as the odometry source.
+   * @param stateStdDevs Standard deviations of the odometry error accumulated per second (x
+   *     position in meters, y position in meters, and heading in radians). Increase these numbers
+   *     to trust your odometry less. The covariance is also reset to these squared.
+   * @param visionMeasurementStdDevs Standard deviations of the vision pose measurement (x position
+   *     in meters, y position in meters, and heading in radians). Increase these numbers to trust
+   *     the vision pose measurement less.
+   */
+  public PinpointEKFPoseEstimator(
+      Pinpoint pinpoint, Matrix<N3, N1> stateStdDevs, Matrix<N3, N1> visionMeasurementStdDevs) {
+    this.m_odometry = pinpoint;
+    m_qX = stateStdDevs.get(0, 0) * stateStdDevs.get(0, 0);
+    m_qY = stateStdDevs.get(1, 0) * stateStdDevs.get(1, 0);
+    m_qTheta = stateStdDevs.get(2, 0) * stateStdDevs.get(2, 0);
+    setVisionMeasurementStdDevs(visionMeasurementStdDevs);
+  }
+
+  /**
+   * Sets the pose estimator's trust of global measurements.
+   *
+   * @param visionMeasurementStdDevs Standard deviations of the vision measurements. Increase these
+   *     numbers to trust global measurements from vision less. This matrix is in the form [x, y,
+   *     theta]ᵀ, with units in meters and radians.
+   */
+  public final void setVisionMeasurementStdDevs(Matrix<N3, N1> visionMeasurementStdDevs) {
+    m_rX = visionMeasurementStdDevs.get(0, 0) * visionMeasurementStdDevs.get(0, 0);
+    m_rY = visionMeasurementStdDevs.get(1, 0) * visionMeasurementStdDevs.get(1, 0);
+    m_rTheta = visionMeasurementStdDevs.get(2, 0) * visionMeasurementStdDevs.get(2, 0);
+  }
+
+  /**
+   * Resets the robot's pose.
+   *
+   * @param pose The pose to reset to.
+   */
+  public void resetPose(Pose2d pose) {
+    m_odometry.resetPose(pose);
+    resetEstimate();
+  }
+
+  /**
+   * Resets the robot's translation.
+   *
+   * @param translation The pose to translation to.
+   */
+  public void resetTranslation(Translation2d translation) {
+    m_odometry.resetTranslation(translation);
+    resetEstimate();
+  }
+
+  /**
+   * Resets the robot's rotation.
+   *
+   * @param rotation The rotation to reset to.
+   */
+  public void resetRotation(Rotation2d rotation) {
+    m_odometry.resetRotation(rotation);
+    resetEstimate();
+  }
+
+  /** Clears the history, and sets the estimate to the odometry pose. */
+  private void resetEstimate() {
+    m_head = 0;
+    m_size = 0;
+    m_odometry.getPose(m_odometryPose);
+    System.arraycopy(m_odometryPose, 0, m_estimate, 0, 3);
+    m_poseEstimateStale = true;
+  }
+
+  /**
+   * Gets the estimated robot pose.
+   *
+   * @return The estimated robot pose in meters.
+   */
+  public Pose2d getEstimatedPosition() {
+    if (m_poseEstimateStale) {
+      m_poseEstimate = new Pose2d(m_estimate[0], m_estimate[1], new Rotation2d(m_estimate[2]));
+      m_poseEstimateStale = false;
+    }
+    return m_poseEstimate;
+  }
+
+  /**
+   * Writes the estimated robot pose into an array, without allocating.
+   *
+   * @param pose The array to write x (m), y (m), and heading (rad) into.
+   */
+  public void getEstimatedPosition(double[] pose) {
+    pose[0] = m_estimate[0];
+    pose[1] = m_estimate[1];
+    pose[2] = m_estimate[2];
+  }
+
+  /**
+   * Writes the covariance of the estimated robot pose into an array, without allocating. Zero
+   * before the first update.
+   *
+   * @param covariance The array to write the 3x3 covariance of x (m), y (m), and heading (rad)
+   *     into, in row major order.
+   */
+  public void getCovariance(double[] covariance) {
+    if (m_size == 0) {
+      for (int i = 0; i < 9; i++) {
+        covariance[i] = 0;
+      }
+      return;
+    }
+    var h = m_history;
+    int e = entry(m_size - 1);
+    covariance[0] = h[e + kP00];
+    covariance[1] = h[e + kP01];
+    covariance[2] = h[e + kP02];
+    covariance[3] = h[e + kP01];
+    covariance[4] = h[e + kP11];
+    covariance[5] = h[e + kP12];
+    covariance[6] = h[e + kP02];
+    covariance[7] = h[e + kP12];
+    covariance[8] = h[e + kP22];
+  }
+
+  /**
+   * Return the pose at a given timestamp, if the buffer is not empty.
+   *
+   * @param timestampSeconds The pose's timestamp in seconds.
+   * @return The pose at the given timestamp (or Optional.empty() if the buffer is empty).
+   */
+  public Optional<Pose2d> sampleAt(double timestampSeconds) {
+    if (m_size == 0) {
+      return Optional.empty();
+    }
+    var h = m_history;
+    timestampSeconds =
+        MathUtil.clamp(timestampSeconds, h[entry(0) + kTime], h[entry(m_size - 1) + kTime]);
+    int index = floorIndex(timestampSeconds);
+    int e = entry(index);
+    if (h[e + kTime] == timestampSeconds) {
+      return Optional.of(new Pose2d(h[e + kX], h[e + kY], new Rotation2d(h[e + kTheta])));
+    }
+
+    // Apply the odometry delta from the entry before to the state at the entry before.
+    var odometry = m_interpolatedOdometry;
+    interpolateOdometry(e, entry(index + 1), timestampSeconds, odometry);
+    double cos = Math.cos(h[e + kOdometryTheta]);
+    double sin = Math.sin(h[e + kOdometryTheta]);
+    double globalDx = odometry[0] - h[e + kOdometryX];
+    double globalDy = odometry[1] - h[e + kOdometryY];
+    double dx = globalDx * cos + globalDy * sin;
+    double dy = -globalDx * sin + globalDy * cos;
+    double dtheta = MathUtil.angleModulus(odometry[2] - h[e + kOdometryTheta]);
+    double stateCos = Math.cos(h[e + kTheta]);
+    double stateSin = Math.sin(h[e + kTheta]);
+    return Optional.of(
+        new Pose2d(
+            h[e + kX] + dx * stateCos - dy * stateSin,
+            h[e + kY] + dx * stateSin + dy * stateCos,
+            new Rotation2d(MathUtil.angleModulus(h[e + kTheta] + dtheta))));
+  }
+
+  /**
+   * Adds a vision measurement to the Kalman Filter. This will correct the odometry pose estimate
+   * while still accounting for measurement noise.
+   *
+   * <p>This method can be called as infrequently as you want, as long as you are calling {@link
+   * PinpointEKFPoseEstimator#update} every loop.
+   *
+   * <p>To promote stability of the pose estimate and make it robust to bad vision data, we
+   * recommend only adding vision measurements that are already within one meter or so of the
+   * current pose estimate.
+   *
+   * @param visionRobotPoseMeters The pose of the robot as measured by the vision camera.
+   * @param timestampSeconds The timestamp of the vision measurement in seconds.
+   */
+  public void addVisionMeasurement(Pose2d visionRobotPoseMeters, double timestampSeconds) {
+    addVisionMeasurement(
+        visionRobotPoseMeters.getX(),
+        visionRobotPoseMeters.getY(),
+        visionRobotPoseMeters.getRotation().getRadians(),
+        timestampSeconds);
+  }
+
+  /**
+   * Adds a vision measurement to the Kalman Filter. This will correct the odometry pose estimate
+   * while still accounting for measurement noise.
+   *
+   * <p>Note that the vision measurement standard deviations passed into this method will continue
+   * to apply to future measurements until a subsequent call to {@link
+   * PinpointEKFPoseEstimator#setVisionMeasurementStdDevs(Matrix)} or this method.
+   *
+   * @param visionRobotPoseMeters The pose of the robot as measured by the vision camera.
+   * @param timestampSeconds The timestamp of the vision measurement in seconds.
+   * @param visionMeasurementStdDevs Standard deviations of the vision pose measurement (x position
+   *     in meters, y position in meters, and heading in radians). Increase these numbers to trust
+   *     the vision pose measurement less.
+   */
+  public void addVisionMeasurement(
+      Pose2d visionRobotPoseMeters,
+      double timestampSeconds,
+      Matrix<N3, N1> visionMeasurementStdDevs) {
+    setVisionMeasurementStdDevs(visionMeasurementStdDevs);
+    addVisionMeasurement(visionRobotPoseMeters, timestampSeconds);
+  }
+
+  /**
+   * Adds a vision measurement to the Kalman Filter, without allocating.
+   *
+   * @param x The x position of the robot as measured by the vision camera, in meters.
+   * @param y The y position of the robot as measured by the vision camera, in meters.
+   * @param theta The heading of the robot as measured by the vision camera, in radians.
+   * @param timestampSeconds The timestamp of the vision measurement in seconds.
+   */
+  public void addVisionMeasurement(double x, double y, double theta, double timestampSeconds) {
+    // Step 0: If this measurement is old enough to be outside the history, skip.
+    if (m_size == 0 || timestampSeconds < m_history[entry(0) + kTime]) {
+      return;
+    }
+
+    // Step 1: Find the entry at the time of the measurement, inserting one with the odometry pose
+    // interpolated to that time if there isn't one. Measurements newer than the newest entry are
+    // applied to it.
+    int index = floorIndex(timestampSeconds);
+    if (index < m_size - 1 && m_history[entry(index) + kTime] != timestampSeconds) {
+      index = insertAfter(index, timestampSeconds);
+    }
+
+    // Step 2: Correct the state at that time with the measurement, and store it with the entry.
+    correct(entry(index), x, y, theta, m_rX, m_rY, m_rTheta);
+    storeMeasurement(entry(index), x, y, theta, m_rX, m_rY, m_rTheta);
+
+    // Step 3: Replay every update since the measurement, along with the measurements applied to
+    // them.
+    replay(index + 1, m_size - 1);
+    updateEstimate();
+  }
+
+  /**
+   * Adds a batch of vision measurements, such as every tag detected in one camera frame, to the
+   * Kalman Filter. The measurements don't need to be in time order.
+   *
+   * <p>The measurements are applied in time order, and the updates between them are replayed once,
+   * instead of replaying every update after each measurement. Measurements already applied to the
+   * replayed updates are applied again, so a batch older than them doesn't discard them.
+   *
+   * @param visionRobotPosesMeters The poses of the robot as measured by the vision camera.
+   * @param timestampsSeconds The timestamps of the vision measurements in seconds.
+   * @param visionMeasurementStdDevs Standard deviations of the vision pose measurements, flattened
+   *     as x position in meters, y position in meters, and heading in radians for each measurement
+   *     in turn, or null to use the ones set by {@link #setVisionMeasurementStdDevs}. These only
+   *     apply to this batch.
+   */
+  public void addVisionMeasurements(
+      Pose2d[] visionRobotPosesMeters,
+      double[] timestampsSeconds,
+      double[] visionMeasurementStdDevs) {
+    // Step 0: If there's no history to apply the measurements to, skip.
+    if (m_size == 0) {
+      return;
+    }
+
+    // Step 1: Sort the measurements by timestamp.
+    var order = new Integer[visionRobotPosesMeters.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(timestampsSeconds[a], timestampsSeconds[b]));
+
+    // Step 2: Apply each measurement at its time, after replaying the updates since the last one,
+    // along with the measurements applied to them.
+    int corrected = -1;
+    for (int i : order) {
+      double timestampSeconds = timestampsSeconds[i];
+      // Measurements older than the history are skipped.
+      if (timestampSeconds < m_history[entry(0) + kTime]) {
+        continue;
+      }
+
+      int index = floorIndex(timestampSeconds);
+      if (corrected >= 0) {
+        replay(corrected + 1, index);
+      }
+      if (index < m_size - 1 && m_history[entry(index) + kTime] != timestampSeconds) {
+        index = insertAfter(index, timestampSeconds);
+      }
+
+      double rX = m_rX;
+      double rY = m_rY;
+      double rTheta = m_rTheta;
+      if (visionMeasurementStdDevs != null) {
+        rX = visionMeasurementStdDevs[i * 3] * visionMeasurementStdDevs[i * 3];
+        rY = visionMeasurementStdDevs[i * 3 + 1] * visionMeasurementStdDevs[i * 3 + 1];
+        rTheta = visionMeasurementStdDevs[i * 3 + 2] * visionMeasurementStdDevs[i * 3 + 2];
+      }
+      var pose = visionRobotPosesMeters[i];
+      double x = pose.getX();
+      double y = pose.getY();
+      double theta = pose.getRotation().getRadians();
+      correct(entry(index), x, y, theta, rX, rY, rTheta);
+      storeMeasurement(entry(index), x, y, theta, rX, rY, rTheta);
+      corrected = index;
+    }
+    if (corrected < 0) {
+      return;
+    }
+
+    // Step 3: Replay every update since the last measurement, along with the measurements applied
+    // to them.
+    replay(corrected + 1, m_size - 1);
+    updateEstimate();
+  }
+
+  /**
+   * Updates the pose estimator with wheel encoder and gyro information. This should be called every
+   * loop.
+   *
+   * <p>The odometry sample is timestamped with when the hardware was read, rather than when the
+   * loop ran, so that vision measurements are compensated against the right pose.
+   */
+  public void update() {
+    updateWithTime(HardwareInputs.getTimestamp());
+  }
+
+  /**
+   * Updates the pose estimator with wheel encoder and gyro information. This should be called every
+   * loop.
+   *
+   * @param currentTimeSeconds Time at which this method was called, in seconds.
+   */
+  public void updateWithTime(double currentTimeSeconds) {
+    // Frames that haven't changed since the last update have nothing to add.
+    if (m_size > 0 && currentTimeSeconds <= m_history[entry(m_size - 1) + kTime]) {
+      return;
+    }
+    m_odometry.getPose(m_odometryPose);
+
+    // Remove entries older than the history, keeping at least one.
+    while (m_size > 1 && currentTimeSeconds - m_history[entry(0) + kTime] >= kBufferDuration) {
+      m_head = (m_head + 1) % m_capacity;
+      m_size--;
+    }
+    if (m_size == m_capacity) {
+      grow();
+    }
+
+    var h = m_history;
+    int e = entry(m_size);
+    h[e + kTime] = currentTimeSeconds;
+    h[e + kOdometryX] = m_odometryPose[0];
+    h[e + kOdometryY] = m_odometryPose[1];
+    h[e + kOdometryTheta] = m_odometryPose[2];
+    h[e + kMeasured] = 0;
+    if (m_size == 0) {
+      h[e + kX] = m_estimate[0];
+      h[e + kY] = m_estimate[1];
+      h[e + kTheta] = m_estimate[2];
+      h[e + kP00] = m_qX;
+      h[e + kP01] = 0;
+      h[e + kP02] = 0;
+      h[e + kP11] = m_qY;
+      h[e + kP12] = 0;
+      h[e + kP22] = m_qTheta;
+      m_size++;
+    } else {
+      m_size++;
+      propagate(entry(m_size - 2), e);
+    }
+    updateEstimate();
+  }
+
+  private void updateEstimate() {
+    int e = entry(m_size - 1);
+    m_estimate[0] = m_history[e + kX];
+    m_estimate[1] = m_history[e + kY];
+    m_estimate[2] = m_history[e + kTheta];
+    m_poseEstimateStale = true;
+  }
+
+  /**
+   * Replays the entries from one index to another, inclusive, propagating each from the entry
+   * before and correcting it with its measurement again, if it has one.
+   */
+  private void replay(int first, int last) {
+    var h = m_history;
+    for (int i = first; i <= last; i++) {
+      int e = entry(i);
+      propagate(entry(i - 1), e);
+      if (h[e + kMeasured] != 0) {
+        correct(
+            e,
+            h[e + kMeasurementX],
+            h[e + kMeasurementY],
+            h[e + kMeasurementTheta],
+            h[e + kMeasurementRX],
+            h[e + kMeasurementRY],
+            h[e + kMeasurementRTheta]);
+      }
+    }
+  }
+
+  /**
+   * Stores a measurement applied to an entry, so it can be applied again when the entry is
+   * replayed. If the entry already has one, the two are fused into a single measurement, which
+   * corrects the state the same as applying both in turn, as both measure the state directly with
+   * independent noise on each axis.
+   */
+  private void storeMeasurement(
+      int e, double x, double y, double theta, double rX, double rY, double rTheta) {
+    var h = m_history;
+    if (h[e + kMeasured] == 0) {
+      h[e + kMeasured] = 1;
+      h[e + kMeasurementX] = x;
+      h[e + kMeasurementY] = y;
+      h[e + kMeasurementTheta] = theta;
+      h[e + kMeasurementRX] = rX;
+      h[e + kMeasurementRY] = rY;
+      h[e + kMeasurementRTheta] = rTheta;
+      return;
+    }
+    fuseMeasurement(h, e + kMeasurementX, e + kMeasurementRX, x, rX, false);
+    fuseMeasurement(h, e + kMeasurementY, e + kMeasurementRY, y, rY, false);
+    fuseMeasurement(h, e + kMeasurementTheta, e + kMeasurementRTheta, theta, rTheta, true);
+  }
+
+  /** Fuses one axis of a measurement into a stored one, weighting each by its inverse variance. */
+  private static void fuseMeasurement(
+      double[] h, int value, int variance, double newValue, double newVariance, boolean angle) {
+    double oldVariance = h[variance];
+    double sum = oldVariance + newVariance;
+    if (!(sum > 0)) {
+      return;
+    }
+    double difference = newValue - h[value];
+    if (angle) {
+      difference = MathUtil.angleModulus(difference);
+    }
+    h[value] += difference * oldVariance / sum;
+    if (angle) {
+      h[value] = MathUtil.angleModulus(h[value]);
+    }
+    h[variance] = oldVariance * newVariance / sum;
+  }
+
+  /**
+   * Propagates the state and covariance of one entry to the next, by the change in odometry pose
+   * between them.
+   */
+  private void propagate(int from, int to) {
+    var h = m_history;
+
+    // The odometry delta, in the robot frame of the earlier odometry pose.
+    double odometryCos = Math.cos(h[from + kOdometryTheta]);
+    double odometrySin = Math.sin(h[from + kOdometryTheta]);
+    double globalDx = h[to + kOdometryX] - h[from + kOdometryX];
+    double globalDy = h[to + kOdometryY] - h[from + kOdometryY];
+    double dx = globalDx * odometryCos + globalDy * odometrySin;
+    double dy = -globalDx * odometrySin + globalDy * odometryCos;
+    double dtheta = MathUtil.angleModulus(h[to + kOdometryTheta] - h[from + kOdometryTheta]);
+
+    // x' = x + R(θ)d, θ' = θ + dθ.
+    double theta = h[from + kTheta];
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    double fieldDx = dx * cos - dy * sin;
+    double fieldDy = dx * sin + dy * cos;
+    h[to + kX] = h[from + kX] + fieldDx;
+    h[to + kY] = h[from + kY] + fieldDy;
+    h[to + kTheta] = MathUtil.angleModulus(theta + dtheta);
+
+    // P' = FPFᵀ + Qdt, where F is the identity apart from ∂x'/∂θ = -fieldDy and
+    // ∂y'/∂θ = fieldDx.
+    double a = -fieldDy;
+    double b = fieldDx;
+    double p00 = h[from + kP00];
+    double p01 = h[from + kP01];
+    double p02 = h[from + kP02];
+    double p11 = h[from + kP11];
+    double p12 = h[from + kP12];
+    double p22 = h[from + kP22];
+    double dt = h[to + kTime] - h[from + kTime];
+    h[to + kP00] = p00 + 2 * a * p02 + a * a * p22 + m_qX * dt;
+    h[to + kP01] = p01 + a * p12 + b * p02 + a * b * p22;
+    h[to + kP02] = p02 + a * p22;
+    h[to + kP11] = p11 + 2 * b * p12 + b * b * p22 + m_qY * dt;
+    h[to + kP12] = p12 + b * p22;
+    h[to + kP22] = p22 + m_qTheta * dt;
+  }
+
+  /**
+   * Corrects the state and covariance of an entry with a measurement of the pose, with the given
+   * measurement variances.
+   */
+  private void correct(
+      int e, double x, double y, double theta, double rX, double rY, double rTheta) {
+    var h = m_history;
+    double p00 = h[e + kP00];
+    double p01 = h[e + kP01];
+    double p02 = h[e + kP02];
+    double p11 = h[e + kP11];
+    double p12 = h[e + kP12];
+    double p22 = h[e + kP22];
+
+    // S = P + R, as the measurement is the state.
+    double s00 = p00 + rX;
+    double s11 = p11 + rY;
+    double s22 = p22 + rTheta;
+
+    // S⁻¹, from the cofactors of S, which is symmetric.
+    double c00 = s11 * s22 - p12 * p12;
+    double c01 = p02 * p12 - p01 * s22;
+    double c02 = p01 * p12 - p02 * s11;
+    double c11 = s00 * s22 - p02 * p02;
+    double c12 = p01 * p02 - s00 * p12;
+    double c22 = s00 * s11 - p01 * p01;
+    double det = s00 * c00 + p01 * c01 + p02 * c02;
+    if (!(det > 0)) {
+      return;
+    }
+    double inverseDet = 1 / det;
+    double i00 = c00 * inverseDet;
+    double i01 = c01 * inverseDet;
+    double i02 = c02 * inverseDet;
+    double i11 = c11 * inverseDet;
+    double i12 = c12 * inverseDet;
+    double i22 = c22 * inverseDet;
+
+    // K = PS⁻¹.
+    double k00 = p00 * i00 + p01 * i01 + p02 * i02;
+    double k01 = p00 * i01 + p01 * i11 + p02 * i12;
+    double k02 = p00 * i02 + p01 * i12 + p02 * i22;
+    double k10 = p01 * i00 + p11 * i01 + p12 * i02;
+    double k11 = p01 * i01 + p11 * i11 + p12 * i12;
+    double k12 = p01 * i02 + p11 * i12 + p12 * i22;
+    double k20 = p02 * i00 + p12 * i01 + p22 * i02;
+    double k21 = p02 * i01 + p12 * i11 + p22 * i12;
+    double k22 = p02 * i02 + p12 * i12 + p22 * i22;
+
+    // x += K(z - x), with the heading innovation wrapped.
+    double ex = x - h[e + kX];
+    double ey = y - h[e + kY];
+    double etheta = MathUtil.angleModulus(theta - h[e + kTheta]);
+    h[e + kX] += k00 * ex + k01 * ey + k02 * etheta;
+    h[e + kY] += k10 * ex + k11 * ey + k12 * etheta;
+    h[e + kTheta] = MathUtil.angleModulus(h[e + kTheta] + k20 * ex + k21 * ey + k22 * etheta);
+
+    // P = (I - K)P, which is symmetric, so only the upper triangle is calculated.
+    h[e + kP00] = p00 - (k00 * p00 + k01 * p01 + k02 * p02);
+    h[e + kP01] = p01 - (k00 * p01 + k01 * p11 + k02 * p12);
+    h[e + kP02] = p02 - (k00 * p02 + k01 * p12 + k02 * p22);
+    h[e + kP11] = p11 - (k10 * p01 + k11 * p11 + k12 * p12);
+    h[e + kP12] = p12 - (k10 * p02 + k11 * p12 + k12 * p22);
+    h[e + kP22] = p22 - (k20 * p02 + k21 * p12 + k22 * p22);
+  }
+
+  /**
+   * Inserts an entry between the entry at an index and the one after it, with the odometry pose
+   * interpolated to the time, and the state propagated from the entry before.
+   *
+   * @return The index of the new entry.
+   */
+  private int insertAfter(int index, double timeSeconds) {
+    if (m_size == m_capacity) {
+      grow();
+    }
+    var h = m_history;
+    for (int i = m_size; i > index + 1; i--) {
+      System.arraycopy(h, entry(i - 1), h, entry(i), kStride);
+    }
+    m_size++;
+    int before = entry(index);
+    int inserted = entry(index + 1);
+    var odometry = m_interpolatedOdometry;
+    interpolateOdometry(before, entry(index + 2), timeSeconds, odometry);
+    h[inserted + kTime] = timeSeconds;
+    h[inserted + kOdometryX] = odometry[0];
+    h[inserted + kOdometryY] = odometry[1];
+    h[inserted + kOdometryTheta] = odometry[2];
+    h[inserted + kMeasured] = 0;
+    propagate(before, inserted);
+    return index + 1;
+  }
+
+  /** Linearly interpolates the odometry pose between two entries. */
+  private void interpolateOdometry(int from, int to, double timeSeconds, double[] odometry) {
+    var h = m_history;
+    double t = (timeSeconds - h[from + kTime]) / (h[to + kTime] - h[from + kTime]);
+    odometry[0] = h[from + kOdometryX] + (h[to + kOdometryX] - h[from + kOdometryX]) * t;
+    odometry[1] = h[from + kOdometryY] + (h[to + kOdometryY] - h[from + kOdometryY]) * t;
+    odometry[2] =
+        h[from + kOdometryTheta]
+            + MathUtil.angleModulus(h[to + kOdometryTheta] - h[from + kOdometryTheta]) * t;
+  }
+
+  /** Finds the index of the newest entry at or before a time. The history must not be empty. */
+  private int floorIndex(double timeSeconds) {
+    var h = m_history;
+    int low = 0;
+    int high = m_size - 1;
+    if (h[entry(high) + kTime] <= timeSeconds) {
+      return high;
+    }
+    while (high - low > 1) {
+      int mid = (low + high) >>> 1;
+      if (h[entry(mid) + kTime] <= timeSeconds) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /** Gets the offset into the history of the entry at an index, oldest first. */
+  private int entry(int index) {
+    return ((m_head + index) % m_capacity) * kStride;
+  }
+
+  /** Doubles the capacity, unwrapping the entries to start at index 0. */
+  private void grow() {
+    var grown = new double[m_capacity * 2 * kStride];
+    for (int i = 0; i < m_size; i++) {
+      System.arraycopy(m_history, entry(i), grown, i * kStride, kStride);
+    }
+    m_history = grown;
+    m_capacity *= 2;
+    m_head = 0;
+  }
+}
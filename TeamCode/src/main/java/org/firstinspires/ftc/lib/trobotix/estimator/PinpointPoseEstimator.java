@@ -3,22 +3,21 @@
 
 package org.firstinspires.ftc.lib.trobotix.estimator;
 
+import java.util.Arrays;
 import java.util.NavigableMap;
 import java.util.Optional;
 import java.util.TreeMap;
+import org.firstinspires.ftc.lib.trobotix.hardware.HardwareInputs;
 import org.firstinspires.ftc.lib.trobotix.hardware.Pinpoint;
 import org.firstinspires.ftc.lib.wpilib.math.MathUtil;
 import org.firstinspires.ftc.lib.wpilib.math.Matrix;
-import org.firstinspires.ftc.lib.wpilib.math.Nat;
-import org.firstinspires.ftc.lib.wpilib.math.VecBuilder;
 import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose2d;
 import org.firstinspires.ftc.lib.wpilib.math.geometry.Rotation2d;
 import org.firstinspires.ftc.lib.wpilib.math.geometry.Translation2d;
 import org.firstinspires.ftc.lib.wpilib.math.geometry.Twist2d;
-import org.firstinspires.ftc.lib.wpilib.math.interpolation.TimeInterpolatableBuffer;
+import org.firstinspires.ftc.lib.wpilib.math.interpolation.TimeInterpolatablePose2dBuffer;
 import org.firstinspires.ftc.lib.wpilib.math.numbers.N1;
 import org.firstinspires.ftc.lib.wpilib.math.numbers.N3;
-import org.psilynx.psikit.core.Logger;
 
 /**
  * This class wraps {@link Pinpoint} to fuse latency-compensated vision measurements with encoder
@@ -28,22 +27,36 @@ import org.psilynx.psikit.core.Logger;
  *
  * <p>{@link PinpointPoseEstimator#addVisionMeasurement} can be called as infrequently as you want;
  * if you never call it then this class will behave exactly like regular encoder odometry.
+ *
+ * <p>Unlike WPILib's, the estimate is kept as primitives, read from the {@link Pinpoint} and
+ * compensated for vision without allocating, and odometry samples are kept in a primitive {@link
+ * TimeInterpolatablePose2dBuffer}. A {@link Pose2d} is only built when {@link
+ * #getEstimatedPosition()} is called, and at most once per update.
  */
 public class PinpointPoseEstimator {
   private final Pinpoint m_odometry;
-  private final Matrix<N3, N1> m_q = new Matrix<>(Nat.N3(), Nat.N1());
-  private final Matrix<N3, N3> m_visionK = new Matrix<>(Nat.N3(), Nat.N3());
+  // The variances of the state estimate, and the Kalman gains for x, y, and heading.
+  private final double[] m_q = new double[3];
+  private final double[] m_visionK = new double[3];
 
   private static final double kBufferDuration = 1.5;
+  // Vision measurements are stored as timestamp, x, y, heading, and the gains for x, y, and
+  // heading, so that they can be fused again when an older measurement arrives.
+  private static final int kMeasurementStride = 7;
   // Maps timestamps to odometry-only pose estimates
-  private final TimeInterpolatableBuffer<Pose2d> m_odometryPoseBuffer =
-      TimeInterpolatableBuffer.createBuffer(kBufferDuration);
+  private final TimeInterpolatablePose2dBuffer m_odometryPoseBuffer =
+      TimeInterpolatablePose2dBuffer.createBuffer(kBufferDuration);
   // Maps timestamps to vision updates
   // Always contains one entry before the oldest entry in m_odometryPoseBuffer, unless there have
   // been no vision measurements after the last reset
   private final NavigableMap<Double, VisionUpdate> m_visionUpdates = new TreeMap<>();
 
+  // The odometry pose (x, y, heading) read from the Pinpoint in the last update.
+  private final double[] m_odometryPose = new double[3];
+  // The pose estimate (x, y, heading), built into m_poseEstimate only when it's asked for.
+  private final double[] m_estimate = new double[3];
   private Pose2d m_poseEstimate;
+  private boolean m_poseEstimateStale;
 
   /**
    * Constructs a PinpointPoseEstimator.
@@ -61,9 +74,10 @@ public class PinpointPoseEstimator {
     this.m_odometry = pinpoint;
 
     m_poseEstimate = new Pose2d();
+    m_poseEstimateStale = false;
 
     for (int i = 0; i < 3; ++i) {
-      m_q.set(i, 0, stateStdDevs.get(i, 0) * stateStdDevs.get(i, 0));
+      m_q[i] = stateStdDevs.get(i, 0) * stateStdDevs.get(i, 0);
     }
     setVisionMeasurementStdDevs(visionMeasurementStdDevs);
   }
@@ -78,19 +92,35 @@ public class PinpointPoseEstimator {
    *     theta]ᵀ, with units in meters and radians.
    */
   public final void setVisionMeasurementStdDevs(Matrix<N3, N1> visionMeasurementStdDevs) {
-    var r = new double[3];
-    for (int i = 0; i < 3; ++i) {
-      r[i] = visionMeasurementStdDevs.get(i, 0) * visionMeasurementStdDevs.get(i, 0);
-    }
+    calculateVisionK(
+        new double[] {
+          visionMeasurementStdDevs.get(0, 0),
+          visionMeasurementStdDevs.get(1, 0),
+          visionMeasurementStdDevs.get(2, 0)
+        },
+        0,
+        m_visionK,
+        0);
+  }
 
+  /**
+   * Calculates the diagonal of the Kalman gain matrix for vision measurements with the given
+   * standard deviations.
+   *
+   * @param stdDevs The array to read the standard deviations of x, y, and heading from.
+   * @param stdDevsOffset The index in stdDevs to read the standard deviation of x at.
+   * @param k The array to write the gains for x, y, and heading into.
+   * @param offset The index in k to write the gain for x at.
+   */
+  private void calculateVisionK(double[] stdDevs, int stdDevsOffset, double[] k, int offset) {
     // Solve for closed form Kalman gain for continuous Kalman filter with A = 0
     // and C = I. See wpimath/algorithms.md.
     for (int row = 0; row < 3; ++row) {
-      if (m_q.get(row, 0) == 0.0) {
-        m_visionK.set(row, row, 0.0);
+      double r = stdDevs[stdDevsOffset + row] * stdDevs[stdDevsOffset + row];
+      if (m_q[row] == 0.0) {
+        k[offset + row] = 0.0;
       } else {
-        m_visionK.set(
-            row, row, m_q.get(row, 0) / (m_q.get(row, 0) + Math.sqrt(m_q.get(row, 0) * r[row])));
+        k[offset + row] = m_q[row] / (m_q[row] + Math.sqrt(m_q[row] * r));
       }
     }
   }
@@ -105,7 +135,7 @@ public class PinpointPoseEstimator {
     m_odometry.resetPose(pose);
     m_odometryPoseBuffer.clear();
     m_visionUpdates.clear();
-    m_poseEstimate = m_odometry.getPose(true);
+    resetEstimate();
   }
 
   /**
@@ -117,7 +147,7 @@ public class PinpointPoseEstimator {
     m_odometry.resetTranslation(translation);
     m_odometryPoseBuffer.clear();
     m_visionUpdates.clear();
-    m_poseEstimate = m_odometry.getPose(true);
+    resetEstimate();
   }
 
   /**
@@ -129,7 +159,14 @@ public class PinpointPoseEstimator {
     m_odometry.resetRotation(rotation);
     m_odometryPoseBuffer.clear();
     m_visionUpdates.clear();
-    m_poseEstimate = m_odometry.getPose(true);
+    resetEstimate();
+  }
+
+  /** Sets the estimate to the odometry pose, after a reset. */
+  private void resetEstimate() {
+    m_odometry.getPose(m_odometryPose);
+    System.arraycopy(m_odometryPose, 0, m_estimate, 0, 3);
+    m_poseEstimateStale = true;
   }
 
   /**
@@ -138,9 +175,24 @@ public class PinpointPoseEstimator {
    * @return The estimated robot pose in meters.
    */
   public Pose2d getEstimatedPosition() {
+    if (m_poseEstimateStale) {
+      m_poseEstimate = new Pose2d(m_estimate[0], m_estimate[1], new Rotation2d(m_estimate[2]));
+      m_poseEstimateStale = false;
+    }
     return m_poseEstimate;
   }
 
+  /**
+   * Writes the estimated robot pose into an array, without allocating.
+   *
+   * @param pose The array to write x (m), y (m), and heading (rad) into.
+   */
+  public void getEstimatedPosition(double[] pose) {
+    pose[0] = m_estimate[0];
+    pose[1] = m_estimate[1];
+    pose[2] = m_estimate[2];
+  }
+
   /**
    * Return the pose at a given timestamp, if the buffer is not empty.
    *
@@ -149,14 +201,14 @@ public class PinpointPoseEstimator {
    */
   public Optional<Pose2d> sampleAt(double timestampSeconds) {
     // Step 0: If there are no odometry updates to sample, skip.
-    if (m_odometryPoseBuffer.getInternalBuffer().isEmpty()) {
+    if (m_odometryPoseBuffer.isEmpty()) {
       return Optional.empty();
     }
 
     // Step 1: Make sure timestamp matches the sample from the odometry pose buffer. (When sampling,
     // the buffer will always use a timestamp between the first and last timestamps)
-    double oldestOdometryTimestamp = m_odometryPoseBuffer.getInternalBuffer().firstKey();
-    double newestOdometryTimestamp = m_odometryPoseBuffer.getInternalBuffer().lastKey();
+    double oldestOdometryTimestamp = m_odometryPoseBuffer.getOldestTimestamp();
+    double newestOdometryTimestamp = m_odometryPoseBuffer.getNewestTimestamp();
     timestampSeconds =
         MathUtil.clamp(timestampSeconds, oldestOdometryTimestamp, newestOdometryTimestamp);
 
@@ -179,12 +231,12 @@ public class PinpointPoseEstimator {
   /** Removes stale vision updates that won't affect sampling. */
   private void cleanUpVisionUpdates() {
     // Step 0: If there are no odometry samples, skip.
-    if (m_odometryPoseBuffer.getInternalBuffer().isEmpty()) {
+    if (m_odometryPoseBuffer.isEmpty()) {
       return;
     }
 
     // Step 1: Find the oldest timestamp that needs a vision update.
-    double oldestOdometryTimestamp = m_odometryPoseBuffer.getInternalBuffer().firstKey();
+    double oldestOdometryTimestamp = m_odometryPoseBuffer.getOldestTimestamp();
 
     // Step 2: If there are no vision updates before that timestamp, skip.
     if (m_visionUpdates.isEmpty() || oldestOdometryTimestamp < m_visionUpdates.firstKey()) {
@@ -213,24 +265,121 @@ public class PinpointPoseEstimator {
    * @param timestampSeconds The timestamp of the vision measurement in seconds.
    */
   public void addVisionMeasurement(Pose2d visionRobotPoseMeters, double timestampSeconds) {
-    // Step 0: If this measurement is old enough to be outside the pose buffer's timespan, skip.
-    if (m_odometryPoseBuffer.getInternalBuffer().isEmpty()
-        || m_odometryPoseBuffer.getInternalBuffer().lastKey() - kBufferDuration
-            > timestampSeconds) {
+    addVisionMeasurements(
+        new Pose2d[] {visionRobotPoseMeters}, new double[] {timestampSeconds}, null);
+  }
+
+  /**
+   * Adds a batch of vision measurements, such as every tag detected in one camera frame, to the
+   * Kalman Filter. The measurements don't need to be in time order.
+   *
+   * <p>Every vision update made at or after the oldest measurement in the batch is fused again,
+   * along with the new measurements, in time order. So unlike WPILib's, a measurement that arrives
+   * late corrects the estimate at the time it was made, without throwing away the corrections that
+   * were made after it. Each measurement costs O(log n) for n samples in the buffer.
+   *
+   * @param visionRobotPosesMeters The poses of the robot as measured by the vision camera.
+   * @param timestampsSeconds The timestamps of the vision measurements in seconds.
+   * @param visionMeasurementStdDevs Standard deviations of the vision pose measurements, flattened
+   *     as x position in meters, y position in meters, and heading in radians for each measurement
+   *     in turn, or null to use the ones set by {@link #setVisionMeasurementStdDevs}. Unlike {@link
+   *     #addVisionMeasurement(Pose2d, double, Matrix)}, these only apply to this batch.
+   */
+  public void addVisionMeasurements(
+      Pose2d[] visionRobotPosesMeters,
+      double[] timestampsSeconds,
+      double[] visionMeasurementStdDevs) {
+    // Step 0: If there are no odometry samples to compensate against, skip.
+    if (m_odometryPoseBuffer.isEmpty()) {
+      return;
+    }
+
+    // Step 1: Gather the measurements that are inside the pose buffer's timespan, with their gains.
+    double oldestTimestamp = m_odometryPoseBuffer.getNewestTimestamp() - kBufferDuration;
+    var measurements = new double[visionRobotPosesMeters.length * kMeasurementStride];
+    int count = 0;
+    double earliestTimestamp = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < visionRobotPosesMeters.length; i++) {
+      if (timestampsSeconds[i] < oldestTimestamp) {
+        continue;
+      }
+      int offset = count * kMeasurementStride;
+      measurements[offset] = timestampsSeconds[i];
+      measurements[offset + 1] = visionRobotPosesMeters[i].getX();
+      measurements[offset + 2] = visionRobotPosesMeters[i].getY();
+      measurements[offset + 3] = visionRobotPosesMeters[i].getRotation().getRadians();
+      if (visionMeasurementStdDevs == null) {
+        System.arraycopy(m_visionK, 0, measurements, offset + 4, 3);
+      } else {
+        calculateVisionK(visionMeasurementStdDevs, i * 3, measurements, offset + 4);
+      }
+      earliestTimestamp = Math.min(earliestTimestamp, timestampsSeconds[i]);
+      count++;
+    }
+    if (count == 0) {
       return;
     }
 
-    // Step 1: Clean up any old entries
+    // Step 2: Clean up any old entries
     cleanUpVisionUpdates();
 
-    // Step 2: Get the pose measured by odometry at the moment the vision measurement was made.
+    // Step 3: Take out the vision updates made at or after the earliest new measurement, since they
+    // were fused on top of an estimate that's about to change, and add their measurements to the
+    // batch ahead of the new ones.
+    var laterUpdates = m_visionUpdates.tailMap(earliestTimestamp, true);
+    int storedLength = 0;
+    for (var update : laterUpdates.values()) {
+      storedLength += update.measurements.length;
+    }
+    var batch = new double[storedLength + count * kMeasurementStride];
+    int batchLength = 0;
+    for (var update : laterUpdates.values()) {
+      System.arraycopy(update.measurements, 0, batch, batchLength, update.measurements.length);
+      batchLength += update.measurements.length;
+    }
+    System.arraycopy(measurements, 0, batch, batchLength, count * kMeasurementStride);
+    laterUpdates.clear();
+
+    // Step 4: Sort the batch by timestamp. The sort is stable, so measurements with the same
+    // timestamp are fused in the order they were added.
+    var order = new Integer[batch.length / kMeasurementStride];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(
+        order,
+        (a, b) -> Double.compare(batch[a * kMeasurementStride], batch[b * kMeasurementStride]));
+
+    // Step 5: Fuse the measurements in time order, each on top of the ones before it.
+    for (int index : order) {
+      fuse(batch, index * kMeasurementStride);
+    }
+
+    // Step 6: Update latest pose estimate from the latest vision update.
+    if (!m_visionUpdates.isEmpty()) {
+      m_visionUpdates.lastEntry().getValue().compensate(m_odometryPose, m_estimate);
+      m_poseEstimateStale = true;
+    }
+  }
+
+  /**
+   * Fuses one vision measurement with the estimate at the time it was made, and records the vision
+   * update.
+   *
+   * @param measurements The measurements, as stored in a {@link VisionUpdate}.
+   * @param offset The index of the measurement's timestamp in measurements.
+   */
+  private void fuse(double[] measurements, int offset) {
+    double timestampSeconds = measurements[offset];
+
+    // Step 1: Get the pose measured by odometry at the moment the vision measurement was made.
     var odometrySample = m_odometryPoseBuffer.getSample(timestampSeconds);
 
     if (odometrySample.isEmpty()) {
       return;
     }
 
-    // Step 3: Get the vision-compensated pose estimate at the moment the vision measurement was
+    // Step 2: Get the vision-compensated pose estimate at the moment the vision measurement was
     // made.
     var visionSample = sampleAt(timestampSeconds);
 
@@ -238,27 +387,41 @@ public class PinpointPoseEstimator {
       return;
     }
 
-    // Step 4: Measure the twist between the old pose estimate and the vision pose.
-    var twist = visionSample.get().log(visionRobotPoseMeters);
-
-    // Step 5: We should not trust the twist entirely, so instead we scale this twist by a Kalman
+    // Step 3: Measure the twist between the old pose estimate and the vision pose.
+    var twist =
+        visionSample
+            .get()
+            .log(
+                new Pose2d(
+                    measurements[offset + 1],
+                    measurements[offset + 2],
+                    new Rotation2d(measurements[offset + 3])));
+
+    // Step 4: We should not trust the twist entirely, so instead we scale this twist by a Kalman
     // gain matrix representing how much we trust vision measurements compared to our current pose.
-    var k_times_twist = m_visionK.times(VecBuilder.fill(twist.dx, twist.dy, twist.dtheta));
-
-    // Step 6: Convert back to Twist2d.
+    // The gain matrix is diagonal, so that's the same as scaling each component.
     var scaledTwist =
-        new Twist2d(k_times_twist.get(0, 0), k_times_twist.get(1, 0), k_times_twist.get(2, 0));
-
-    // Step 7: Calculate and record the vision update.
-    var visionUpdate = new VisionUpdate(visionSample.get().exp(scaledTwist), odometrySample.get());
-    m_visionUpdates.put(timestampSeconds, visionUpdate);
-
-    // Step 8: Remove later vision measurements. (Matches previous behavior)
-    m_visionUpdates.tailMap(timestampSeconds, false).entrySet().clear();
-
-    // Step 9: Update latest pose estimate. Since we cleared all updates after this vision update,
-    // it's guaranteed to be the latest vision update.
-    m_poseEstimate = visionUpdate.compensate(m_odometry.getPose(false));
+        new Twist2d(
+            measurements[offset + 4] * twist.dx,
+            measurements[offset + 5] * twist.dy,
+            measurements[offset + 6] * twist.dtheta);
+
+    // Step 5: Calculate and record the vision update, along with any measurements already fused at
+    // the same timestamp.
+    var previousUpdate = m_visionUpdates.get(timestampSeconds);
+    double[] fusedMeasurements;
+    if (previousUpdate == null) {
+      fusedMeasurements = Arrays.copyOfRange(measurements, offset, offset + kMeasurementStride);
+    } else {
+      int previousLength = previousUpdate.measurements.length;
+      fusedMeasurements =
+          Arrays.copyOf(previousUpdate.measurements, previousLength + kMeasurementStride);
+      System.arraycopy(measurements, offset, fusedMeasurements, previousLength, kMeasurementStride);
+    }
+    m_visionUpdates.put(
+        timestampSeconds,
+        new VisionUpdate(
+            visionSample.get().exp(scaledTwist), odometrySample.get(), fusedMeasurements));
   }
 
   /**
@@ -294,10 +457,14 @@ public class PinpointPoseEstimator {
    * Updates the pose estimator with wheel encoder and gyro information. This should be called every
    * loop.
    *
-   * @return The estimated pose of the robot in meters.
+   * <p>The odometry sample is timestamped with when the hardware was read, rather than when the
+   * loop ran, so that vision measurements are compensated against the right pose.
+   *
+   * <p>Doesn't return the estimate, so that no {@link Pose2d} is built unless {@link
+   * #getEstimatedPosition()} is called.
    */
-  public Pose2d update() {
-    return updateWithTime(Logger.getTimestamp());
+  public void update() {
+    updateWithTime(HardwareInputs.getTimestamp());
   }
 
   /**
@@ -305,26 +472,25 @@ public class PinpointPoseEstimator {
    * loop.
    *
    * @param currentTimeSeconds Time at which this method was called, in seconds.
-   * @return The estimated pose of the robot in meters.
    */
-  public Pose2d updateWithTime(double currentTimeSeconds) {
-    var odometryEstimate = m_odometry.getPose(true);
+  public void updateWithTime(double currentTimeSeconds) {
+    m_odometry.getPose(m_odometryPose);
 
-    m_odometryPoseBuffer.addSample(currentTimeSeconds, odometryEstimate);
+    m_odometryPoseBuffer.addSample(
+        currentTimeSeconds, m_odometryPose[0], m_odometryPose[1], m_odometryPose[2]);
 
     if (m_visionUpdates.isEmpty()) {
-      m_poseEstimate = odometryEstimate;
+      System.arraycopy(m_odometryPose, 0, m_estimate, 0, 3);
     } else {
       var visionUpdate = m_visionUpdates.get(m_visionUpdates.lastKey());
-      m_poseEstimate = visionUpdate.compensate(odometryEstimate);
+      visionUpdate.compensate(m_odometryPose, m_estimate);
     }
-
-    return getEstimatedPosition();
+    m_poseEstimateStale = true;
   }
 
   /**
    * Represents a vision update record. The record contains the vision-compensated pose estimate as
-   * well as the corresponding odometry pose estimate.
+   * well as the corresponding odometry pose estimate, and the measurements that were fused into it.
    */
   private static final class VisionUpdate {
     // The vision-compensated pose estimate.
@@ -333,15 +499,36 @@ public class PinpointPoseEstimator {
     // The pose estimated based solely on odometry.
     private final Pose2d odometryPose;
 
+    // The same transform as primitives, for compensating without allocating.
+    private final double odometryX;
+    private final double odometryY;
+    private final double visionX;
+    private final double visionY;
+    private final double headingOffset;
+    private final double headingOffsetCos;
+    private final double headingOffsetSin;
+
+    // The measurements fused at this timestamp, in the order they were fused.
+    private final double[] measurements;
+
     /**
      * Constructs a vision update record with the specified parameters.
      *
      * @param visionPose The vision-compensated pose estimate.
      * @param odometryPose The pose estimate based solely on odometry.
+     * @param measurements The measurements fused at this timestamp, kMeasurementStride values each.
      */
-    private VisionUpdate(Pose2d visionPose, Pose2d odometryPose) {
+    private VisionUpdate(Pose2d visionPose, Pose2d odometryPose, double[] measurements) {
       this.visionPose = visionPose;
       this.odometryPose = odometryPose;
+      this.measurements = measurements;
+      odometryX = odometryPose.getX();
+      odometryY = odometryPose.getY();
+      visionX = visionPose.getX();
+      visionY = visionPose.getY();
+      headingOffset = visionPose.getRotation().minus(odometryPose.getRotation()).getRadians();
+      headingOffsetCos = Math.cos(headingOffset);
+      headingOffsetSin = Math.sin(headingOffset);
     }
 
     /**
@@ -355,5 +542,21 @@ public class PinpointPoseEstimator {
       var delta = pose.minus(this.odometryPose);
       return this.visionPose.plus(delta);
     }
+
+    /**
+     * Compensates a pose the same way as {@link #compensate(Pose2d)}, without allocating.
+     *
+     * @param pose The pose to compensate, as x, y, and heading.
+     * @param compensatedPose The array to write the compensated x, y, and heading into. May be the
+     *     same array as pose.
+     */
+    public void compensate(double[] pose, double[] compensatedPose) {
+      double dx = pose[0] - odometryX;
+      double dy = pose[1] - odometryY;
+      double heading = pose[2];
+      compensatedPose[0] = visionX + dx * headingOffsetCos - dy * headingOffsetSin;
+      compensatedPose[1] = visionY + dx * headingOffsetSin + dy * headingOffsetCos;
+      compensatedPose[2] = MathUtil.angleModulus(heading + headingOffset);
+    }
   }
 }
@@ -0,0 +1,503 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.estimator;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.DoubleFunction;
+import org.firstinspires.ftc.lib.trobotix.CoordinateSystems;
+import org.firstinspires.ftc.lib.trobotix.hardware.AprilTagDetectorIO.AprilTagDetectorIOInputs;
+import org.firstinspires.ftc.lib.trobotix.hardware.MultiTagPoseSolver;
+import org.firstinspires.ftc.lib.wpilib.math.MathUtil;
+import org.firstinspires.ftc.lib.wpilib.math.Matrix;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose2d;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose3d;
+import org.firstinspires.ftc.lib.wpilib.math.numbers.N1;
+import org.firstinspires.ftc.lib.wpilib.math.numbers.N3;
+import org.firstinspires.ftc.lib.wpilib.math.util.Units;
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.Position;
+import org.firstinspires.ftc.vision.apriltag.AprilTagGameDatabase;
+import org.psilynx.psikit.core.Logger;
+
+/**
+ * Filters the robot poses from an {@link AprilTagDetectorIOInputs} before they're added to a pose
+ * estimator, and sets how much each one is trusted.
+ *
+ * <p>Each pose is checked in order, and rejected at the first check it fails:
+ *
+ * <ol>
+ *   <li>The tag has a field pose.
+ *   <li>The pose is on the field.
+ *   <li>The pose is close enough to the floor, and isn't tilted too far.
+ *   <li>The Mahalanobis distance between the pose and the estimate at the time it was measured is
+ *       within a threshold, so it's consistent with odometry. If every pose is rejected by this
+ *       check for long enough, the estimate is assumed to be wrong instead, and the poses are
+ *       accepted and their tags' reputations restored.
+ *   <li>The tag's reputation is high enough. Each tag's reputation drops when one of its poses
+ *       fails the Mahalanobis check, and recovers when one passes.
+ * </ol>
+ *
+ * <p>The standard deviations of a pose grow with the square of the distance to the tag, or come
+ * from the covariance of a multi-tag pose, scaled up by the ambiguity of the solve. Either way,
+ * they're divided by the tag's reputation. A multi-tag pose is used instead of the per-tag poses
+ * when there is one.
+ *
+ * <p>Every decision is logged under {@code VisionGate/<name>/}, with the reason a pose was
+ * rejected, so that the gate can be tuned from replay.
+ */
+public class VisionGate {
+  /** Adds the accepted poses to a pose estimator, such as {@code addVisionMeasurements}. */
+  @FunctionalInterface
+  public interface MeasurementConsumer {
+    /**
+     * Adds the accepted poses.
+     *
+     * @param poses The robot poses.
+     * @param timestamps The timestamps of the poses in seconds.
+     * @param stdDevs The standard deviations of each pose, flattened as x (m), y (m), and heading
+     *     (rad) for each pose in turn.
+     */
+    void accept(Pose2d[] poses, double[] timestamps, double[] stdDevs);
+  }
+
+  /** Why a pose was accepted or rejected. */
+  public enum Decision {
+    ACCEPTED,
+    /** Accepted despite failing the Mahalanobis check, to recover from a bad estimate. */
+    ACCEPTED_RECOVERY,
+    UNKNOWN_TAG,
+    OUT_OF_FIELD,
+    TOO_HIGH,
+    TILTED,
+    INCONSISTENT,
+    LOW_REPUTATION
+  }
+
+  private static final double kFieldHalfWidth = Units.inchesToMeters(72);
+
+  private final String logKey;
+
+  // The field position of each tag in the WPILib field frame, indexed by ID. NaN if the tag has no
+  // field position.
+  private final double[] tagX;
+  private final double[] tagY;
+  private final double[] tagZ;
+  private final double[] reputation;
+
+  private double minX;
+  private double minY;
+  private double maxX;
+  private double maxY;
+  private double fieldMargin = .1;
+  private double maxHeight = .15;
+  private double maxTilt = Math.toRadians(10);
+  private double mahalanobisThreshold = 11.34; // 99% for 3 degrees of freedom
+  private int recoveryFrames = 25;
+  private double estimateXVariance = .1 * .1;
+  private double estimateYVariance = .1 * .1;
+  private double estimateThetaVariance = .05 * .05;
+  private double baseXYStdDev = .05;
+  private double baseThetaStdDev = .1;
+  private double ambiguityScale = 5;
+  private double reputationPenalty = .3;
+  private double reputationRecovery = .1;
+  private double minReputation = .3;
+
+  private int inconsistentFrames = 0;
+
+  /**
+   * Creates a gate for the tags in the current game.
+   *
+   * @param name The name to log decisions under.
+   */
+  public VisionGate(String name) {
+    logKey = "VisionGate/" + name + "/";
+
+    var tags = AprilTagGameDatabase.getDecodeTagLibrary().getAllTags();
+    int maxID = 0;
+    for (var tag : tags) {
+      maxID = Math.max(maxID, tag.id);
+    }
+    tagX = new double[maxID + 1];
+    tagY = new double[maxID + 1];
+    tagZ = new double[maxID + 1];
+    Arrays.fill(tagX, Double.NaN);
+    for (var tag : tags) {
+      if (!MultiTagPoseSolver.hasFieldPose(tag)) {
+        continue;
+      }
+      var translation =
+          CoordinateSystems.fieldCoordinatesToWPILib(
+              new Position(
+                  tag.distanceUnit,
+                  tag.fieldPosition.get(0),
+                  tag.fieldPosition.get(1),
+                  tag.fieldPosition.get(2),
+                  0));
+      tagX[tag.id] = translation.getX();
+      tagY[tag.id] = translation.getY();
+      tagZ[tag.id] = translation.getZ();
+    }
+    reputation = new double[maxID + 1];
+    Arrays.fill(reputation, 1);
+
+    // The field is 144 inches square, centered on the SDK's origin.
+    var corner =
+        CoordinateSystems.fieldCoordinatesToWPILib(
+            new Position(DistanceUnit.METER, kFieldHalfWidth, kFieldHalfWidth, 0, 0));
+    var oppositeCorner =
+        CoordinateSystems.fieldCoordinatesToWPILib(
+            new Position(DistanceUnit.METER, -kFieldHalfWidth, -kFieldHalfWidth, 0, 0));
+    minX = Math.min(corner.getX(), oppositeCorner.getX());
+    maxX = Math.max(corner.getX(), oppositeCorner.getX());
+    minY = Math.min(corner.getY(), oppositeCorner.getY());
+    maxY = Math.max(corner.getY(), oppositeCorner.getY());
+  }
+
+  /**
+   * Sets how far outside of the field walls a pose can be. Defaults to 0.1 meters.
+   *
+   * @param meters The margin.
+   */
+  public void setFieldMargin(double meters) {
+    fieldMargin = meters;
+  }
+
+  /**
+   * Sets how high above or below the floor a pose can be. Defaults to 0.15 meters.
+   *
+   * @param meters The height.
+   */
+  public void setMaxHeight(double meters) {
+    maxHeight = meters;
+  }
+
+  /**
+   * Sets how far a pose can be rolled or pitched. Defaults to 10 degrees.
+   *
+   * @param radians The angle.
+   */
+  public void setMaxTilt(double radians) {
+    maxTilt = radians;
+  }
+
+  /**
+   * Sets the largest squared Mahalanobis distance from the estimate that's accepted. Defaults to
+   * 11.34, which 99% of poses drawn from the combined distribution are within.
+   *
+   * @param threshold The squared distance.
+   */
+  public void setMahalanobisThreshold(double threshold) {
+    mahalanobisThreshold = threshold;
+  }
+
+  /**
+   * Sets how many frames in a row every pose can fail the Mahalanobis check before the estimate is
+   * assumed to be wrong, and they're accepted anyway. Defaults to 25.
+   *
+   * @param frames The number of frames.
+   */
+  public void setRecoveryFrames(int frames) {
+    recoveryFrames = frames;
+  }
+
+  /**
+   * Sets the standard deviations of the pose estimate, for the Mahalanobis check.
+   *
+   * @param stdDevs The standard deviations of x and y in meters, and heading in radians.
+   */
+  public void setEstimateStdDevs(Matrix<N3, N1> stdDevs) {
+    estimateXVariance = stdDevs.get(0, 0) * stdDevs.get(0, 0);
+    estimateYVariance = stdDevs.get(1, 0) * stdDevs.get(1, 0);
+    estimateThetaVariance = stdDevs.get(2, 0) * stdDevs.get(2, 0);
+  }
+
+  /**
+   * Sets the standard deviations of a per-tag pose measured from 1 meter away. They grow with the
+   * square of the distance. Defaults to 0.05 meters and 0.1 radians.
+   *
+   * @param xyStdDev The standard deviation of x and y in meters.
+   * @param thetaStdDev The standard deviation of heading in radians.
+   */
+  public void setBaseStdDevs(double xyStdDev, double thetaStdDev) {
+    baseXYStdDev = xyStdDev;
+    baseThetaStdDev = thetaStdDev;
+  }
+
+  /**
+   * Sets how much the ambiguity of a multi-tag pose scales its standard deviations, as {@code 1 +
+   * scale * ambiguity}. Defaults to 5.
+   *
+   * @param scale The scale.
+   */
+  public void setAmbiguityScale(double scale) {
+    ambiguityScale = scale;
+  }
+
+  /**
+   * Sets how tag reputations change. Defaults to a penalty of 0.3, a recovery of 0.1, and a minimum
+   * of 0.3.
+   *
+   * @param penalty The fraction of its reputation a tag loses when one of its poses is
+   *     inconsistent.
+   * @param recovery The fraction of its lost reputation a tag regains when one of its poses is
+   *     consistent.
+   * @param minimum The reputation below which a tag's poses are rejected.
+   */
+  public void setReputation(double penalty, double recovery, double minimum) {
+    reputationPenalty = penalty;
+    reputationRecovery = recovery;
+    minReputation = minimum;
+  }
+
+  /**
+   * Gets the reputation of a tag, from 0 to 1.
+   *
+   * @param id The ID of the tag.
+   * @return The reputation, or 0 if the tag has no field position.
+   */
+  public double getReputation(int id) {
+    return id >= 0 && id < reputation.length && !Double.isNaN(tagX[id]) ? reputation[id] : 0;
+  }
+
+  /**
+   * Gates the poses from a frame, adds the accepted ones to a pose estimator, and logs every
+   * decision. Should be called after the inputs are processed.
+   *
+   * @param inputs The inputs from the camera.
+   * @param estimateSampler Samples the pose estimate at a timestamp, such as {@code sampleAt}.
+   * @param consumer Adds the accepted poses to the pose estimator, such as {@code
+   *     addVisionMeasurements}.
+   */
+  public void process(
+      AprilTagDetectorIOInputs inputs,
+      DoubleFunction<Optional<Pose2d>> estimateSampler,
+      MeasurementConsumer consumer) {
+    boolean multiTag = inputs.hasMultiTagPose;
+    int count = multiTag ? 1 : inputs.tagIDs.length;
+
+    var poses = new Pose3d[count];
+    var timestamps = new double[count];
+    var stdDevs = new double[count * 3];
+    var distances = new double[count];
+    var decisions = new Decision[count];
+    var ids = new int[count];
+
+    // Step 1: Check every pose against the field, and against the estimate.
+    int inconsistentCount = 0;
+    for (int i = 0; i < count; i++) {
+      if (multiTag) {
+        poses[i] = inputs.getMultiTagPose();
+        timestamps[i] = inputs.multiTagTimestamp;
+        ids[i] = -1;
+      } else {
+        poses[i] = inputs.getPose(i);
+        timestamps[i] = inputs.timestamps[i];
+        ids[i] = inputs.tagIDs[i];
+      }
+      decisions[i] = check(inputs, poses[i], ids[i], multiTag, stdDevs, i);
+      if (decisions[i] != Decision.ACCEPTED) {
+        continue;
+      }
+
+      var estimate = estimateSampler.apply(timestamps[i]);
+      if (estimate.isPresent()) {
+        var pose = poses[i].toPose2d();
+        double dx = pose.getX() - estimate.get().getX();
+        double dy = pose.getY() - estimate.get().getY();
+        double dtheta =
+            MathUtil.angleModulus(
+                pose.getRotation().getRadians() - estimate.get().getRotation().getRadians());
+        distances[i] =
+            dx * dx / (estimateXVariance + square(stdDevs[i * 3]))
+                + dy * dy / (estimateYVariance + square(stdDevs[i * 3 + 1]))
+                + dtheta * dtheta / (estimateThetaVariance + square(stdDevs[i * 3 + 2]));
+      }
+      boolean consistent = distances[i] <= mahalanobisThreshold;
+      updateReputation(inputs, ids[i], consistent);
+      // Trust the pose less if its tags have been inconsistent. This is done after the check, so
+      // that a bad tag can't make its own poses pass it.
+      double tagReputation = reputationOf(inputs, ids[i]);
+      for (int axis = 0; axis < 3; axis++) {
+        stdDevs[i * 3 + axis] /= Math.max(tagReputation, 1E-3);
+      }
+      if (!consistent) {
+        decisions[i] = Decision.INCONSISTENT;
+        inconsistentCount++;
+      } else if (tagReputation < minReputation) {
+        decisions[i] = Decision.LOW_REPUTATION;
+      }
+    }
+
+    // Step 2: If only inconsistent poses have been seen for long enough, trust them over the
+    // estimate.
+    int acceptedCount = 0;
+    for (var decision : decisions) {
+      if (decision == Decision.ACCEPTED) {
+        acceptedCount++;
+      }
+    }
+    if (acceptedCount == 0 && inconsistentCount > 0) {
+      inconsistentFrames++;
+      if (inconsistentFrames > recoveryFrames) {
+        for (int i = 0; i < count; i++) {
+          if (decisions[i] == Decision.INCONSISTENT) {
+            // The tags weren't at fault, so undo their loss of reputation.
+            double tagReputation = Math.max(reputationOf(inputs, ids[i]), 1E-3);
+            for (int axis = 0; axis < 3; axis++) {
+              stdDevs[i * 3 + axis] *= tagReputation;
+            }
+            restoreReputation(inputs, ids[i]);
+            decisions[i] = Decision.ACCEPTED_RECOVERY;
+            acceptedCount++;
+          }
+        }
+        inconsistentFrames = 0;
+      }
+    } else if (acceptedCount > 0) {
+      inconsistentFrames = 0;
+    }
+
+    // Step 3: Add the accepted poses to the estimator.
+    var acceptedPoses = new Pose2d[acceptedCount];
+    var acceptedTimestamps = new double[acceptedCount];
+    var acceptedStdDevs = new double[acceptedCount * 3];
+    var loggedAccepted = new Pose3d[acceptedCount];
+    var loggedRejected = new Pose3d[count - acceptedCount];
+    var reasons = new String[count];
+    int accepted = 0;
+    int rejected = 0;
+    for (int i = 0; i < count; i++) {
+      reasons[i] = decisions[i].name();
+      if (decisions[i] == Decision.ACCEPTED || decisions[i] == Decision.ACCEPTED_RECOVERY) {
+        acceptedPoses[accepted] = poses[i].toPose2d();
+        acceptedTimestamps[accepted] = timestamps[i];
+        System.arraycopy(stdDevs, i * 3, acceptedStdDevs, accepted * 3, 3);
+        loggedAccepted[accepted++] = poses[i];
+      } else {
+        loggedRejected[rejected++] = poses[i];
+      }
+    }
+    if (acceptedCount > 0) {
+      consumer.accept(acceptedPoses, acceptedTimestamps, acceptedStdDevs);
+    }
+
+    Logger.recordOutput(logKey + "TagIDs", ids);
+    Logger.recordOutput(logKey + "Decisions", reasons);
+    Logger.recordOutput(logKey + "MahalanobisDistances", distances);
+    Logger.recordOutput(logKey + "StdDevs", stdDevs);
+    Logger.recordOutput(logKey + "AcceptedPoses", loggedAccepted);
+    Logger.recordOutput(logKey + "RejectedPoses", loggedRejected);
+    Logger.recordOutput(logKey + "InconsistentFrames", inconsistentFrames);
+  }
+
+  /**
+   * Checks a pose against the field, and calculates its standard deviations before they're scaled
+   * by reputation.
+   *
+   * @return {@link Decision#ACCEPTED} if it passes, or why it was rejected.
+   */
+  private Decision check(
+      AprilTagDetectorIOInputs inputs,
+      Pose3d pose,
+      int id,
+      boolean multiTag,
+      double[] stdDevs,
+      int index) {
+    if (!multiTag && !hasFieldPosition(id)) {
+      return Decision.UNKNOWN_TAG;
+    }
+    if (pose.getX() < minX - fieldMargin
+        || pose.getX() > maxX + fieldMargin
+        || pose.getY() < minY - fieldMargin
+        || pose.getY() > maxY + fieldMargin) {
+      return Decision.OUT_OF_FIELD;
+    }
+    if (Math.abs(pose.getZ()) > maxHeight) {
+      return Decision.TOO_HIGH;
+    }
+    if (Math.abs(pose.getRotation().getX()) > maxTilt
+        || Math.abs(pose.getRotation().getY()) > maxTilt) {
+      return Decision.TILTED;
+    }
+
+    if (multiTag) {
+      double scale = 1 + ambiguityScale * inputs.multiTagAmbiguity;
+      var multiTagStdDevs = inputs.getMultiTagStdDevs();
+      stdDevs[index * 3] = multiTagStdDevs.get(0, 0) * scale;
+      stdDevs[index * 3 + 1] = multiTagStdDevs.get(1, 0) * scale;
+      stdDevs[index * 3 + 2] = multiTagStdDevs.get(2, 0) * scale;
+    } else {
+      double distanceSquared =
+          square(pose.getX() - tagX[id])
+              + square(pose.getY() - tagY[id])
+              + square(pose.getZ() - tagZ[id]);
+      double scale = Math.max(1, distanceSquared);
+      stdDevs[index * 3] = baseXYStdDev * scale;
+      stdDevs[index * 3 + 1] = baseXYStdDev * scale;
+      stdDevs[index * 3 + 2] = baseThetaStdDev * scale;
+    }
+    return Decision.ACCEPTED;
+  }
+
+  /**
+   * Gets the reputation of the tags behind a pose. A multi-tag pose has the lowest reputation of
+   * the tags in the frame.
+   */
+  private double reputationOf(AprilTagDetectorIOInputs inputs, int id) {
+    if (id >= 0) {
+      return reputation[id];
+    }
+    double lowest = 1;
+    for (int tag : inputs.tagIDs) {
+      if (hasFieldPosition(tag)) {
+        lowest = Math.min(lowest, reputation[tag]);
+      }
+    }
+    return lowest;
+  }
+
+  /** Updates the reputation of the tags behind a pose. */
+  private void updateReputation(AprilTagDetectorIOInputs inputs, int id, boolean consistent) {
+    if (id >= 0) {
+      updateReputation(id, consistent);
+      return;
+    }
+    for (int tag : inputs.tagIDs) {
+      if (hasFieldPosition(tag)) {
+        updateReputation(tag, consistent);
+      }
+    }
+  }
+
+  /** Resets the reputation of the tags behind a pose. */
+  private void restoreReputation(AprilTagDetectorIOInputs inputs, int id) {
+    if (id >= 0) {
+      reputation[id] = 1;
+      return;
+    }
+    for (int tag : inputs.tagIDs) {
+      if (hasFieldPosition(tag)) {
+        reputation[tag] = 1;
+      }
+    }
+  }
+
+  private void updateReputation(int id, boolean consistent) {
+    if (consistent) {
+      reputation[id] += reputationRecovery * (1 - reputation[id]);
+    } else {
+      reputation[id] -= reputationPenalty * reputation[id];
+    }
+  }
+
+  private boolean hasFieldPosition(int id) {
+    return id >= 0 && id < tagX.length && !Double.isNaN(tagX[id]);
+  }
+
+  private static double square(double value) {
+    return value * value;
+  }
+}
@@ -3,28 +3,164 @@
 
 package org.firstinspires.ftc.lib.trobotix.hardware;
 
+import org.firstinspires.ftc.lib.trobotix.logging.StructArrayCodec;
+import org.firstinspires.ftc.lib.wpilib.math.Matrix;
+import org.firstinspires.ftc.lib.wpilib.math.VecBuilder;
 import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose3d;
+import org.firstinspires.ftc.lib.wpilib.math.numbers.N1;
+import org.firstinspires.ftc.lib.wpilib.math.numbers.N3;
 import org.psilynx.psikit.core.LogTable;
 import org.psilynx.psikit.core.LoggableInputs;
 
 public interface AprilTagDetectorIO {
   class AprilTagDetectorIOInputs implements LoggableInputs {
+    private final StructArrayCodec<Pose3d> poseCodec = new StructArrayCodec<>(Pose3d.struct);
+
+    /**
+     * Increases by 1 for every frame the camera processes, so frames the loop missed show up as
+     * gaps.
+     */
+    public long sequence = 0;
+
+    /** The timestamp the frame was captured at. */
+    public double captureTimestamp = 0;
+
     public int[] tagIDs = new int[0];
-    public Pose3d[] poses = new Pose3d[0];
+
+    /**
+     * The robot pose from each tag, flattened in the same layout as {@link Pose3d}'s struct (x, y,
+     * z, qw, qx, qy, qz), so that logging and replaying doesn't allocate a {@link Pose3d} per tag.
+     * Still logged as a {@link Pose3d} struct array. Use {@link #getPose(int)} and {@link
+     * #setPose(int, Pose3d)} to access it with {@link Pose3d}s.
+     */
+    public double[] poses = new double[0];
+
     public double[] timestamps = new double[0];
 
+    /** Whether {@link #multiTagPose} was solved from the last frame. */
+    public boolean hasMultiTagPose = false;
+
+    /**
+     * The robot pose solved from every tag in the frame at once, in the same layout as {@link
+     * #poses}. Only set in multi-tag mode.
+     */
+    public double[] multiTagPose = new double[7];
+
+    /**
+     * The 6x6 covariance of {@link #multiTagPose}, row-major, for x, y, and z in meters, then
+     * rotations about the field's x, y, and z axes in radians.
+     */
+    public double[] multiTagCovariance = new double[36];
+
+    public double multiTagTimestamp = 0;
+
+    /** The root mean square reprojection error of {@link #multiTagPose}, in pixels. */
+    public double multiTagReprojectionError = 0;
+
+    /**
+     * The ratio of the RMS reprojection error of a single tag {@link #multiTagPose} to that of the
+     * other way the tag could be tilted, from 0 when there wasn't another solution to 1 when it fit
+     * as well. 0 when the pose was solved from more than one tag.
+     */
+    public double multiTagAmbiguity = 0;
+
+    /**
+     * Gets the robot pose solved from every tag in the frame.
+     *
+     * @return The robot pose.
+     */
+    public Pose3d getMultiTagPose() {
+      return poseCodec.get(multiTagPose, 0);
+    }
+
+    /**
+     * Sets the robot pose solved from every tag in the frame.
+     *
+     * @param pose The robot pose.
+     */
+    public void setMultiTagPose(Pose3d pose) {
+      poseCodec.set(pose, multiTagPose, 0);
+    }
+
+    /**
+     * Gets the standard deviations of the x, y, and heading of {@link #multiTagPose}, in the form
+     * the pose estimators take.
+     *
+     * @return The standard deviations, in meters and radians.
+     */
+    public Matrix<N3, N1> getMultiTagStdDevs() {
+      return VecBuilder.fill(
+          Math.sqrt(multiTagCovariance[0]),
+          Math.sqrt(multiTagCovariance[7]),
+          Math.sqrt(multiTagCovariance[35]));
+    }
+
+    /**
+     * Gets the robot pose from a tag.
+     *
+     * @param index The index of the tag.
+     * @return The robot pose.
+     */
+    public Pose3d getPose(int index) {
+      return poseCodec.get(poses, index);
+    }
+
+    /**
+     * Sets the robot pose from a tag. {@link #poses} must already be large enough to hold it.
+     *
+     * @param index The index of the tag.
+     * @param pose The robot pose.
+     */
+    public void setPose(int index, Pose3d pose) {
+      poseCodec.set(pose, poses, index);
+    }
+
+    /**
+     * Resizes the arrays to hold the given number of tags, reusing them if they're already the
+     * right size.
+     *
+     * @param count The number of tags.
+     */
+    public void resize(int count) {
+      if (tagIDs.length != count) {
+        tagIDs = new int[count];
+      }
+      if (poses.length != count * poseCodec.getDoublesPerElement()) {
+        poses = new double[count * poseCodec.getDoublesPerElement()];
+      }
+      if (timestamps.length != count) {
+        timestamps = new double[count];
+      }
+    }
+
     @Override
     public void toLog(LogTable logTable) {
+      logTable.put("sequence", sequence);
+      logTable.put("captureTimestamp", captureTimestamp);
       logTable.put("tagIDs", tagIDs);
-      logTable.put("poses", poses);
+      poseCodec.put(logTable, "poses", poses, poses.length / poseCodec.getDoublesPerElement());
       logTable.put("timestamps", timestamps);
+      logTable.put("hasMultiTagPose", hasMultiTagPose);
+      logTable.put("multiTagPose", multiTagPose);
+      logTable.put("multiTagCovariance", multiTagCovariance);
+      logTable.put("multiTagTimestamp", multiTagTimestamp);
+      logTable.put("multiTagReprojectionError", multiTagReprojectionError);
+      logTable.put("multiTagAmbiguity", multiTagAmbiguity);
     }
 
     @Override
     public void fromLog(LogTable logTable) {
+      sequence = logTable.get("sequence", 0L);
+      captureTimestamp = logTable.get("captureTimestamp", 0.0);
       tagIDs = logTable.get("tagIDs", new int[0]);
-      poses = logTable.get("poses", new Pose3d[0]);
+      poses = poseCodec.get(logTable, "poses", poses);
       timestamps = logTable.get("timestamps", new double[0]);
+      hasMultiTagPose = logTable.get("hasMultiTagPose", false);
+      multiTagPose = logTable.get("multiTagPose", new double[7]);
+      multiTagCovariance = logTable.get("multiTagCovariance", new double[36]);
+      multiTagTimestamp = logTable.get("multiTagTimestamp", 0.0);
+      multiTagReprojectionError = logTable.get("multiTagReprojectionError", 0.0);
+      multiTagAmbiguity = logTable.get("multiTagAmbiguity", 0.0);
     }
   }
 
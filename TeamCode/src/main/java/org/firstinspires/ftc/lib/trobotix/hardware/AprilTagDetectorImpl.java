@@ -3,20 +3,104 @@
 
 package org.firstinspires.ftc.lib.trobotix.hardware;
 
+import android.graphics.Canvas;
 import android.util.Size;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
 import org.firstinspires.ftc.lib.trobotix.CoordinateSystems;
+import org.firstinspires.ftc.lib.trobotix.logging.StructArrayCodec;
 import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose3d;
 import org.firstinspires.ftc.lib.wpilib.math.geometry.Transform3d;
 import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName;
+import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibration;
 import org.firstinspires.ftc.vision.VisionPortal;
+import org.firstinspires.ftc.vision.VisionProcessor;
+import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
 import org.firstinspires.ftc.vision.apriltag.AprilTagGameDatabase;
 import org.firstinspires.ftc.vision.apriltag.AprilTagProcessor;
+import org.opencv.core.Mat;
 
+/**
+ * Detects AprilTags with a webcam.
+ *
+ * <p>Every frame is processed on the camera's thread: the tags are detected, their robot poses are
+ * converted to the WPILib field frame, and the multi-tag pose is solved, into an immutable {@link
+ * Frame}. The newest frame is published through an {@link AtomicReference}, so {@link
+ * #updateInputs} only reads it once and copies it into the inputs, and never waits on vision.
+ */
 public class AprilTagDetectorImpl implements AprilTagDetectorIO {
+  /** The results of processing a camera frame. Never modified once published. */
+  private static final class Frame {
+    // Increases by 1 every frame the camera processes.
+    final long sequence;
+    // The Logger timestamp the frame was captured at.
+    final double captureTimestamp;
+    final int[] tagIDs;
+    final double[] poses;
+    final double[] timestamps;
+    // Null if there's no multi-tag pose.
+    final double[] multiTagPose;
+    final double[] multiTagCovariance;
+    final double multiTagReprojectionError;
+    final double multiTagAmbiguity;
+
+    Frame(
+        long sequence,
+        double captureTimestamp,
+        int[] tagIDs,
+        double[] poses,
+        double[] timestamps,
+        double[] multiTagPose,
+        double[] multiTagCovariance,
+        double multiTagReprojectionError,
+        double multiTagAmbiguity) {
+      this.sequence = sequence;
+      this.captureTimestamp = captureTimestamp;
+      this.tagIDs = tagIDs;
+      this.poses = poses;
+      this.timestamps = timestamps;
+      this.multiTagPose = multiTagPose;
+      this.multiTagCovariance = multiTagCovariance;
+      this.multiTagReprojectionError = multiTagReprojectionError;
+      this.multiTagAmbiguity = multiTagAmbiguity;
+    }
+  }
+
   private final AprilTagProcessor processor;
 
+  // Only touched by the camera's thread. The solver is null unless in multi-tag mode.
+  private final MultiTagPoseSolver multiTagSolver;
+  private final StructArrayCodec<Pose3d> poseCodec = new StructArrayCodec<>(Pose3d.struct);
+  private long nextSequence = 1;
+
+  // The newest frame, published by the camera's thread.
+  private final AtomicReference<Frame> latestFrame = new AtomicReference<>();
+  // The sequence of the frame the loop last read, only touched by the loop.
+  private long lastSequence = 0;
+
   public AprilTagDetectorImpl(Transform3d cameraPose, double fx, double cx, double fy, double cy) {
+    this(cameraPose, fx, cx, fy, cy, false);
+  }
+
+  /**
+   * Creates a detector.
+   *
+   * @param cameraPose The pose of the camera relative to the robot.
+   * @param fx The focal length in x, in pixels.
+   * @param cx The principal point in x, in pixels.
+   * @param fy The focal length in y, in pixels.
+   * @param cy The principal point in y, in pixels.
+   * @param multiTag Whether to also solve one robot pose from every tag in each frame, with a
+   *     {@link MultiTagPoseSolver}, into {@link AprilTagDetectorIOInputs#multiTagPose}.
+   */
+  public AprilTagDetectorImpl(
+      Transform3d cameraPose, double fx, double cx, double fy, double cy, boolean multiTag) {
+    multiTagSolver =
+        multiTag
+            ? new MultiTagPoseSolver(
+                AprilTagGameDatabase.getDecodeTagLibrary(), cameraPose, fx, cx, fy, cy)
+            : null;
     processor =
         new AprilTagProcessor.Builder()
             .setTagLibrary(AprilTagGameDatabase.getDecodeTagLibrary())
@@ -32,29 +116,130 @@ public class AprilTagDetectorImpl implements AprilTagDetectorIO {
         .setCamera(BaseOpMode.hardwareMap.get(WebcamName.class, "Camera"))
         .setCameraResolution(new Size(1280, 800))
         .setStreamFormat(VisionPortal.StreamFormat.MJPEG)
-        .addProcessor(processor)
+        .addProcessor(new PublishingProcessor())
         .build();
   }
 
+  /**
+   * Runs the {@link AprilTagProcessor} on the camera's thread, and publishes a {@link Frame} from
+   * the detections it returns.
+   */
+  private class PublishingProcessor implements VisionProcessor {
+    @Override
+    public void init(int width, int height, CameraCalibration calibration) {
+      processor.init(width, height, calibration);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object processFrame(Mat frame, long captureTimeNanos) {
+      var detections = processor.processFrame(frame, captureTimeNanos);
+      publish((List<AprilTagDetection>) detections, captureTimeNanos);
+      return detections;
+    }
+
+    @Override
+    public void onDrawFrame(
+        Canvas canvas,
+        int onscreenWidth,
+        int onscreenHeight,
+        float scaleBmpPxToCanvasPx,
+        float scaleCanvasDensity,
+        Object userContext) {
+      processor.onDrawFrame(
+          canvas,
+          onscreenWidth,
+          onscreenHeight,
+          scaleBmpPxToCanvasPx,
+          scaleCanvasDensity,
+          userContext);
+    }
+  }
+
+  /** Converts the detections from a camera frame, and publishes them. */
+  private void publish(List<AprilTagDetection> detections, long captureTimeNanos) {
+    int detectionCount = detections == null ? 0 : detections.size();
+    // Tags that aren't in the library have no robot pose, so they're left out.
+    int count = 0;
+    for (int i = 0; i < detectionCount; i++) {
+      if (detections.get(i).robotPose != null) {
+        count++;
+      }
+    }
+    var tagIDs = new int[count];
+    var poses = new double[count * poseCodec.getDoublesPerElement()];
+    var timestamps = new double[count];
+    int kept = 0;
+    for (int i = 0; i < detectionCount; i++) {
+      var robotPose = detections.get(i).robotPose;
+      if (robotPose == null) {
+        continue;
+      }
+      tagIDs[kept] = detections.get(i).id;
+      poseCodec.set(
+          new Pose3d(
+              CoordinateSystems.fieldCoordinatesToWPILib(robotPose.getPosition()),
+              CoordinateSystems.SDKRotationToWPILib(robotPose.getOrientation())),
+          poses,
+          kept);
+      timestamps[kept] = robotPose.getPosition().acquisitionTime / 1E9 - BaseOpMode.timeOffset;
+      kept++;
+    }
+
+    double[] multiTagPose = null;
+    double[] multiTagCovariance = null;
+    if (multiTagSolver != null && count > 0) {
+      var covariance = new double[36];
+      var pose = multiTagSolver.solve(detections, covariance);
+      if (pose != null) {
+        multiTagPose = new double[poseCodec.getDoublesPerElement()];
+        poseCodec.set(pose, multiTagPose, 0);
+        multiTagCovariance = covariance;
+      }
+    }
+
+    latestFrame.set(
+        new Frame(
+            nextSequence++,
+            captureTimeNanos / 1E9 - BaseOpMode.timeOffset,
+            tagIDs,
+            poses,
+            timestamps,
+            multiTagPose,
+            multiTagCovariance,
+            multiTagPose == null ? 0 : multiTagSolver.getReprojectionError(),
+            multiTagPose == null ? 0 : multiTagSolver.getAmbiguity()));
+  }
+
   @Override
   public void updateInputs(AprilTagDetectorIOInputs inputs) {
-    var detections = processor.getFreshDetections();
-    if (detections == null) {
-      inputs.poses = new Pose3d[0];
-      inputs.timestamps = new double[0];
-    } else {
-      inputs.poses = new Pose3d[detections.size()];
-      inputs.timestamps = new double[detections.size()];
-      for (int i = 0; i < detections.size(); i++) {
-        var robotPose = detections.get(i).robotPose;
-        inputs.tagIDs[i] = detections.get(i).id;
-        inputs.poses[i] =
-            new Pose3d(
-                CoordinateSystems.fieldCoordinatesToWPILib(robotPose.getPosition()),
-                CoordinateSystems.SDKRotationToWPILib(robotPose.getOrientation()));
-        inputs.timestamps[i] =
-            robotPose.getPosition().acquisitionTime / 1E9 - BaseOpMode.timeOffset;
-      }
+    var frame = latestFrame.get();
+    inputs.hasMultiTagPose = false;
+    if (frame == null || frame.sequence == lastSequence) {
+      // No new frame since the last loop.
+      inputs.resize(0);
+      return;
+    }
+    lastSequence = frame.sequence;
+
+    inputs.sequence = frame.sequence;
+    inputs.captureTimestamp = frame.captureTimestamp;
+    inputs.resize(frame.tagIDs.length);
+    System.arraycopy(frame.tagIDs, 0, inputs.tagIDs, 0, frame.tagIDs.length);
+    System.arraycopy(frame.poses, 0, inputs.poses, 0, frame.poses.length);
+    System.arraycopy(frame.timestamps, 0, inputs.timestamps, 0, frame.timestamps.length);
+    if (frame.multiTagPose != null) {
+      inputs.hasMultiTagPose = true;
+      System.arraycopy(frame.multiTagPose, 0, inputs.multiTagPose, 0, frame.multiTagPose.length);
+      System.arraycopy(
+          frame.multiTagCovariance,
+          0,
+          inputs.multiTagCovariance,
+          0,
+          frame.multiTagCovariance.length);
+      inputs.multiTagTimestamp = frame.captureTimestamp;
+      inputs.multiTagReprojectionError = frame.multiTagReprojectionError;
+      inputs.multiTagAmbiguity = frame.multiTagAmbiguity;
     }
   }
 }
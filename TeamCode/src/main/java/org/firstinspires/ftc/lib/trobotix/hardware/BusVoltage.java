@@ -0,0 +1,150 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import org.psilynx.psikit.core.Logger;
+
+/**
+ * The bus voltage used to convert motor voltages to duty cycles, derived from the voltage read by
+ * {@link HardwareInputs}.
+ *
+ * <p>Every new voltage reading is low-pass filtered, along with the total current the motors were
+ * estimated to draw when it was read. The predicted voltage corrects the filtered voltage for the
+ * difference between that filtered current and the current commanded for the outputs last written,
+ * using the battery resistance fit by the {@link PowerBudget}, so that the voltage doesn't lag
+ * behind sudden changes in load. Which of the raw, filtered and predicted voltages is used is set
+ * by {@link #setSource}.
+ */
+public final class BusVoltage {
+  private BusVoltage() {}
+
+  /** Which voltage {@link #get()} returns. */
+  public enum Source {
+    /** The last voltage read, unfiltered. */
+    RAW,
+    /** The low-pass filtered voltage. */
+    FILTERED,
+    /** The filtered voltage, corrected for the current commanded since it was read. */
+    PREDICTED
+  }
+
+  // Keeps a bad battery model from predicting a voltage the motors can't be driven with.
+  private static final double kMinVoltage = 6;
+
+  private static Source source = Source.PREDICTED;
+  private static double timeConstant = .1;
+
+  private static boolean initialized = false;
+  private static double lastTimestamp = 0;
+  private static double raw = 12;
+  private static double filtered = 12;
+  private static double filteredCurrent = 0;
+  private static double predicted = 12;
+
+  /**
+   * Sets which voltage {@link #get()} returns. Defaults to {@link Source#PREDICTED}.
+   *
+   * @param source The voltage to use.
+   */
+  public static void setSource(Source source) {
+    BusVoltage.source = source;
+  }
+
+  /**
+   * Sets the time constant of the low-pass filter. Defaults to 0.1 seconds.
+   *
+   * @param seconds The time constant.
+   */
+  public static void setTimeConstant(double seconds) {
+    timeConstant = seconds;
+  }
+
+  /**
+   * Restarts the filter from the next voltage reading. Must be called at the start of every OpMode,
+   * before {@link #update()}.
+   */
+  public static void reset() {
+    initialized = false;
+  }
+
+  /**
+   * Filters the voltage if a new one has been read, fits the battery model to it, and updates the
+   * prediction. Must be called once per loop, after {@link HardwareInputs#update}.
+   */
+  public static void update() {
+    double timestamp = HardwareInputs.getVoltageTimestamp();
+    double drawnCurrent = PowerBudget.getDrawnCurrent();
+    if (!initialized || timestamp > lastTimestamp) {
+      raw = HardwareInputs.getVoltage();
+      if (!initialized) {
+        filtered = raw;
+        filteredCurrent = drawnCurrent;
+        initialized = true;
+      } else {
+        double alpha = 1 - Math.exp(-(timestamp - lastTimestamp) / timeConstant);
+        filtered += alpha * (raw - filtered);
+        filteredCurrent += alpha * (drawnCurrent - filteredCurrent);
+      }
+      lastTimestamp = timestamp;
+      PowerBudget.observe(raw);
+    }
+    predicted =
+        Math.max(
+            kMinVoltage,
+            Math.min(
+                filtered - PowerBudget.getInternalResistance() * (drawnCurrent - filteredCurrent),
+                PowerBudget.getOpenCircuitVoltage()));
+  }
+
+  /**
+   * Gets the voltage selected by {@link #setSource}.
+   *
+   * @return The voltage in volts.
+   */
+  public static double get() {
+    return switch (source) {
+      case RAW -> raw;
+      case FILTERED -> filtered;
+      case PREDICTED -> predicted;
+    };
+  }
+
+  /**
+   * Gets the last voltage read, unfiltered.
+   *
+   * @return The voltage in volts.
+   */
+  public static double getRaw() {
+    return raw;
+  }
+
+  /**
+   * Gets the low-pass filtered voltage.
+   *
+   * @return The voltage in volts.
+   */
+  public static double getFiltered() {
+    return filtered;
+  }
+
+  /**
+   * Gets the voltage predicted for the outputs last written.
+   *
+   * @return The voltage in volts.
+   */
+  public static double getPredicted() {
+    return predicted;
+  }
+
+  /**
+   * Logs the raw, filtered and predicted voltages under {@code BusVoltage/}. Must be called between
+   * {@link Logger#periodicBeforeUser()} and {@link Logger#periodicAfterUser}.
+   */
+  public static void log() {
+    Logger.recordOutput("BusVoltage/Raw", raw);
+    Logger.recordOutput("BusVoltage/Filtered", filtered);
+    Logger.recordOutput("BusVoltage/Predicted", predicted);
+    Logger.recordOutput("BusVoltage/FilteredCurrentAmps", filteredCurrent);
+  }
+}
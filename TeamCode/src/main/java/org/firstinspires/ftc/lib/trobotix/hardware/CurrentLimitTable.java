@@ -0,0 +1,208 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import java.util.HashMap;
+import java.util.List;
+import org.firstinspires.ftc.lib.wpilib.math.system.plant.DCMotor;
+
+/**
+ * The highest voltage that can be applied to a motor without exceeding its stator or supply current
+ * limit, as a function of the motor's velocity and the bus voltage.
+ *
+ * <p>The limit can be calculated in closed form with {@link #calculate}, or looked up with {@link
+ * #lookup}, which bilinearly interpolates a table precomputed over velocity and bus voltage. The
+ * table's resolution is refined until the interpolation error, checked against the closed form
+ * between every pair of grid points, is within {@link #kMaxErrorVolts}. Outside of the table's
+ * range, {@link #lookup} falls back to the closed form.
+ *
+ * <p>Tables are shared between every motor with the same model and limits, through {@link #get}.
+ */
+public final class CurrentLimitTable {
+  /** The largest error {@link #lookup} is allowed to have, in volts. */
+  public static final double kMaxErrorVolts = 0.02;
+
+  private static final double kMinBusVoltage = 8;
+  private static final double kMaxBusVoltage = 14;
+  // The table covers velocities up to this multiple of the free speed, in both directions.
+  private static final double kVelocityRange = 1.5;
+  private static final int kInitialVelocitySteps = 64;
+  private static final int kInitialBusVoltageSteps = 12;
+  // Refinement stops here even if the error is still too high, to bound the table's size.
+  private static final int kMaxVelocitySteps = 2048;
+
+  private static final HashMap<List<Double>, CurrentLimitTable> tables = new HashMap<>();
+
+  private final double statorLimitAmps;
+  private final double supplyLimitAmps;
+  private final double stallCurrentAmps;
+  private final double freeCurrentAmps;
+  private final double freeSpeedRadPerSec;
+  private final double rOhms;
+  private final double kvRadPerSecPerVolt;
+
+  private final double minVelocity;
+  private int velocitySteps;
+  private double velocityStep;
+  private int busVoltageSteps;
+  private double busVoltageStep;
+  // Row major by velocity, with busVoltageSteps + 1 bus voltages per row.
+  private double[] table;
+  private final double maxError;
+
+  /**
+   * Gets the table for a motor model and pair of limits, creating it if no motor with the same
+   * model and limits has yet.
+   *
+   * @param model The motor's model.
+   * @param statorLimitAmps The stator current limit.
+   * @param supplyLimitAmps The supply current limit.
+   * @return The shared table.
+   */
+  public static CurrentLimitTable get(
+      DCMotor model, double statorLimitAmps, double supplyLimitAmps) {
+    var key =
+        List.of(
+            model.stallCurrentAmps,
+            model.freeCurrentAmps,
+            model.freeSpeedRadPerSec,
+            model.rOhms,
+            model.KvRadPerSecPerVolt,
+            statorLimitAmps,
+            supplyLimitAmps);
+    return tables.computeIfAbsent(
+        key, k -> new CurrentLimitTable(model, statorLimitAmps, supplyLimitAmps));
+  }
+
+  private CurrentLimitTable(DCMotor model, double statorLimitAmps, double supplyLimitAmps) {
+    this.statorLimitAmps = statorLimitAmps;
+    this.supplyLimitAmps = supplyLimitAmps;
+    stallCurrentAmps = model.stallCurrentAmps;
+    freeCurrentAmps = model.freeCurrentAmps;
+    freeSpeedRadPerSec = model.freeSpeedRadPerSec;
+    rOhms = model.rOhms;
+    kvRadPerSecPerVolt = model.KvRadPerSecPerVolt;
+    minVelocity = -kVelocityRange * freeSpeedRadPerSec;
+
+    velocitySteps = kInitialVelocitySteps;
+    busVoltageSteps = kInitialBusVoltageSteps;
+    double error;
+    while (true) {
+      velocityStep = -2 * minVelocity / velocitySteps;
+      busVoltageStep = (kMaxBusVoltage - kMinBusVoltage) / busVoltageSteps;
+      fill();
+      error = measureError();
+      if (error <= kMaxErrorVolts || velocitySteps >= kMaxVelocitySteps) {
+        break;
+      }
+      // The limit has a kink where the stator limit takes over, which runs diagonally across the
+      // table, so both axes need refining.
+      velocitySteps *= 2;
+      busVoltageSteps *= 2;
+    }
+    maxError = error;
+  }
+
+  private void fill() {
+    table = new double[(velocitySteps + 1) * (busVoltageSteps + 1)];
+    for (int v = 0; v <= velocitySteps; v++) {
+      for (int b = 0; b <= busVoltageSteps; b++) {
+        table[v * (busVoltageSteps + 1) + b] =
+            calculate(minVelocity + v * velocityStep, kMinBusVoltage + b * busVoltageStep);
+      }
+    }
+  }
+
+  /** Finds the largest interpolation error, at the centers and edge midpoints of every cell. */
+  private double measureError() {
+    double error = 0;
+    for (int v = 0; v < velocitySteps; v++) {
+      for (int b = 0; b < busVoltageSteps; b++) {
+        for (int point = 0; point < 3; point++) {
+          double tv = point == 1 ? 0 : .5;
+          double tb = point == 2 ? 0 : .5;
+          double expected =
+              calculate(
+                  minVelocity + (v + tv) * velocityStep,
+                  kMinBusVoltage + (b + tb) * busVoltageStep);
+          error = Math.max(error, Math.abs(expected - interpolate(v, b, tv, tb)));
+        }
+      }
+    }
+    return error;
+  }
+
+  private double interpolate(int v, int b, double tv, double tb) {
+    var values = table;
+    int i = v * (busVoltageSteps + 1) + b;
+    double low = values[i] + (values[i + 1] - values[i]) * tb;
+    int j = i + busVoltageSteps + 1;
+    double high = values[j] + (values[j + 1] - values[j]) * tb;
+    return low + (high - low) * tv;
+  }
+
+  /**
+   * Calculates the voltage limit in closed form.
+   *
+   * @param velRadPerSec The velocity of the motor, in the direction of the applied voltage.
+   * @param busVoltage The bus voltage.
+   * @return The highest voltage that can be applied, in the direction of the velocity.
+   */
+  public double calculate(double velRadPerSec, double busVoltage) {
+    double backEmfCurrent =
+        (stallCurrentAmps - freeCurrentAmps) * (velRadPerSec / freeSpeedRadPerSec);
+    double statorLimit =
+        Math.min(
+            statorLimitAmps,
+            (-backEmfCurrent
+                    + Math.sqrt(
+                        backEmfCurrent * backEmfCurrent
+                            + 4 * (busVoltage / 12) * stallCurrentAmps * supplyLimitAmps))
+                / 2);
+    return velRadPerSec / kvRadPerSecPerVolt + rOhms * statorLimit;
+  }
+
+  /**
+   * Looks up the voltage limit in the table, to within {@link #getMaxError()} of {@link
+   * #calculate}.
+   *
+   * @param velRadPerSec The velocity of the motor, in the direction of the applied voltage.
+   * @param busVoltage The bus voltage.
+   * @return The highest voltage that can be applied, in the direction of the velocity.
+   */
+  public double lookup(double velRadPerSec, double busVoltage) {
+    double v = (velRadPerSec - minVelocity) / velocityStep;
+    double b = (busVoltage - kMinBusVoltage) / busVoltageStep;
+    if (!(v >= 0 && v < velocitySteps && b >= 0 && b < busVoltageSteps)) {
+      return calculate(velRadPerSec, busVoltage);
+    }
+    int vIndex = (int) v;
+    int bIndex = (int) b;
+    return interpolate(vIndex, bIndex, v - vIndex, b - bIndex);
+  }
+
+  /**
+   * Estimates the supply current drawn by the motor at a duty cycle. Regenerative current isn't
+   * counted.
+   *
+   * @param dutyCycle The duty cycle applied to the motor.
+   * @param velRadPerSec The velocity of the motor.
+   * @param busVoltage The bus voltage.
+   * @return The supply current in amps.
+   */
+  public double supplyCurrent(double dutyCycle, double velRadPerSec, double busVoltage) {
+    double statorCurrent = (dutyCycle * busVoltage - velRadPerSec / kvRadPerSecPerVolt) / rOhms;
+    statorCurrent = Math.max(-statorLimitAmps, Math.min(statorCurrent, statorLimitAmps));
+    return Math.max(0, Math.min(dutyCycle * statorCurrent, supplyLimitAmps));
+  }
+
+  /**
+   * Gets the largest error of {@link #lookup} measured when the table was built.
+   *
+   * @return The error in volts.
+   */
+  public double getMaxError() {
+    return maxError;
+  }
+}
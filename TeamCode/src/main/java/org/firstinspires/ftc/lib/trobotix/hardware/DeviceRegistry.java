@@ -0,0 +1,393 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import java.util.Arrays;
+import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
+import org.firstinspires.ftc.lib.wpilib.math.MathUtil;
+import org.firstinspires.ftc.lib.wpilib.math.system.plant.DCMotor;
+import org.psilynx.psikit.core.Logger;
+
+/**
+ * Holds the state of every {@link Encoder} and {@link Motor} in parallel primitive arrays, indexed
+ * by the index each device is assigned when it registers. {@link Encoder}, {@link Motor} and {@link
+ * ModeledMotor} are thin handles onto their index.
+ *
+ * <p>The per loop math is done in tight loops over the arrays: {@link #updateEncoders} estimates
+ * every encoder's position and velocity, and {@link #applyMotorOutputs} current limits, converts,
+ * clamps, budgets and writes every motor's requested output. {@link #log()} logs each array with a
+ * single call.
+ */
+public final class DeviceRegistry {
+  private DeviceRegistry() {}
+
+  // The most samples the least squares estimator can fit a line through.
+  static final int kMaxLeastSquaresWindow = 16;
+  // The hub reports native velocity as a 16 bit value.
+  private static final double kNativeVelocityRange = 1 << 16;
+
+  // Encoders.
+  private static int encoderCount = 0;
+  private static int[] encoderInputIndices = new int[0];
+  private static double[] countsPerRevolution = new double[0];
+  private static boolean[] encoderInverted = new boolean[0];
+  private static VelocityEstimator[] estimators = new VelocityEstimator[0];
+  // In rotations and rotations per second, after inversion.
+  private static double[] positions = new double[0];
+  private static double[] velocities = new double[0];
+  // In ticks, before inversion. Seeded from the first snapshot an encoder is updated with, rather
+  // than at registration, as the motor is only read at registration when not replaying.
+  private static double[] lastTicks = new double[0];
+  private static boolean[] seeded = new boolean[0];
+  // In ticks per second, before inversion.
+  private static double[] tickVelocities = new double[0];
+  // The last 2 finite differences, for the moving average.
+  private static double[] differences = new double[0];
+  // Flattened rings of kMaxLeastSquaresWindow samples per encoder.
+  private static double[] historyTicks = new double[0];
+  private static double[] historyTimes = new double[0];
+  private static int[] historyHeads = new int[0];
+  private static int[] historySizes = new int[0];
+  private static int[] leastSquaresWindows = new int[0];
+  private static double[] alphaBetaTicks = new double[0];
+  private static double[] alphas = new double[0];
+  private static double[] betas = new double[0];
+  private static double time = 0;
+
+  // Motors.
+  private static int motorCount = 0;
+  private static int[] outputIndices = new int[0];
+  private static boolean[] motorInverted = new boolean[0];
+  private static double[] tolerances = new double[0];
+  private static boolean[] requested = new boolean[0];
+  // Either a duty cycle or a voltage, depending on requestIsVoltage.
+  private static double[] requests = new double[0];
+  private static boolean[] requestIsVoltage = new boolean[0];
+  private static boolean[] requestIsCurrentLimited = new boolean[0];
+  // The duty cycles requested, before power budget scaling and inversion.
+  private static double[] targetDutyCycles = new double[0];
+  // The last duty cycles written, before inversion.
+  private static double[] dutyCycles = new double[0];
+  private static int[] powerPriorities = new int[0];
+  // Current limiting, for modeled motors. -1 if the motor has no model.
+  private static int[] limitEncoderIndices = new int[0];
+  private static CurrentLimitTable[] currentLimits = new CurrentLimitTable[0];
+  private static boolean[] useLookupTables = new boolean[0];
+
+  /**
+   * Registers an encoder.
+   *
+   * @param inputIndex The index of the encoder in {@link HardwareInputs}.
+   * @param countsPerRevolution The encoder ticks per rotation.
+   * @return The encoder's index.
+   */
+  public static int registerEncoder(int inputIndex, double countsPerRevolution) {
+    int index = encoderCount++;
+    int n = encoderCount;
+    encoderInputIndices = Arrays.copyOf(encoderInputIndices, n);
+    DeviceRegistry.countsPerRevolution = Arrays.copyOf(DeviceRegistry.countsPerRevolution, n);
+    encoderInverted = Arrays.copyOf(encoderInverted, n);
+    estimators = Arrays.copyOf(estimators, n);
+    positions = Arrays.copyOf(positions, n);
+    velocities = Arrays.copyOf(velocities, n);
+    lastTicks = Arrays.copyOf(lastTicks, n);
+    seeded = Arrays.copyOf(seeded, n);
+    tickVelocities = Arrays.copyOf(tickVelocities, n);
+    differences = Arrays.copyOf(differences, n * 2);
+    historyTicks = Arrays.copyOf(historyTicks, n * kMaxLeastSquaresWindow);
+    historyTimes = Arrays.copyOf(historyTimes, n * kMaxLeastSquaresWindow);
+    historyHeads = Arrays.copyOf(historyHeads, n);
+    historySizes = Arrays.copyOf(historySizes, n);
+    leastSquaresWindows = Arrays.copyOf(leastSquaresWindows, n);
+    alphaBetaTicks = Arrays.copyOf(alphaBetaTicks, n);
+    alphas = Arrays.copyOf(alphas, n);
+    betas = Arrays.copyOf(betas, n);
+
+    encoderInputIndices[index] = inputIndex;
+    DeviceRegistry.countsPerRevolution[index] = countsPerRevolution;
+    estimators[index] = VelocityEstimator.MOVING_AVERAGE;
+    leastSquaresWindows[index] = 5;
+    alphas[index] = .4;
+    betas[index] = .1;
+    return index;
+  }
+
+  /**
+   * Registers a motor.
+   *
+   * @param outputIndex The index of the motor in {@link HardwareOutputs}.
+   * @return The motor's index.
+   */
+  public static int registerMotor(int outputIndex) {
+    int index = motorCount++;
+    int n = motorCount;
+    outputIndices = Arrays.copyOf(outputIndices, n);
+    motorInverted = Arrays.copyOf(motorInverted, n);
+    tolerances = Arrays.copyOf(tolerances, n);
+    requested = Arrays.copyOf(requested, n);
+    requests = Arrays.copyOf(requests, n);
+    requestIsVoltage = Arrays.copyOf(requestIsVoltage, n);
+    requestIsCurrentLimited = Arrays.copyOf(requestIsCurrentLimited, n);
+    targetDutyCycles = Arrays.copyOf(targetDutyCycles, n);
+    dutyCycles = Arrays.copyOf(dutyCycles, n);
+    powerPriorities = Arrays.copyOf(powerPriorities, n);
+    limitEncoderIndices = Arrays.copyOf(limitEncoderIndices, n);
+    currentLimits = Arrays.copyOf(currentLimits, n);
+    useLookupTables = Arrays.copyOf(useLookupTables, n);
+
+    outputIndices[index] = outputIndex;
+    tolerances[index] = .005;
+    powerPriorities[index] = PowerBudget.kDefaultPriority;
+    limitEncoderIndices[index] = -1;
+    return index;
+  }
+
+  /**
+   * Sets up current limiting for a motor, which is applied to voltages requested with {@link
+   * #setVoltage} with current limiting enabled.
+   *
+   * @param motorIndex The motor's index.
+   * @param encoderIndex The index of the encoder measuring the motor's velocity.
+   * @param model The motor's model.
+   * @param statorCurrentLimitAmps The stator current limit.
+   * @param supplyCurrentLimitAmps The supply current limit.
+   */
+  public static void setCurrentLimits(
+      int motorIndex,
+      int encoderIndex,
+      DCMotor model,
+      double statorCurrentLimitAmps,
+      double supplyCurrentLimitAmps) {
+    limitEncoderIndices[motorIndex] = encoderIndex;
+    currentLimits[motorIndex] =
+        CurrentLimitTable.get(model, statorCurrentLimitAmps, supplyCurrentLimitAmps);
+  }
+
+  /**
+   * Updates the position and velocity of every encoder from the latest {@link HardwareInputs}
+   * snapshot. Must be called once every time the snapshot changes.
+   *
+   * @param dt The time since the last snapshot, in seconds.
+   */
+  public static void updateEncoders(double dt) {
+    time += dt;
+    for (int i = 0; i < encoderCount; i++) {
+      double ticks = HardwareInputs.getEncoderPosition(encoderInputIndices[i]);
+      if (!seeded[i]) {
+        seeded[i] = true;
+        lastTicks[i] = ticks;
+        alphaBetaTicks[i] = ticks;
+      }
+      double difference = (ticks - lastTicks[i]) / dt;
+      lastTicks[i] = ticks;
+
+      int head = (historyHeads[i] + 1) % kMaxLeastSquaresWindow;
+      historyHeads[i] = head;
+      historyTicks[i * kMaxLeastSquaresWindow + head] = ticks;
+      historyTimes[i * kMaxLeastSquaresWindow + head] = time;
+      historySizes[i] = Math.min(historySizes[i] + 1, kMaxLeastSquaresWindow);
+
+      switch (estimators[i]) {
+        case MOVING_AVERAGE ->
+            tickVelocities[i] = (difference + differences[i * 2] + differences[i * 2 + 1]) / 3;
+        case NATIVE ->
+            tickVelocities[i] = HardwareInputs.getEncoderVelocity(encoderInputIndices[i]);
+        case OVERFLOW_CORRECTED -> {
+          double measured = HardwareInputs.getEncoderVelocity(encoderInputIndices[i]);
+          tickVelocities[i] =
+              measured
+                  + Math.round((difference - measured) / kNativeVelocityRange)
+                      * kNativeVelocityRange;
+        }
+        case LEAST_SQUARES -> tickVelocities[i] = leastSquaresSlope(i);
+        case ALPHA_BETA -> {
+          double predicted = alphaBetaTicks[i] + tickVelocities[i] * dt;
+          double residual = ticks - predicted;
+          alphaBetaTicks[i] = predicted + alphas[i] * residual;
+          tickVelocities[i] += betas[i] / dt * residual;
+        }
+      }
+      differences[i * 2 + 1] = differences[i * 2];
+      differences[i * 2] = difference;
+
+      double scale = (encoderInverted[i] ? -1 : 1) / countsPerRevolution[i];
+      positions[i] = ticks * scale;
+      velocities[i] = tickVelocities[i] * scale;
+    }
+  }
+
+  /** Fits a line through the newest samples of an encoder's history, and returns its slope. */
+  private static double leastSquaresSlope(int index) {
+    int n = Math.min(historySizes[index], leastSquaresWindows[index]);
+    if (n < 2) {
+      return 0;
+    }
+    int offset = index * kMaxLeastSquaresWindow;
+    int head = historyHeads[index];
+    // Relative to the newest sample, to keep the sums small.
+    double newestTime = historyTimes[offset + head];
+    double newestTicks = historyTicks[offset + head];
+    double sumT = 0, sumP = 0, sumTT = 0, sumTP = 0;
+    for (int k = 0; k < n; k++) {
+      int slot = offset + (head - k + kMaxLeastSquaresWindow) % kMaxLeastSquaresWindow;
+      double t = historyTimes[slot] - newestTime;
+      double p = historyTicks[slot] - newestTicks;
+      sumT += t;
+      sumP += p;
+      sumTT += t * t;
+      sumTP += t * p;
+    }
+    double denominator = n * sumTT - sumT * sumT;
+    return denominator == 0 ? 0 : (n * sumTP - sumT * sumP) / denominator;
+  }
+
+  /**
+   * Current limits, converts, clamps, budgets and writes the output requested for every motor this
+   * loop to {@link HardwareOutputs}. Must be called once per loop, after every output has been
+   * requested and before {@link HardwareOutputs#flush}.
+   *
+   * <p>The first pass works out every motor's duty cycle, and adds the supply current it will draw
+   * to the {@link PowerBudget}. Motors that weren't set this loop are counted at the duty cycle
+   * they were last set to, as the hub keeps applying it. The second pass scales each duty cycle by
+   * its priority level's share of the budget, and writes it.
+   */
+  public static void applyMotorOutputs() {
+    double busVoltage = BaseOpMode.busVoltage;
+    PowerBudget.beginAllocation();
+    for (int i = 0; i < motorCount; i++) {
+      int encoderIndex = limitEncoderIndices[i];
+      // Rotations per second to radians per second.
+      double velocity = encoderIndex >= 0 ? velocities[encoderIndex] * 2 * Math.PI : 0;
+      if (requested[i]) {
+        requested[i] = false;
+        double dutyCycle = requests[i];
+        if (requestIsVoltage[i]) {
+          double volts = dutyCycle;
+          if (requestIsCurrentLimited[i] && encoderIndex >= 0) {
+            if (volts >= 0) {
+              volts = Math.min(volts, getVoltageLimit(i, velocity, busVoltage));
+            } else {
+              volts = Math.max(volts, -getVoltageLimit(i, -velocity, busVoltage));
+            }
+          }
+          dutyCycle = volts / busVoltage;
+        }
+        targetDutyCycles[i] = MathUtil.clamp(dutyCycle, -1, 1);
+      }
+      if (encoderIndex >= 0) {
+        PowerBudget.addCurrent(
+            powerPriorities[i],
+            currentLimits[i].supplyCurrent(targetDutyCycles[i], velocity, busVoltage));
+      }
+    }
+    PowerBudget.allocate();
+
+    for (int i = 0; i < motorCount; i++) {
+      double dutyCycle = targetDutyCycles[i] * PowerBudget.getScale(powerPriorities[i]);
+      double lastDutyCycle = dutyCycles[i];
+      if ((dutyCycle == 0 && lastDutyCycle != 0)
+          || !MathUtil.isNear(lastDutyCycle, dutyCycle, tolerances[i])) {
+        HardwareOutputs.set(outputIndices[i], motorInverted[i] ? -dutyCycle : dutyCycle);
+        dutyCycles[i] = dutyCycle;
+      }
+    }
+  }
+
+  private static double getVoltageLimit(int index, double velRadPerSec, double busVoltage) {
+    var limit = currentLimits[index];
+    return useLookupTables[index]
+        ? limit.lookup(velRadPerSec, busVoltage)
+        : limit.calculate(velRadPerSec, busVoltage);
+  }
+
+  /**
+   * Logs the position and velocity of every encoder, and the duty cycle of every motor, under
+   * {@code Devices/}. Must be called between {@link Logger#periodicBeforeUser()} and {@link
+   * Logger#periodicAfterUser}.
+   */
+  public static void log() {
+    Logger.recordOutput("Devices/EncoderPositions", positions);
+    Logger.recordOutput("Devices/EncoderVelocities", velocities);
+    Logger.recordOutput("Devices/MotorDutyCycles", dutyCycles);
+  }
+
+  // Encoder accessors.
+
+  static double getPosition(int index) {
+    return positions[index];
+  }
+
+  static double getVelocity(int index) {
+    return velocities[index];
+  }
+
+  static void setEncoderInverted(int index, boolean inverted) {
+    encoderInverted[index] = inverted;
+    double scale = (inverted ? -1 : 1) / countsPerRevolution[index];
+    positions[index] = lastTicks[index] * scale;
+    velocities[index] = tickVelocities[index] * scale;
+  }
+
+  static void setVelocityEstimator(int index, VelocityEstimator estimator) {
+    // The alpha-beta filter's position only advances while it's selected, so it's reseeded from
+    // the last reading when switching, and its velocity carries on from the last estimate.
+    if (estimators[index] != estimator) {
+      alphaBetaTicks[index] = lastTicks[index];
+    }
+    estimators[index] = estimator;
+  }
+
+  static void setLeastSquaresWindow(int index, int samples) {
+    leastSquaresWindows[index] = samples;
+  }
+
+  static void setAlphaBetaGains(int index, double alpha, double beta) {
+    alphas[index] = alpha;
+    betas[index] = beta;
+  }
+
+  // Motor accessors.
+
+  static void setDutyCycle(int index, double dutyCycle) {
+    requests[index] = dutyCycle;
+    requestIsVoltage[index] = false;
+    requestIsCurrentLimited[index] = false;
+    requested[index] = true;
+  }
+
+  static void setVoltage(int index, double volts, boolean currentLimited) {
+    requests[index] = volts;
+    requestIsVoltage[index] = true;
+    requestIsCurrentLimited[index] = currentLimited;
+    requested[index] = true;
+  }
+
+  static double getDutyCycle(int index) {
+    return dutyCycles[index];
+  }
+
+  static void setMotorInverted(int index, boolean inverted) {
+    motorInverted[index] = inverted;
+  }
+
+  static boolean isMotorInverted(int index) {
+    return motorInverted[index];
+  }
+
+  static void setUseLookupTable(int index, boolean useLookupTable) {
+    useLookupTables[index] = useLookupTable;
+  }
+
+  static void setTolerance(int index, double tolerance) {
+    tolerances[index] = tolerance;
+  }
+
+  static void setPowerPriority(int index, int priority) {
+    if (priority < 0 || priority >= PowerBudget.kPriorityLevels) {
+      throw new IllegalArgumentException(
+          "Power priority must be from 0 to " + (PowerBudget.kPriorityLevels - 1));
+    }
+    powerPriorities[index] = priority;
+  }
+}
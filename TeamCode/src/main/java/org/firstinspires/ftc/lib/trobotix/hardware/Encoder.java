@@ -4,43 +4,25 @@
 package org.firstinspires.ftc.lib.trobotix.hardware;
 
 import com.qualcomm.robotcore.hardware.DcMotorEx;
-import java.util.ArrayList;
-import java.util.function.DoubleConsumer;
 import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
 
+/**
+ * A motor encoder, read from the {@link HardwareInputs} snapshot. A handle onto the encoder's state
+ * in the {@link DeviceRegistry}, where velocities are estimated for every encoder in one pass per
+ * loop. Each encoder picks its own {@link VelocityEstimator}.
+ */
 public class Encoder {
-  private final DcMotorEx internalMotor;
-  private final double countsPerRevolution;
-
-  private static final ArrayList<DoubleConsumer> velocityCacheResets = new ArrayList<>();
-
-  public static void recalculateVelocity(double dt) {
-    for (var cacheReset : velocityCacheResets) {
-      cacheReset.accept(dt);
-    }
-  }
-
-  private double velTMinus1 = 0;
-  private double velTMinus2 = 0;
+  private final int index;
 
   public Encoder(String name, double encoderGearReduction) {
-    internalMotor = (DcMotorEx) BaseOpMode.hardwareMap.dcMotor.get(name);
-    this.countsPerRevolution = encoderGearReduction;
-    velocityCacheResets.add(
-        (dt) -> {
-          var currentVel = (getPosition() - lastPos) / dt;
-          cachedVelocity = (currentVel + velTMinus1 + velTMinus2) / 3;
-          velTMinus2 = velTMinus1;
-          velTMinus1 = currentVel;
-          lastPos = getPosition();
-        });
-    lastPos = getPosition();
+    index =
+        DeviceRegistry.registerEncoder(
+            HardwareInputs.registerEncoder((DcMotorEx) BaseOpMode.hardwareMap.dcMotor.get(name)),
+            encoderGearReduction);
   }
 
-  private boolean inverted = false;
-
   public void setInverted(boolean inverted) {
-    this.inverted = inverted;
+    DeviceRegistry.setEncoderInverted(index, inverted);
   }
 
   public Encoder withInvert(boolean inverted) {
@@ -48,16 +30,68 @@ public class Encoder {
     return this;
   }
 
-  public double getPosition() {
-    return (inverted ? -internalMotor.getCurrentPosition() : internalMotor.getCurrentPosition())
-        / countsPerRevolution;
+  /**
+   * Sets how the encoder's velocity is estimated.
+   *
+   * @param estimator The estimator.
+   */
+  public void setVelocityEstimator(VelocityEstimator estimator) {
+    DeviceRegistry.setVelocityEstimator(index, estimator);
   }
 
-  private double lastPos;
-  private double cachedVelocity = 0;
+  public Encoder withVelocityEstimator(VelocityEstimator estimator) {
+    setVelocityEstimator(estimator);
+    return this;
+  }
 
+  /**
+   * Sets how many samples {@link VelocityEstimator#LEAST_SQUARES} fits a line through. Defaults to
+   * 5.
+   *
+   * @param samples The number of samples, from 2 to 16.
+   */
+  public void setLeastSquaresWindow(int samples) {
+    if (samples < 2 || samples > DeviceRegistry.kMaxLeastSquaresWindow) {
+      throw new IllegalArgumentException(
+          "Window must be from 2 to "
+              + DeviceRegistry.kMaxLeastSquaresWindow
+              + " samples, got "
+              + samples);
+    }
+    DeviceRegistry.setLeastSquaresWindow(index, samples);
+  }
+
+  /**
+   * Sets the gains of {@link VelocityEstimator#ALPHA_BETA}. Higher gains track changes faster, but
+   * pass through more noise. Defaults to an alpha of 0.4 and a beta of 0.1.
+   *
+   * @param alpha How much of the position residual to correct position by, from 0 to 1.
+   * @param beta How much of the position residual to correct velocity by, from 0 to 2.
+   */
+  public void setAlphaBetaGains(double alpha, double beta) {
+    DeviceRegistry.setAlphaBetaGains(index, alpha, beta);
+  }
+
+  /**
+   * Gets the position of the encoder, as of this loop's {@link HardwareInputs} snapshot.
+   *
+   * @return The position in rotations.
+   */
+  public double getPosition() {
+    return DeviceRegistry.getPosition(index);
+  }
+
+  /**
+   * Gets the velocity of the encoder, as estimated by its {@link VelocityEstimator}.
+   *
+   * @return The velocity in rotations per second.
+   */
   public double getVelocity() {
-    return cachedVelocity;
+    return DeviceRegistry.getVelocity(index);
+  }
+
+  int getIndex() {
+    return index;
   }
 
   public static final class CountsPerRevolution {
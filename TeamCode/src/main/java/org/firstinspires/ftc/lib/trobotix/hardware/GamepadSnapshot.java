@@ -0,0 +1,166 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+import java.util.Arrays;
+import org.psilynx.psikit.core.LogTable;
+import org.psilynx.psikit.core.LoggableInputs;
+import org.psilynx.psikit.core.Logger;
+
+/**
+ * The state of a {@link Gamepad}, captured once per loop so that everything reading it in that loop
+ * sees the same values.
+ *
+ * <p>Buttons are packed into a single {@code int}, with one bit per button, and the axes are stored
+ * in a {@code float[]}. The previous loop's buttons are kept as well, so edges can be found with a
+ * couple of bitwise operations. The snapshot is logged as inputs, so driver input replays exactly.
+ */
+public final class GamepadSnapshot implements LoggableInputs {
+  public static final int kA = 1;
+  public static final int kB = 1 << 1;
+  public static final int kX = 1 << 2;
+  public static final int kY = 1 << 3;
+  public static final int kGuide = 1 << 4;
+  public static final int kStart = 1 << 5;
+  public static final int kBack = 1 << 6;
+  public static final int kLeftBumper = 1 << 7;
+  public static final int kRightBumper = 1 << 8;
+  public static final int kLeftStick = 1 << 9;
+  public static final int kRightStick = 1 << 10;
+  public static final int kDpadUp = 1 << 11;
+  public static final int kDpadDown = 1 << 12;
+  public static final int kDpadLeft = 1 << 13;
+  public static final int kDpadRight = 1 << 14;
+  public static final int kTouchpad = 1 << 15;
+
+  public static final int kLeftStickX = 0;
+  public static final int kLeftStickY = 1;
+  public static final int kRightStickX = 2;
+  public static final int kRightStickY = 3;
+  public static final int kLeftTrigger = 4;
+  public static final int kRightTrigger = 5;
+  private static final int kAxisCount = 6;
+
+  private final String key;
+
+  private int buttons = 0;
+  private int previousButtons = 0;
+  private final float[] axes = new float[kAxisCount];
+
+  /**
+   * Constructs a GamepadSnapshot.
+   *
+   * @param key The key to log the snapshot under.
+   */
+  public GamepadSnapshot(String key) {
+    this.key = key;
+  }
+
+  /**
+   * Captures the current state of a gamepad, and processes it as logged inputs. When replaying, the
+   * logged state is used instead and the gamepad isn't read.
+   *
+   * @param gamepad The gamepad to capture. Null is treated as nothing being pressed.
+   */
+  public void capture(Gamepad gamepad) {
+    previousButtons = buttons;
+    if (gamepad != null && !Logger.isReplay()) {
+      buttons = pack(gamepad);
+      axes[kLeftStickX] = gamepad.left_stick_x;
+      axes[kLeftStickY] = gamepad.left_stick_y;
+      axes[kRightStickX] = gamepad.right_stick_x;
+      axes[kRightStickY] = gamepad.right_stick_y;
+      axes[kLeftTrigger] = gamepad.left_trigger;
+      axes[kRightTrigger] = gamepad.right_trigger;
+    } else if (gamepad == null) {
+      buttons = 0;
+      Arrays.fill(axes, 0);
+    }
+    Logger.processInputs(key, this);
+  }
+
+  private static int pack(Gamepad gamepad) {
+    int buttons = 0;
+    buttons |= gamepad.a ? kA : 0;
+    buttons |= gamepad.b ? kB : 0;
+    buttons |= gamepad.x ? kX : 0;
+    buttons |= gamepad.y ? kY : 0;
+    buttons |= gamepad.guide ? kGuide : 0;
+    buttons |= gamepad.start ? kStart : 0;
+    buttons |= gamepad.back ? kBack : 0;
+    buttons |= gamepad.left_bumper ? kLeftBumper : 0;
+    buttons |= gamepad.right_bumper ? kRightBumper : 0;
+    buttons |= gamepad.left_stick_button ? kLeftStick : 0;
+    buttons |= gamepad.right_stick_button ? kRightStick : 0;
+    buttons |= gamepad.dpad_up ? kDpadUp : 0;
+    buttons |= gamepad.dpad_down ? kDpadDown : 0;
+    buttons |= gamepad.dpad_left ? kDpadLeft : 0;
+    buttons |= gamepad.dpad_right ? kDpadRight : 0;
+    buttons |= gamepad.touchpad ? kTouchpad : 0;
+    return buttons;
+  }
+
+  /**
+   * Gets the bitfield of the buttons that are currently pressed.
+   *
+   * @return The buttons, as a combination of the {@code k} button constants.
+   */
+  public int getButtons() {
+    return buttons;
+  }
+
+  /**
+   * Whether any of the given buttons are pressed.
+   *
+   * @param buttonMask The buttons, as a combination of the {@code k} button constants.
+   * @return Whether any of them are pressed.
+   */
+  public boolean isPressed(int buttonMask) {
+    return (buttons & buttonMask) != 0;
+  }
+
+  /**
+   * Whether any of the given buttons were pressed since the previous snapshot.
+   *
+   * @param buttonMask The buttons, as a combination of the {@code k} button constants.
+   * @return Whether any of them went from released to pressed.
+   */
+  public boolean wasPressed(int buttonMask) {
+    return (buttons & ~previousButtons & buttonMask) != 0;
+  }
+
+  /**
+   * Whether any of the given buttons were released since the previous snapshot.
+   *
+   * @param buttonMask The buttons, as a combination of the {@code k} button constants.
+   * @return Whether any of them went from pressed to released.
+   */
+  public boolean wasReleased(int buttonMask) {
+    return (~buttons & previousButtons & buttonMask) != 0;
+  }
+
+  /**
+   * Gets the value of an axis.
+   *
+   * @param axis The axis, one of the {@code k} axis constants.
+   * @return The value of the axis.
+   */
+  public float getAxis(int axis) {
+    return axes[axis];
+  }
+
+  @Override
+  public void toLog(LogTable logTable) {
+    logTable.put("Buttons", buttons);
+    logTable.put("Axes", axes);
+  }
+
+  @Override
+  public void fromLog(LogTable logTable) {
+    buttons = logTable.get("Buttons", 0);
+    float[] loggedAxes = logTable.get("Axes", axes);
+    System.arraycopy(loggedAxes, 0, axes, 0, Math.min(loggedAxes.length, kAxisCount));
+  }
+}
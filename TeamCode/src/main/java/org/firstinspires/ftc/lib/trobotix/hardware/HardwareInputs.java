@@ -0,0 +1,539 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import com.qualcomm.hardware.lynx.LynxModule;
+import com.qualcomm.hardware.lynx.LynxVoltageSensor;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.HardwareMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
+import org.firstinspires.ftc.lib.trobotix.loop.LoopProfiler;
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.Pose2D;
+import org.firstinspires.ftc.robotcore.external.navigation.UnnormalizedAngleUnit;
+import org.psilynx.psikit.core.LogTable;
+import org.psilynx.psikit.core.LoggableInputs;
+import org.psilynx.psikit.core.Logger;
+import org.psilynx.psikit.ftc.GoBildaPinpointDriver;
+
+/**
+ * Reads every registered hardware input once per loop into a primitive snapshot, and logs the
+ * snapshot as a single input table under {@code HardwareInputs}.
+ *
+ * <p>The Lynx modules are in manual bulk caching mode, and their caches are cleared exactly once
+ * per frame, so every encoder read in a frame is served by a single bulk read per hub. Devices
+ * register themselves when they're constructed, and from then on read only from the snapshot, never
+ * from the hardware directly. As the snapshot is logged, the whole hardware layer replays from the
+ * log.
+ *
+ * <p>Normally {@link #update} reads a new frame itself. While the {@link HardwareIoThread} is
+ * running, frames are read on that thread instead, and handed to the loop through a lock-free
+ * triple buffer: the I/O thread fills one frame while the loop reads another, and the newest
+ * complete frame is swapped between them through an {@link AtomicReference}. Either way, every
+ * snapshot carries the timestamp it was read at.
+ *
+ * <p>Pinpoint resets are queued the same way as outputs, and applied by whichever thread is reading
+ * frames, right before it reads the next one, so the loop never talks to a Pinpoint while the I/O
+ * thread is updating it. Each Pinpoint counts the resets requested of it, and every frame carries
+ * the count applied before it was read, so that frames read before a reset can't undo it.
+ */
+public final class HardwareInputs {
+  private HardwareInputs() {}
+
+  private static List<LynxModule> lynxModules = List.of();
+  private static LynxVoltageSensor voltageSensor = null;
+
+  private static final ArrayList<DcMotorEx> encoderMotors = new ArrayList<>();
+  private static final ArrayList<GoBildaPinpointDriver> pinpoints = new ArrayList<>();
+  private static boolean[] pinpointReadsVelocity = new boolean[0];
+
+  /** A set of values read from the hardware. */
+  private static class Frame {
+    int[] encoderPositions = new int[0];
+    double[] encoderVelocities = new double[0];
+    double voltage = 12;
+    // The System.nanoTime() timestamp the voltage was read at, which is less often than the rest.
+    long voltageReadNanos = 0;
+    // x (m), y (m), and heading (rad) of each Pinpoint.
+    double[] pinpointPoses = new double[0];
+    // x (m/s), y (m/s), and heading (rad/s) velocities of each Pinpoint, if they're read.
+    double[] pinpointVelocities = new double[0];
+    // The number of resets applied to each Pinpoint before the frame was read.
+    long[] pinpointResets = new long[0];
+    // The System.nanoTime() timestamp halfway through reading the frame.
+    long readNanos = 0;
+    // Increases by 1 every frame the I/O thread publishes.
+    long sequence = 0;
+
+    void resize() {
+      encoderPositions = Arrays.copyOf(encoderPositions, encoderMotors.size());
+      encoderVelocities = Arrays.copyOf(encoderVelocities, encoderMotors.size());
+      pinpointPoses = Arrays.copyOf(pinpointPoses, pinpoints.size() * 3);
+      pinpointVelocities = Arrays.copyOf(pinpointVelocities, pinpoints.size() * 3);
+      pinpointResets = Arrays.copyOf(pinpointResets, pinpoints.size());
+    }
+  }
+
+  private static final class Snapshot extends Frame implements LoggableInputs {
+    // The Logger timestamps the frame and the voltage were read at.
+    double timestamp = 0;
+    double voltageTimestamp = 0;
+
+    @Override
+    public void toLog(LogTable logTable) {
+      logTable.put("EncoderPositions", encoderPositions);
+      logTable.put("EncoderVelocities", encoderVelocities);
+      logTable.put("Voltage", voltage);
+      logTable.put("PinpointPoses", pinpointPoses);
+      logTable.put("PinpointVelocities", pinpointVelocities);
+      logTable.put("Timestamp", timestamp);
+      logTable.put("VoltageTimestamp", voltageTimestamp);
+    }
+
+    @Override
+    public void fromLog(LogTable logTable) {
+      encoderPositions = logTable.get("EncoderPositions", encoderPositions);
+      encoderVelocities = logTable.get("EncoderVelocities", encoderVelocities);
+      voltage = logTable.get("Voltage", voltage);
+      pinpointPoses = logTable.get("PinpointPoses", pinpointPoses);
+      pinpointVelocities = logTable.get("PinpointVelocities", pinpointVelocities);
+      timestamp = logTable.get("Timestamp", timestamp);
+      voltageTimestamp = logTable.get("VoltageTimestamp", voltageTimestamp);
+    }
+  }
+
+  private static final Snapshot snapshot = new Snapshot();
+
+  // The frame being filled by the I/O thread.
+  private static Frame backFrame = new Frame();
+  // The newest complete frame, swapped between the I/O thread and the loop.
+  private static final AtomicReference<Frame> publishedFrame = new AtomicReference<>(new Frame());
+  // The frame the loop last read or took, only touched by the loop.
+  private static Frame frontFrame = new Frame();
+  private static long nextSequence = 1;
+
+  // Only touched by whichever thread is reading frames, so that frames read between voltage reads
+  // carry the last voltage read.
+  private static long voltagePeriodNanos = 50_000_000;
+  private static long nextVoltageReadNanos = 0;
+  private static double lastVoltage = 12;
+  private static long lastVoltageReadNanos = 0;
+
+  // The number of resets requested of each Pinpoint, only touched by the loop.
+  private static long[] pinpointResetsRequested = new long[0];
+
+  // Handed from the loop to whichever thread is reading frames, guarded by the lock. x (m), y (m),
+  // and heading (rad) of each Pinpoint, which parts of them to reset, and the reset's number.
+  private static final Object pinpointResetLock = new Object();
+  private static double[] queuedResetPoses = new double[0];
+  private static boolean[] queuedResetTranslations = new boolean[0];
+  private static boolean[] queuedResetRotations = new boolean[0];
+  private static long[] queuedResetNumbers = new long[0];
+
+  // Only touched by whichever thread is reading frames.
+  private static double[] applyingResetPoses = new double[0];
+  private static boolean[] applyingResetTranslations = new boolean[0];
+  private static boolean[] applyingResetRotations = new boolean[0];
+  private static long[] pinpointResetsApplied = new long[0];
+
+  /**
+   * Finds the Lynx modules and voltage sensor, and puts the modules in manual bulk caching mode.
+   * Must be called at the start of every OpMode, before {@link #update}.
+   *
+   * @param hardwareMap The hardware map of the OpMode.
+   */
+  public static void init(HardwareMap hardwareMap) {
+    lynxModules = hardwareMap.getAll(LynxModule.class);
+    for (var module : lynxModules) {
+      module.setBulkCachingMode(LynxModule.BulkCachingMode.MANUAL);
+    }
+    var voltageSensors = hardwareMap.getAll(LynxVoltageSensor.class);
+    voltageSensor = voltageSensors.isEmpty() ? null : voltageSensors.get(0);
+    nextVoltageReadNanos = System.nanoTime();
+  }
+
+  /**
+   * Sets how often the bus voltage is read. The voltage isn't part of the bulk read, so each read
+   * is a separate transaction with the hub. In between reads, frames carry the last voltage read.
+   * Defaults to 50 milliseconds.
+   *
+   * @param seconds The time between voltage reads.
+   */
+  public static void setVoltagePeriod(double seconds) {
+    voltagePeriodNanos = (long) (seconds * 1E9);
+  }
+
+  /**
+   * Registers a motor's encoder to be read every loop.
+   *
+   * @param motor The motor whose encoder to read.
+   * @return The index to read the encoder's values with.
+   * @throws IllegalStateException if the {@link HardwareIoThread} is running.
+   */
+  public static int registerEncoder(DcMotorEx motor) {
+    requireIoThreadStopped();
+    encoderMotors.add(motor);
+    resizeFrames();
+    int index = encoderMotors.size() - 1;
+    if (!Logger.isReplay()) {
+      snapshot.encoderPositions[index] = motor.getCurrentPosition();
+      snapshot.encoderVelocities[index] = motor.getVelocity();
+    }
+    return index;
+  }
+
+  /**
+   * Registers a Pinpoint to be updated every loop.
+   *
+   * @param pinpoint The Pinpoint.
+   * @param readVelocity Whether to read the Pinpoint's velocity as well as its pose. The velocity
+   *     registers must be in the Pinpoint's bulk read scope.
+   * @return The index to read the Pinpoint's values with.
+   * @throws IllegalStateException if the {@link HardwareIoThread} is running.
+   */
+  public static int registerPinpoint(GoBildaPinpointDriver pinpoint, boolean readVelocity) {
+    requireIoThreadStopped();
+    pinpoints.add(pinpoint);
+    pinpointReadsVelocity = Arrays.copyOf(pinpointReadsVelocity, pinpoints.size());
+    pinpointReadsVelocity[pinpoints.size() - 1] = readVelocity;
+    int count = pinpoints.size();
+    pinpointResetsRequested = Arrays.copyOf(pinpointResetsRequested, count);
+    pinpointResetsApplied = Arrays.copyOf(pinpointResetsApplied, count);
+    applyingResetPoses = Arrays.copyOf(applyingResetPoses, count * 3);
+    applyingResetTranslations = Arrays.copyOf(applyingResetTranslations, count);
+    applyingResetRotations = Arrays.copyOf(applyingResetRotations, count);
+    synchronized (pinpointResetLock) {
+      queuedResetPoses = Arrays.copyOf(queuedResetPoses, count * 3);
+      queuedResetTranslations = Arrays.copyOf(queuedResetTranslations, count);
+      queuedResetRotations = Arrays.copyOf(queuedResetRotations, count);
+      queuedResetNumbers = Arrays.copyOf(queuedResetNumbers, count);
+    }
+    resizeFrames();
+    return count - 1;
+  }
+
+  private static void requireIoThreadStopped() {
+    if (HardwareIoThread.isRunning()) {
+      throw new IllegalStateException(
+          "Devices can't be registered while the I/O thread is running");
+    }
+  }
+
+  private static void resizeFrames() {
+    snapshot.resize();
+    backFrame.resize();
+    publishedFrame.get().resize();
+    frontFrame.resize();
+  }
+
+  /** Clears the bulk caches and reads every registered encoder and Pinpoint into a frame. */
+  private static void read(Frame frame) {
+    long startNanos = System.nanoTime();
+    for (int i = 0; i < lynxModules.size(); i++) {
+      lynxModules.get(i).clearBulkCache();
+    }
+    for (int i = 0; i < encoderMotors.size(); i++) {
+      var motor = encoderMotors.get(i);
+      frame.encoderPositions[i] = motor.getCurrentPosition();
+      frame.encoderVelocities[i] = motor.getVelocity();
+    }
+    for (int i = 0; i < pinpoints.size(); i++) {
+      var pinpoint = pinpoints.get(i);
+      frame.pinpointResets[i] = pinpointResetsApplied[i];
+      pinpoint.update();
+      frame.pinpointPoses[i * 3] = pinpoint.getPosX(DistanceUnit.METER);
+      frame.pinpointPoses[i * 3 + 1] = pinpoint.getPosY(DistanceUnit.METER);
+      frame.pinpointPoses[i * 3 + 2] = pinpoint.getHeading(AngleUnit.RADIANS);
+      if (pinpointReadsVelocity[i]) {
+        frame.pinpointVelocities[i * 3] = pinpoint.getVelX(DistanceUnit.METER);
+        frame.pinpointVelocities[i * 3 + 1] = pinpoint.getVelY(DistanceUnit.METER);
+        frame.pinpointVelocities[i * 3 + 2] =
+            pinpoint.getHeadingVelocity(UnnormalizedAngleUnit.RADIANS);
+      }
+    }
+    long endNanos = System.nanoTime();
+    frame.readNanos = startNanos + (endNanos - startNanos) / 2;
+  }
+
+  /**
+   * Reads the bus voltage into a frame if it's due, otherwise carries over the last voltage read.
+   */
+  private static void readVoltage(Frame frame) {
+    long startNanos = System.nanoTime();
+    if (voltageSensor != null && startNanos - nextVoltageReadNanos >= 0) {
+      lastVoltage = voltageSensor.getVoltage();
+      long endNanos = System.nanoTime();
+      lastVoltageReadNanos = startNanos + (endNanos - startNanos) / 2;
+      nextVoltageReadNanos = startNanos + voltagePeriodNanos;
+    }
+    frame.voltage = lastVoltage;
+    frame.voltageReadNanos = lastVoltageReadNanos;
+  }
+
+  /**
+   * Reads a new frame and publishes it to the loop. Called by the {@link HardwareIoThread}.
+   *
+   * @return Whether there was anything to read.
+   */
+  static boolean readAndPublish() {
+    if (encoderMotors.isEmpty() && pinpoints.isEmpty() && voltageSensor == null) {
+      return false;
+    }
+    applyPinpointResets();
+    read(backFrame);
+    readVoltage(backFrame);
+    backFrame.sequence = nextSequence++;
+    backFrame = publishedFrame.getAndSet(backFrame);
+    return true;
+  }
+
+  /**
+   * Updates the snapshot and processes it as logged inputs. Reads a new frame if the {@link
+   * HardwareIoThread} isn't running, otherwise takes the newest frame it's published, if there's
+   * been one since the last loop. When replaying, the hardware isn't read, and the snapshot comes
+   * from the log instead. Must be called exactly once per loop, between {@link
+   * Logger#periodicBeforeUser()} and {@link Logger#periodicAfterUser}.
+   *
+   * @param profilerTime The {@link System#nanoTime()} timestamp the hardware input phase started.
+   * @return The current {@link System#nanoTime()} timestamp.
+   */
+  public static long update(long profilerTime) {
+    if (!Logger.isReplay()) {
+      if (!HardwareIoThread.isRunning()) {
+        read(frontFrame);
+        profilerTime = LoopProfiler.record(LoopProfiler.Phase.HARDWARE_INPUTS, profilerTime);
+        readVoltage(frontFrame);
+        profilerTime = LoopProfiler.record(LoopProfiler.Phase.VOLTAGE, profilerTime);
+        copyToSnapshot(frontFrame);
+      } else if (publishedFrame.get().sequence > frontFrame.sequence) {
+        frontFrame = publishedFrame.getAndSet(frontFrame);
+        copyToSnapshot(frontFrame);
+      }
+      profilerTime = LoopProfiler.record(LoopProfiler.Phase.HARDWARE_INPUTS, profilerTime);
+    }
+    Logger.processInputs("HardwareInputs", snapshot);
+    return LoopProfiler.record(LoopProfiler.Phase.LOGGING, profilerTime);
+  }
+
+  private static void copyToSnapshot(Frame frame) {
+    System.arraycopy(
+        frame.encoderPositions, 0, snapshot.encoderPositions, 0, frame.encoderPositions.length);
+    System.arraycopy(
+        frame.encoderVelocities, 0, snapshot.encoderVelocities, 0, frame.encoderVelocities.length);
+    for (int i = 0; i < frame.pinpointResets.length; i++) {
+      // A frame read before the Pinpoint's last reset was applied would undo it, so the snapshot
+      // keeps the pose it was reset to until a frame read after the reset comes in.
+      if (frame.pinpointResets[i] >= pinpointResetsRequested[i]) {
+        System.arraycopy(frame.pinpointPoses, i * 3, snapshot.pinpointPoses, i * 3, 3);
+      }
+    }
+    System.arraycopy(
+        frame.pinpointVelocities,
+        0,
+        snapshot.pinpointVelocities,
+        0,
+        frame.pinpointVelocities.length);
+    snapshot.voltage = frame.voltage;
+    snapshot.voltageReadNanos = frame.voltageReadNanos;
+    snapshot.voltageTimestamp = frame.voltageReadNanos / 1E9 - BaseOpMode.timeOffset;
+    snapshot.readNanos = frame.readNanos;
+    snapshot.timestamp = frame.readNanos / 1E9 - BaseOpMode.timeOffset;
+  }
+
+  /**
+   * Resets a Pinpoint's translation, rotation, or both. The snapshot is overwritten straight away,
+   * so that the reset is seen for the rest of the loop, rather than only once the next snapshot is
+   * taken. The Pinpoint itself is written right before the next frame is read, by the {@link
+   * HardwareIoThread} if it's running, or straight away if it isn't. A later reset of the same part
+   * before then replaces the earlier one.
+   *
+   * @param index The index returned when the Pinpoint was registered.
+   * @param x The X position to reset to in meters, if resetting the translation.
+   * @param y The Y position to reset to in meters, if resetting the translation.
+   * @param heading The heading to reset to in radians, if resetting the rotation.
+   * @param translation Whether to reset the translation.
+   * @param rotation Whether to reset the rotation.
+   */
+  static void resetPinpoint(
+      int index, double x, double y, double heading, boolean translation, boolean rotation) {
+    if (translation) {
+      snapshot.pinpointPoses[index * 3] = x;
+      snapshot.pinpointPoses[index * 3 + 1] = y;
+    }
+    if (rotation) {
+      snapshot.pinpointPoses[index * 3 + 2] = heading;
+    }
+    long number = ++pinpointResetsRequested[index];
+    synchronized (pinpointResetLock) {
+      if (translation) {
+        queuedResetPoses[index * 3] = x;
+        queuedResetPoses[index * 3 + 1] = y;
+        queuedResetTranslations[index] = true;
+      }
+      if (rotation) {
+        queuedResetPoses[index * 3 + 2] = heading;
+        queuedResetRotations[index] = true;
+      }
+      queuedResetNumbers[index] = number;
+    }
+    if (!HardwareIoThread.isRunning()) {
+      applyPinpointResets();
+    }
+  }
+
+  /**
+   * Writes every Pinpoint reset queued by {@link #resetPinpoint} since the last call. Called by
+   * whichever thread is reading frames, before it reads the next one.
+   */
+  static void applyPinpointResets() {
+    boolean any = false;
+    synchronized (pinpointResetLock) {
+      for (int i = 0; i < queuedResetNumbers.length; i++) {
+        if (queuedResetTranslations[i] || queuedResetRotations[i]) {
+          System.arraycopy(queuedResetPoses, i * 3, applyingResetPoses, i * 3, 3);
+          applyingResetTranslations[i] = queuedResetTranslations[i];
+          applyingResetRotations[i] = queuedResetRotations[i];
+          pinpointResetsApplied[i] = queuedResetNumbers[i];
+          queuedResetTranslations[i] = false;
+          queuedResetRotations[i] = false;
+          any = true;
+        }
+      }
+    }
+    if (!any) {
+      return;
+    }
+    for (int i = 0; i < applyingResetTranslations.length; i++) {
+      var pinpoint = pinpoints.get(i);
+      double x = applyingResetPoses[i * 3];
+      double y = applyingResetPoses[i * 3 + 1];
+      double heading = applyingResetPoses[i * 3 + 2];
+      if (applyingResetTranslations[i] && applyingResetRotations[i]) {
+        pinpoint.setPosition(new Pose2D(DistanceUnit.METER, x, y, AngleUnit.RADIANS, heading));
+      } else if (applyingResetTranslations[i]) {
+        pinpoint.setPosX(x, DistanceUnit.METER);
+        pinpoint.setPosY(y, DistanceUnit.METER);
+      } else if (applyingResetRotations[i]) {
+        pinpoint.setHeading(heading, AngleUnit.RADIANS);
+      }
+      applyingResetTranslations[i] = false;
+      applyingResetRotations[i] = false;
+    }
+  }
+
+  /**
+   * Gets the time the snapshot was read at. While the {@link HardwareIoThread} is running, this can
+   * be earlier than the start of the loop, and is the same across loops that didn't get a new
+   * frame.
+   *
+   * @return The timestamp in seconds, in the same timebase as {@link Logger#getTimestamp()}.
+   */
+  public static double getTimestamp() {
+    return snapshot.timestamp;
+  }
+
+  /**
+   * Gets the position of an encoder this loop.
+   *
+   * @param index The index returned when the encoder was registered.
+   * @return The position in ticks.
+   */
+  public static int getEncoderPosition(int index) {
+    return snapshot.encoderPositions[index];
+  }
+
+  /**
+   * Gets the velocity of an encoder this loop, as measured by the hub.
+   *
+   * @param index The index returned when the encoder was registered.
+   * @return The velocity in ticks per second.
+   */
+  public static double getEncoderVelocity(int index) {
+    return snapshot.encoderVelocities[index];
+  }
+
+  /**
+   * Gets the last bus voltage read. Use {@link BusVoltage} for a filtered voltage.
+   *
+   * @return The voltage in volts.
+   */
+  public static double getVoltage() {
+    return snapshot.voltage;
+  }
+
+  /**
+   * Gets the time the last bus voltage was read at, which only changes every {@link
+   * #setVoltagePeriod voltage period}.
+   *
+   * @return The timestamp in seconds, in the same timebase as {@link Logger#getTimestamp()}.
+   */
+  public static double getVoltageTimestamp() {
+    return snapshot.voltageTimestamp;
+  }
+
+  /**
+   * Gets the X position of a Pinpoint this loop.
+   *
+   * @param index The index returned when the Pinpoint was registered.
+   * @return The X position in meters.
+   */
+  public static double getPinpointX(int index) {
+    return snapshot.pinpointPoses[index * 3];
+  }
+
+  /**
+   * Gets the Y position of a Pinpoint this loop.
+   *
+   * @param index The index returned when the Pinpoint was registered.
+   * @return The Y position in meters.
+   */
+  public static double getPinpointY(int index) {
+    return snapshot.pinpointPoses[index * 3 + 1];
+  }
+
+  /**
+   * Gets the heading of a Pinpoint this loop.
+   *
+   * @param index The index returned when the Pinpoint was registered.
+   * @return The heading in radians.
+   */
+  public static double getPinpointHeading(int index) {
+    return snapshot.pinpointPoses[index * 3 + 2];
+  }
+
+  /**
+   * Gets the X velocity of a Pinpoint this loop, if it was registered to read velocity.
+   *
+   * @param index The index returned when the Pinpoint was registered.
+   * @return The X velocity in meters per second.
+   */
+  public static double getPinpointVelocityX(int index) {
+    return snapshot.pinpointVelocities[index * 3];
+  }
+
+  /**
+   * Gets the Y velocity of a Pinpoint this loop, if it was registered to read velocity.
+   *
+   * @param index The index returned when the Pinpoint was registered.
+   * @return The Y velocity in meters per second.
+   */
+  public static double getPinpointVelocityY(int index) {
+    return snapshot.pinpointVelocities[index * 3 + 1];
+  }
+
+  /**
+   * Gets the heading velocity of a Pinpoint this loop, if it was registered to read velocity.
+   *
+   * @param index The index returned when the Pinpoint was registered.
+   * @return The heading velocity in radians per second.
+   */
+  public static double getPinpointHeadingVelocity(int index) {
+    return snapshot.pinpointVelocities[index * 3 + 2];
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import com.qualcomm.robotcore.util.RobotLog;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A dedicated thread that does all of the hub I/O, so that the control loop overlaps with the
+ * USB/RS485 latency of every hub rather than waiting on it.
+ *
+ * <p>The thread runs continuously, each cycle writing the outputs queued by {@link
+ * HardwareOutputs#flush} and any queued Pinpoint resets, then reading a new {@link HardwareInputs}
+ * frame and publishing it. The control loop picks up the newest published frame at the start of
+ * every loop, and each frame is timestamped with when it was read, so that anything latency
+ * sensitive can account for its age.
+ *
+ * <p>Devices can't be registered while the thread is running.
+ */
+public final class HardwareIoThread {
+  private HardwareIoThread() {}
+
+  // How long the thread parks for when there are no devices to read.
+  private static final long kIdleParkNanos = 10_000_000;
+  // How long to wait for the thread to finish its last cycle when it's stopped.
+  private static final long kStopTimeoutMillis = 1000;
+
+  private static volatile Thread thread = null;
+  private static volatile boolean running = false;
+
+  /** Starts the I/O thread, if it isn't already running. */
+  public static void start() {
+    if (thread != null) {
+      return;
+    }
+    running = true;
+    var ioThread = new Thread(HardwareIoThread::run, "HardwareIoThread");
+    ioThread.setDaemon(true);
+    thread = ioThread;
+    ioThread.start();
+  }
+
+  /**
+   * Stops the I/O thread, waiting for it to write any outputs that are still queued. Outputs are
+   * written directly by {@link HardwareOutputs#flush} and inputs are read directly by {@link
+   * HardwareInputs#update} again afterwards.
+   */
+  public static void stop() {
+    var ioThread = thread;
+    if (ioThread == null) {
+      return;
+    }
+    running = false;
+    LockSupport.unpark(ioThread);
+    try {
+      ioThread.join(kStopTimeoutMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    thread = null;
+  }
+
+  /**
+   * Whether the I/O thread is running.
+   *
+   * @return Whether it's running.
+   */
+  public static boolean isRunning() {
+    return thread != null;
+  }
+
+  private static void run() {
+    while (running) {
+      try {
+        HardwareOutputs.writeQueued();
+        if (!HardwareInputs.readAndPublish()) {
+          LockSupport.parkNanos(kIdleParkNanos);
+        }
+      } catch (RuntimeException e) {
+        RobotLog.ee("HardwareIoThread", e, "Hub I/O threw an exception");
+      }
+    }
+    // Outputs and resets queued by the last loop before stopping still need to be written.
+    HardwareOutputs.writeQueued();
+    HardwareInputs.applyPinpointResets();
+  }
+}
@@ -0,0 +1,210 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+import com.qualcomm.robotcore.hardware.DcMotorSimple;
+import com.qualcomm.robotcore.hardware.HardwareDevice;
+import com.qualcomm.robotcore.hardware.Servo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.firstinspires.ftc.lib.trobotix.loop.LoopProfiler;
+import org.psilynx.psikit.core.Logger;
+
+/**
+ * Collects every motor power and servo position set during a loop, and writes them to the hubs
+ * once, at the end of the loop, by {@link #flush}.
+ *
+ * <p>A device set multiple times in the same loop is only written once, with the last value. Writes
+ * are ordered so that every device on the same hub is written back to back. While the {@link
+ * HardwareIoThread} is running, writes are handed off to it instead, so that the loop doesn't block
+ * on them at all. If the I/O thread falls behind, values that haven't been written yet are replaced
+ * by newer ones, so it never has more than one write per device queued.
+ *
+ * <p>The number of writes, the number of sets that were coalesced away, and how long the last flush
+ * took are logged by {@link #log()}. Not thread safe, apart from the I/O thread.
+ */
+public final class HardwareOutputs {
+  private HardwareOutputs() {}
+
+  private static final ArrayList<HardwareDevice> devices = new ArrayList<>();
+  private static final ArrayList<String> hubs = new ArrayList<>();
+  // Device indices sorted by hub, then by registration order.
+  private static int[] writeOrder = new int[0];
+  private static boolean[] isServo = new boolean[0];
+
+  // Only touched by the loop thread.
+  private static double[] pendingValues = new double[0];
+  private static boolean[] pendingDirty = new boolean[0];
+  private static int coalescedWrites = 0;
+
+  // Handed from the loop thread to the I/O thread, guarded by the lock.
+  private static final Object lock = new Object();
+  private static double[] queuedValues = new double[0];
+  private static boolean[] queuedDirty = new boolean[0];
+
+  // Only touched by the I/O thread.
+  private static double[] writingValues = new double[0];
+  private static boolean[] writingDirty = new boolean[0];
+
+  private static volatile int lastWrites = 0;
+  private static volatile long lastFlushNanos = 0;
+
+  /**
+   * Registers a motor to be written through the output stage.
+   *
+   * @param motor The motor.
+   * @return The index to set the motor's power with.
+   */
+  public static int registerMotor(DcMotor motor) {
+    return register(motor, false, motor.getController().getConnectionInfo());
+  }
+
+  /**
+   * Registers a servo to be written through the output stage.
+   *
+   * @param servo The servo.
+   * @return The index to set the servo's position with.
+   */
+  public static int registerServo(Servo servo) {
+    return register(servo, true, servo.getController().getConnectionInfo());
+  }
+
+  /**
+   * @param hub The connection info of the device's controller. Motor and servo controllers on the
+   *     same hub share it.
+   */
+  private static int register(HardwareDevice device, boolean servo, String hub) {
+    if (HardwareIoThread.isRunning()) {
+      throw new IllegalStateException(
+          "Devices can't be registered while the I/O thread is running");
+    }
+    synchronized (lock) {
+      int index = devices.size();
+      devices.add(device);
+      hubs.add(hub);
+
+      int count = devices.size();
+      isServo = Arrays.copyOf(isServo, count);
+      isServo[index] = servo;
+      pendingValues = Arrays.copyOf(pendingValues, count);
+      pendingDirty = Arrays.copyOf(pendingDirty, count);
+      queuedValues = Arrays.copyOf(queuedValues, count);
+      queuedDirty = Arrays.copyOf(queuedDirty, count);
+      writingValues = Arrays.copyOf(writingValues, count);
+      writingDirty = Arrays.copyOf(writingDirty, count);
+
+      var order = new Integer[count];
+      for (int i = 0; i < count; i++) {
+        order[i] = i;
+      }
+      // Stable, so devices on the same hub keep their registration order.
+      Arrays.sort(order, (a, b) -> hubs.get(a).compareTo(hubs.get(b)));
+      writeOrder = new int[count];
+      for (int i = 0; i < count; i++) {
+        writeOrder[i] = order[i];
+      }
+      return index;
+    }
+  }
+
+  /**
+   * Sets the value to write to a device at the end of the loop. For motors this is the power, and
+   * for servos it's the position.
+   *
+   * @param index The index returned when the device was registered.
+   * @param value The value to write.
+   */
+  public static void set(int index, double value) {
+    if (pendingDirty[index]) {
+      coalescedWrites++;
+    }
+    pendingValues[index] = value;
+    pendingDirty[index] = true;
+  }
+
+  /**
+   * Writes every value set since the last flush to the hubs, or queues them for the I/O thread.
+   * Must be called once at the end of every loop.
+   *
+   * @param profilerTime The {@link System#nanoTime()} timestamp the output phase started.
+   * @return The current {@link System#nanoTime()} timestamp.
+   */
+  public static long flush(long profilerTime) {
+    if (!HardwareIoThread.isRunning()) {
+      lastWrites = write(pendingValues, pendingDirty);
+      lastFlushNanos = System.nanoTime() - profilerTime;
+    } else {
+      synchronized (lock) {
+        for (int i = 0; i < pendingDirty.length; i++) {
+          if (pendingDirty[i]) {
+            if (queuedDirty[i]) {
+              coalescedWrites++;
+            }
+            queuedValues[i] = pendingValues[i];
+            queuedDirty[i] = true;
+            pendingDirty[i] = false;
+          }
+        }
+      }
+    }
+    return LoopProfiler.record(LoopProfiler.Phase.OUTPUTS, profilerTime);
+  }
+
+  /** Writes every dirty value in hub order, clearing the dirty flags. */
+  private static int write(double[] values, boolean[] dirty) {
+    int writes = 0;
+    for (int i = 0; i < writeOrder.length; i++) {
+      int index = writeOrder[i];
+      if (!dirty[index]) {
+        continue;
+      }
+      dirty[index] = false;
+      var device = devices.get(index);
+      if (isServo[index]) {
+        ((Servo) device).setPosition(values[index]);
+      } else {
+        ((DcMotorSimple) device).setPower(values[index]);
+      }
+      writes++;
+    }
+    return writes;
+  }
+
+  /**
+   * Writes every value queued by {@link #flush} since the last call. Called by the {@link
+   * HardwareIoThread}.
+   */
+  static void writeQueued() {
+    boolean any = false;
+    synchronized (lock) {
+      for (int i = 0; i < queuedDirty.length; i++) {
+        if (queuedDirty[i]) {
+          writingValues[i] = queuedValues[i];
+          writingDirty[i] = true;
+          queuedDirty[i] = false;
+          any = true;
+        }
+      }
+    }
+    if (!any) {
+      return;
+    }
+    long start = System.nanoTime();
+    lastWrites = write(writingValues, writingDirty);
+    lastFlushNanos = System.nanoTime() - start;
+  }
+
+  /**
+   * Logs the output stage's statistics under {@code HardwareOutputs/}, and resets the per loop
+   * counts. Must be called between {@link Logger#periodicBeforeUser()} and {@link
+   * Logger#periodicAfterUser}.
+   */
+  public static void log() {
+    Logger.recordOutput("HardwareOutputs/Writes", lastWrites);
+    Logger.recordOutput("HardwareOutputs/CoalescedWrites", coalescedWrites);
+    Logger.recordOutput("HardwareOutputs/FlushMs", lastFlushNanos / 1E6);
+    coalescedWrites = 0;
+  }
+}
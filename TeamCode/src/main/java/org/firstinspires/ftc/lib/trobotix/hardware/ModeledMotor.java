@@ -4,15 +4,16 @@
 package org.firstinspires.ftc.lib.trobotix.hardware;
 
 import com.qualcomm.robotcore.hardware.DcMotorEx;
-import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
 import org.firstinspires.ftc.lib.wpilib.math.system.plant.DCMotor;
-import org.firstinspires.ftc.lib.wpilib.math.util.Units;
 
+/**
+ * A {@link Motor} with a model and current limits. Voltages set on it are limited by the {@link
+ * DeviceRegistry}, using the velocity measured by its {@link Encoder}, so that neither the stator
+ * nor the supply current limit is exceeded.
+ */
 public class ModeledMotor {
   private final Motor motor;
-  private final DCMotor motorModel;
   private final Encoder encoder;
-  private final double statorCurrentLimitAmps, supplyCurrentLimitAmps;
 
   public ModeledMotor(
       Motor motor,
@@ -21,41 +22,49 @@ public class ModeledMotor {
       double statorCurrentLimitAmps,
       double supplyCurrentLimitAmps) {
     this.motor = motor;
-    this.motorModel = motorModel;
     this.encoder = encoder;
-    this.statorCurrentLimitAmps = statorCurrentLimitAmps;
-    this.supplyCurrentLimitAmps = supplyCurrentLimitAmps;
+    DeviceRegistry.setCurrentLimits(
+        motor.getIndex(),
+        encoder.getIndex(),
+        motorModel,
+        statorCurrentLimitAmps,
+        supplyCurrentLimitAmps);
   }
 
   public void setVoltage(double volts) {
-    double velRadPerSec = Units.rotationsToRadians(encoder.getVelocity());
+    DeviceRegistry.setVoltage(motor.getIndex(), volts, true);
+  }
+
+  /**
+   * Sets whether the current limits are looked up in a precomputed {@link CurrentLimitTable}
+   * instead of being calculated in closed form every loop. The table is shared with every other
+   * motor with the same model and limits, and is accurate to within {@link
+   * CurrentLimitTable#kMaxErrorVolts}. Off by default.
+   *
+   * @param useLookupTable Whether to use the lookup table.
+   */
+  public void setUseLookupTable(boolean useLookupTable) {
+    DeviceRegistry.setUseLookupTable(motor.getIndex(), useLookupTable);
+  }
 
-    if (volts >= 0) {
-      volts = Math.min(volts, getVoltageLimit(velRadPerSec));
-    } else {
-      volts = Math.max(volts, -getVoltageLimit(-velRadPerSec));
-    }
+  public ModeledMotor withLookupTable(boolean useLookupTable) {
+    setUseLookupTable(useLookupTable);
+    return this;
+  }
 
-    motor.setVoltage(volts);
+  /**
+   * Sets the motor's priority in the {@link PowerBudget}. Only modeled motors count towards the
+   * budget, but every motor is scaled by its priority level.
+   *
+   * @param priority The priority, from 0 to {@link PowerBudget#kPriorityLevels} - 1.
+   */
+  public void setPowerPriority(int priority) {
+    motor.setPowerPriority(priority);
   }
 
-  private double getVoltageLimit(double velRadPerSec) {
-    double statorLimit =
-        Math.min(
-            statorCurrentLimitAmps,
-            (-(motorModel.stallCurrentAmps - motorModel.freeCurrentAmps)
-                        * (velRadPerSec / motorModel.freeSpeedRadPerSec)
-                    + Math.sqrt(
-                        Math.pow(
-                                (motorModel.stallCurrentAmps - motorModel.freeCurrentAmps)
-                                    * (velRadPerSec / motorModel.freeSpeedRadPerSec),
-                                2)
-                            + 4
-                                * (BaseOpMode.busVoltage / 12)
-                                * motorModel.stallCurrentAmps
-                                * supplyCurrentLimitAmps))
-                / 2);
-    return motorModel.getVoltage(motorModel.getTorque(statorLimit), velRadPerSec);
+  public ModeledMotor withPowerPriority(int priority) {
+    setPowerPriority(priority);
+    return this;
   }
 
   public void setInverted(boolean inverted) {
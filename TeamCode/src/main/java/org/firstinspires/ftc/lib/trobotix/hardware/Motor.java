@@ -6,13 +6,19 @@ package org.firstinspires.ftc.lib.trobotix.hardware;
 import com.qualcomm.robotcore.hardware.DcMotor;
 import com.qualcomm.robotcore.hardware.DcMotorEx;
 import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
-import org.firstinspires.ftc.lib.wpilib.math.MathUtil;
 
+/**
+ * A motor, written through {@link HardwareOutputs}. A handle onto the motor's state in the {@link
+ * DeviceRegistry}, which clamps and writes the output requested for every motor in one pass at the
+ * end of the loop.
+ */
 public class Motor {
   private final DcMotorEx internalMotor;
+  private final int index;
 
   public Motor(String name) {
     internalMotor = (DcMotorEx) BaseOpMode.hardwareMap.dcMotor.get(name);
+    index = DeviceRegistry.registerMotor(HardwareOutputs.registerMotor(internalMotor));
   }
 
   public void setBrake(boolean brake) {
@@ -20,10 +26,12 @@ public class Motor {
         brake ? DcMotor.ZeroPowerBehavior.BRAKE : DcMotor.ZeroPowerBehavior.FLOAT);
   }
 
-  public boolean inverted = false;
-
   public void setInverted(boolean inverted) {
-    this.inverted = inverted;
+    DeviceRegistry.setMotorInverted(index, inverted);
+  }
+
+  public boolean isInverted() {
+    return DeviceRegistry.isMotorInverted(index);
   }
 
   public Motor withInvert(boolean inverted) {
@@ -31,31 +39,60 @@ public class Motor {
     return this;
   }
 
-  private double lastDutyCycle = 0.0;
-  private double tolerance = .005;
-
+  /**
+   * Sets the duty cycle of the motor. The write is made at the end of the loop, and is skipped if
+   * it's within the tolerance of the last duty cycle written.
+   *
+   * @param dutyCycle The duty cycle, from -1 to 1.
+   */
   public void set(double dutyCycle) {
-    dutyCycle = MathUtil.clamp(dutyCycle, -1, 1);
-    if ((dutyCycle == 0 && lastDutyCycle != 0)
-        || !MathUtil.isNear(lastDutyCycle, dutyCycle, tolerance)) {
-      internalMotor.setPower(inverted ? -dutyCycle : dutyCycle);
-      lastDutyCycle = dutyCycle;
-    }
+    DeviceRegistry.setDutyCycle(index, dutyCycle);
   }
 
+  /**
+   * Sets the voltage of the motor. Converted to a duty cycle with the bus voltage at the end of the
+   * loop.
+   *
+   * @param volts The voltage.
+   */
   public void setVoltage(double volts) {
-    set(volts / BaseOpMode.busVoltage);
+    DeviceRegistry.setVoltage(index, volts, false);
   }
 
   public void setTolerance(double tolerance) {
-    this.tolerance = tolerance;
+    DeviceRegistry.setTolerance(index, tolerance);
+  }
+
+  /**
+   * Sets the motor's priority in the {@link PowerBudget}. When the battery would sag below the
+   * brownout threshold, motors with lower priorities are scaled down first. Defaults to {@link
+   * PowerBudget#kDefaultPriority}.
+   *
+   * @param priority The priority, from 0 to {@link PowerBudget#kPriorityLevels} - 1.
+   */
+  public void setPowerPriority(int priority) {
+    DeviceRegistry.setPowerPriority(index, priority);
+  }
+
+  public Motor withPowerPriority(int priority) {
+    setPowerPriority(priority);
+    return this;
   }
 
   public DcMotorEx getInternalMotor() {
     return internalMotor;
   }
 
+  /**
+   * Gets the last duty cycle written to the motor.
+   *
+   * @return The duty cycle, from -1 to 1.
+   */
   public double getDutyCycle() {
-    return lastDutyCycle;
+    return DeviceRegistry.getDutyCycle(index);
+  }
+
+  int getIndex() {
+    return index;
   }
 }
@@ -0,0 +1,677 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.firstinspires.ftc.lib.trobotix.CoordinateSystems;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose3d;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Transform3d;
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.Position;
+import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
+import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
+import org.firstinspires.ftc.vision.apriltag.AprilTagLibrary;
+import org.firstinspires.ftc.vision.apriltag.AprilTagMetadata;
+
+/**
+ * Solves a single robot pose from the corners of every AprilTag detected in a frame, instead of one
+ * pose per tag.
+ *
+ * <p>The corners of every tag with a field pose in the {@link AprilTagLibrary} are projected
+ * through the camera, and the robot pose is refined with Levenberg-Marquardt to minimize the
+ * reprojection error of all of them at once. It starts from the pose the SDK solved from each tag,
+ * and keeps the best result, so a tag whose pose flipped is outvoted by the others. With only one
+ * tag, the pose with the tag tilted the other way about the line of sight is also tried, and the
+ * frame is rejected if both fit about as well.
+ *
+ * <p>The covariance of the pose is estimated from the Jacobian of the reprojection at the solution,
+ * scaled by the variance of the residuals. It's in the WPILib field frame, for x, y, and z, then
+ * rotations about the field's x, y, and z axes.
+ *
+ * <p>The math follows the SDK's conventions, so the result matches the per-tag {@link
+ * AprilTagDetection#robotPose}: the tag's corners are laid out as in its {@code solvePnP} call,
+ * with the tag's field orientation from the library, the camera's orientation is intrinsic ZXZ yaw,
+ * pitch, and roll, and the robot's is intrinsic ZXY. The refinement works on primitive arrays and
+ * doesn't allocate.
+ */
+public final class MultiTagPoseSolver {
+  private static final int kMaxIterations = 20;
+  // Keeps a frame with few residuals from claiming less noise than the detector has.
+  private static final double kMinPixelVariance = 1;
+  // The largest ratio of the best to the other single tag solution's RMS reprojection error that's
+  // accepted.
+  private static final double kMaxAmbiguity = .2;
+  // Two single tag solutions closer than this converged to the same minimum.
+  private static final double kSameSolutionMeters = .01;
+
+  // WPILib field axis i is SDK field axis kFieldToWPILibAxis[i], times kFieldToWPILibSign[i], for
+  // translations and then rotations. Translations map as in CoordinateSystems, a 90 degree turn one
+  // way, but the rotation is converted through Euler angles, which amounts to a 90 degree turn the
+  // other way, so the rotations' signs differ from the translations'.
+  private static final int[] kFieldToWPILibAxis = {1, 0, 2, 4, 3, 5};
+  private static final double[] kFieldToWPILibSign = {-1, 1, 1, 1, -1, 1};
+
+  private final double fx;
+  private final double fy;
+  private final double cx;
+  private final double cy;
+
+  // The corners of every tag with a field pose, and the rotation and translation of the tag, all
+  // in the SDK's field frame, in meters.
+  private final Map<Integer, double[]> tagCorners = new HashMap<>();
+  private final Map<Integer, double[]> tagPoses = new HashMap<>();
+
+  // The camera's rotation and translation in the SDK's robot frame.
+  private final double[] cameraRotation;
+  private final double[] cameraTranslation;
+
+  // The field and image points of the frame being solved.
+  private double[] fieldPoints = new double[24];
+  private double[] imagePoints = new double[16];
+  private int pointCount = 0;
+
+  // The robot's rotation (row-major) and translation in the SDK's field frame, being refined.
+  private final double[] rotation = new double[9];
+  private final double[] translation = new double[3];
+  private final double[] trialRotation = new double[9];
+  private final double[] trialTranslation = new double[3];
+  private final double[] bestRotation = new double[9];
+  private final double[] bestTranslation = new double[3];
+
+  // The normal equations, and their solution.
+  private final double[] hessian = new double[36];
+  private final double[] gradient = new double[6];
+  private final double[] damped = new double[36];
+  private final double[] step = new double[6];
+  private final double[] column = new double[6];
+  private final double[] jacobianU = new double[6];
+  private final double[] jacobianV = new double[6];
+
+  // The rotation from the field frame to the camera frame, and the camera's translation in the
+  // robot frame rotated into the camera frame, for the pose being evaluated.
+  private final double[] fieldToCamera = new double[9];
+  private final double[] cameraOffset = new double[3];
+  private final double[] exponential = new double[9];
+
+  private int tagCount = 0;
+  private double reprojectionError = 0;
+  private double ambiguity = 0;
+
+  /**
+   * Creates a solver.
+   *
+   * @param library The tags to solve with. Tags without a field pose are ignored.
+   * @param cameraPose The pose of the camera relative to the robot, as passed to {@link
+   *     AprilTagDetectorImpl}.
+   * @param fx The focal length in x, in pixels.
+   * @param cx The principal point in x, in pixels.
+   * @param fy The focal length in y, in pixels.
+   * @param cy The principal point in y, in pixels.
+   */
+  public MultiTagPoseSolver(
+      AprilTagLibrary library, Transform3d cameraPose, double fx, double cx, double fy, double cy) {
+    this.fx = fx;
+    this.fy = fy;
+    this.cx = cx;
+    this.cy = cy;
+
+    for (var tag : library.getAllTags()) {
+      if (!hasFieldPose(tag)) {
+        continue;
+      }
+      var q = tag.fieldOrientation;
+      double norm = Math.sqrt(q.w * q.w + q.x * q.x + q.y * q.y + q.z * q.z);
+      double w = q.w / norm;
+      double x = q.x / norm;
+      double y = q.y / norm;
+      double z = q.z / norm;
+      var pose = new double[12];
+      pose[0] = 1 - 2 * (y * y + z * z);
+      pose[1] = 2 * (x * y - w * z);
+      pose[2] = 2 * (x * z + w * y);
+      pose[3] = 2 * (x * y + w * z);
+      pose[4] = 1 - 2 * (x * x + z * z);
+      pose[5] = 2 * (y * z - w * x);
+      pose[6] = 2 * (x * z - w * y);
+      pose[7] = 2 * (y * z + w * x);
+      pose[8] = 1 - 2 * (x * x + y * y);
+      for (int i = 0; i < 3; i++) {
+        pose[9 + i] = tag.distanceUnit.toMeters(tag.fieldPosition.get(i));
+      }
+
+      // The same corners, in the same order, as the SDK solves each tag with.
+      double half = tag.distanceUnit.toMeters(tag.tagsize) / 2;
+      double[] cornerX = {-half, half, half, -half};
+      double[] cornerY = {half, half, -half, -half};
+      var corners = new double[12];
+      for (int corner = 0; corner < 4; corner++) {
+        for (int i = 0; i < 3; i++) {
+          corners[corner * 3 + i] =
+              pose[9 + i] + pose[i * 3] * cornerX[corner] + pose[i * 3 + 1] * cornerY[corner];
+        }
+      }
+      tagPoses.put(tag.id, pose);
+      tagCorners.put(tag.id, corners);
+    }
+
+    var orientation = CoordinateSystems.WPILibToSDKRotation(cameraPose.getRotation());
+    cameraRotation =
+        zxz(
+            orientation.getYaw(AngleUnit.RADIANS),
+            orientation.getPitch(AngleUnit.RADIANS),
+            orientation.getRoll(AngleUnit.RADIANS));
+    var position = CoordinateSystems.WPILibToRobotCoordinates(cameraPose.getTranslation());
+    cameraTranslation = new double[] {position.x, position.y, position.z};
+  }
+
+  /**
+   * Returns whether a tag has a real field pose. Tags that aren't meant for localization, like the
+   * obelisk's, are given a placeholder pose at the origin by the SDK's libraries.
+   *
+   * @param tag The tag.
+   * @return Whether the tag has a field pose.
+   */
+  public static boolean hasFieldPose(AprilTagMetadata tag) {
+    if (tag.fieldPosition == null || tag.fieldOrientation == null) {
+      return false;
+    }
+    var position = tag.fieldPosition;
+    return position.get(0) != 0 || position.get(1) != 0 || position.get(2) != 0;
+  }
+
+  /**
+   * Solves the robot pose from every tag with a field pose in a frame.
+   *
+   * @param detections The detections in the frame.
+   * @param covariance The array to write the 6x6 covariance of the pose into, row-major.
+   * @return The robot pose, or null if there were no tags with a field pose, or the only tag was
+   *     ambiguous.
+   */
+  public Pose3d solve(List<AprilTagDetection> detections, double[] covariance) {
+    // Step 1: Collect the corners of every tag with a field pose.
+    pointCount = 0;
+    tagCount = 0;
+    for (int i = 0; i < detections.size(); i++) {
+      var detection = detections.get(i);
+      var corners = tagCorners.get(detection.id);
+      if (corners == null || detection.corners == null || detection.robotPose == null) {
+        continue;
+      }
+      if ((pointCount + 4) * 3 > fieldPoints.length) {
+        fieldPoints = Arrays.copyOf(fieldPoints, fieldPoints.length * 2);
+        imagePoints = Arrays.copyOf(imagePoints, imagePoints.length * 2);
+      }
+      System.arraycopy(corners, 0, fieldPoints, pointCount * 3, 12);
+      for (int corner = 0; corner < 4; corner++) {
+        imagePoints[(pointCount + corner) * 2] = detection.corners[corner].x;
+        imagePoints[(pointCount + corner) * 2 + 1] = detection.corners[corner].y;
+      }
+      pointCount += 4;
+      tagCount++;
+    }
+    if (tagCount == 0) {
+      return null;
+    }
+
+    // Step 2: Refine from the pose the SDK solved from each tag, and keep the best.
+    double bestCost = Double.POSITIVE_INFINITY;
+    int bestDetection = -1;
+    for (int i = 0; i < detections.size(); i++) {
+      var detection = detections.get(i);
+      if (!tagCorners.containsKey(detection.id)
+          || detection.corners == null
+          || detection.robotPose == null) {
+        continue;
+      }
+      var position = detection.robotPose.getPosition().toUnit(DistanceUnit.METER);
+      var orientation = detection.robotPose.getOrientation();
+      zxy(
+          orientation.getYaw(AngleUnit.RADIANS),
+          orientation.getPitch(AngleUnit.RADIANS),
+          orientation.getRoll(AngleUnit.RADIANS),
+          rotation);
+      translation[0] = position.x;
+      translation[1] = position.y;
+      translation[2] = position.z;
+      double cost = refine();
+      if (cost < bestCost) {
+        bestCost = cost;
+        bestDetection = i;
+        System.arraycopy(rotation, 0, bestRotation, 0, 9);
+        System.arraycopy(translation, 0, bestTranslation, 0, 3);
+      }
+    }
+    if (!Double.isFinite(bestCost)) {
+      return null;
+    }
+
+    // Step 3: With only one tag, also try the other way it could be tilted, and reject the frame
+    // if that fits about as well.
+    ambiguity = 0;
+    if (tagCount == 1) {
+      System.arraycopy(bestRotation, 0, rotation, 0, 9);
+      System.arraycopy(bestTranslation, 0, translation, 0, 3);
+      flip(tagPoses.get(detections.get(bestDetection).id));
+      double cost = refine();
+      double distance =
+          Math.sqrt(
+              square(translation[0] - bestTranslation[0])
+                  + square(translation[1] - bestTranslation[1])
+                  + square(translation[2] - bestTranslation[2]));
+      if (distance > kSameSolutionMeters) {
+        // Both costs are summed over the same corners, so the ratio of their square roots is the
+        // ratio of the RMS reprojection errors.
+        double best = Math.min(cost, bestCost);
+        double other = Math.max(cost, bestCost);
+        ambiguity = other > 0 ? Math.sqrt(best / other) : 1;
+        if (cost < bestCost) {
+          bestCost = cost;
+          System.arraycopy(rotation, 0, bestRotation, 0, 9);
+          System.arraycopy(translation, 0, bestTranslation, 0, 3);
+        }
+      }
+      if (ambiguity > kMaxAmbiguity) {
+        return null;
+      }
+    }
+
+    // Step 4: Estimate the covariance from the normal equations at the solution.
+    System.arraycopy(bestRotation, 0, rotation, 0, 9);
+    System.arraycopy(bestTranslation, 0, translation, 0, 3);
+    reprojectionError = Math.sqrt(bestCost / pointCount);
+    double pixelVariance = Math.max(kMinPixelVariance, bestCost / Math.max(1, 2 * pointCount - 6));
+    buildNormalEquations();
+    System.arraycopy(hessian, 0, damped, 0, 36);
+    if (!choleskyDecompose(damped)) {
+      return null;
+    }
+    // The SDK's field frame is rotated 90 degrees from WPILib's, as in CoordinateSystems.
+    for (int j = 0; j < 6; j++) {
+      Arrays.fill(column, 0);
+      column[kFieldToWPILibAxis[j]] = 1;
+      choleskySolve(damped, column, step);
+      for (int i = 0; i < 6; i++) {
+        covariance[i * 6 + j] =
+            kFieldToWPILibSign[i]
+                * kFieldToWPILibSign[j]
+                * pixelVariance
+                * step[kFieldToWPILibAxis[i]];
+      }
+    }
+
+    // Step 5: Convert the pose the same way as the SDK's per-tag poses are.
+    double pitch = Math.asin(Math.max(-1, Math.min(1, bestRotation[7])));
+    double yaw = Math.atan2(-bestRotation[1], bestRotation[4]);
+    double roll = Math.atan2(-bestRotation[6], bestRotation[8]);
+    return new Pose3d(
+        CoordinateSystems.fieldCoordinatesToWPILib(
+            new Position(
+                DistanceUnit.METER, bestTranslation[0], bestTranslation[1], bestTranslation[2], 0)),
+        CoordinateSystems.SDKRotationToWPILib(
+            new YawPitchRollAngles(AngleUnit.RADIANS, yaw, pitch, roll, 0)));
+  }
+
+  /**
+   * Gets the number of tags the last pose was solved from.
+   *
+   * @return The number of tags.
+   */
+  public int getTagCount() {
+    return tagCount;
+  }
+
+  /**
+   * Gets the root mean square reprojection error of the last pose solved, in pixels per corner.
+   *
+   * @return The reprojection error.
+   */
+  public double getReprojectionError() {
+    return reprojectionError;
+  }
+
+  /**
+   * Gets the ratio of the RMS reprojection error of the best to the other solution of the last
+   * single tag solve, from 0 when there's no other solution to 1 when both fit equally well. 0 when
+   * more than one tag was solved.
+   *
+   * @return The ambiguity.
+   */
+  public double getAmbiguity() {
+    return ambiguity;
+  }
+
+  /**
+   * Refines the pose in rotation and translation with Levenberg-Marquardt.
+   *
+   * @return The sum of squared reprojection errors at the refined pose, or infinity if a corner is
+   *     behind the camera.
+   */
+  private double refine() {
+    double cost = cost(rotation, translation);
+    if (!Double.isFinite(cost)) {
+      return cost;
+    }
+    double lambda = 1E-3;
+    for (int iteration = 0; iteration < kMaxIterations; iteration++) {
+      buildNormalEquations();
+      boolean improved = false;
+      while (lambda < 1E8) {
+        System.arraycopy(hessian, 0, damped, 0, 36);
+        for (int i = 0; i < 6; i++) {
+          damped[i * 7] += lambda * Math.max(hessian[i * 7], 1E-9);
+          column[i] = -gradient[i];
+        }
+        if (choleskyDecompose(damped)) {
+          choleskySolve(damped, column, step);
+          for (int i = 0; i < 3; i++) {
+            trialTranslation[i] = translation[i] + step[i];
+          }
+          rotate(step[3], step[4], step[5], rotation, trialRotation);
+          double trialCost = cost(trialRotation, trialTranslation);
+          if (trialCost < cost) {
+            System.arraycopy(trialRotation, 0, rotation, 0, 9);
+            System.arraycopy(trialTranslation, 0, translation, 0, 3);
+            improved = cost - trialCost > 1E-12 * cost;
+            cost = trialCost;
+            lambda = Math.max(lambda / 10, 1E-9);
+            break;
+          }
+        }
+        lambda *= 10;
+      }
+      if (!improved) {
+        break;
+      }
+    }
+    return cost;
+  }
+
+  /** Calculates the sum of squared reprojection errors of a pose. */
+  private double cost(double[] robotRotation, double[] robotTranslation) {
+    calculateFieldToCamera(robotRotation);
+    var m = fieldToCamera;
+    double cost = 0;
+    for (int i = 0; i < pointCount; i++) {
+      double dx = fieldPoints[i * 3] - robotTranslation[0];
+      double dy = fieldPoints[i * 3 + 1] - robotTranslation[1];
+      double dz = fieldPoints[i * 3 + 2] - robotTranslation[2];
+      double x = m[0] * dx + m[1] * dy + m[2] * dz - cameraOffset[0];
+      double y = m[3] * dx + m[4] * dy + m[5] * dz - cameraOffset[1];
+      double z = m[6] * dx + m[7] * dy + m[8] * dz - cameraOffset[2];
+      if (z < 1E-6) {
+        return Double.POSITIVE_INFINITY;
+      }
+      cost += square(fx * x / z + cx - imagePoints[i * 2]);
+      cost += square(fy * y / z + cy - imagePoints[i * 2 + 1]);
+    }
+    return cost;
+  }
+
+  /**
+   * Calculates the rotation from the field frame to the camera frame for a robot rotation, and the
+   * camera's offset in the camera frame.
+   */
+  private void calculateFieldToCamera(double[] robotRotation) {
+    var c = cameraRotation;
+    var r = robotRotation;
+    // Cᵀ Rᵀ, so that a field vector is rotated into the robot frame, then the camera frame.
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        fieldToCamera[i * 3 + j] =
+            c[i] * r[j * 3] + c[3 + i] * r[j * 3 + 1] + c[6 + i] * r[j * 3 + 2];
+      }
+      cameraOffset[i] =
+          c[i] * cameraTranslation[0]
+              + c[3 + i] * cameraTranslation[1]
+              + c[6 + i] * cameraTranslation[2];
+    }
+  }
+
+  /**
+   * Builds the Gauss-Newton normal equations of the reprojection error at the current pose, for a
+   * step in translation, then rotation about the field axes.
+   */
+  private void buildNormalEquations() {
+    Arrays.fill(hessian, 0);
+    Arrays.fill(gradient, 0);
+    calculateFieldToCamera(rotation);
+    var m = fieldToCamera;
+    for (int i = 0; i < pointCount; i++) {
+      double dx = fieldPoints[i * 3] - translation[0];
+      double dy = fieldPoints[i * 3 + 1] - translation[1];
+      double dz = fieldPoints[i * 3 + 2] - translation[2];
+      double x = m[0] * dx + m[1] * dy + m[2] * dz - cameraOffset[0];
+      double y = m[3] * dx + m[4] * dy + m[5] * dz - cameraOffset[1];
+      double z = m[6] * dx + m[7] * dy + m[8] * dz - cameraOffset[2];
+      double inverseZ = 1 / z;
+      double residualU = fx * x * inverseZ + cx - imagePoints[i * 2];
+      double residualV = fy * y * inverseZ + cy - imagePoints[i * 2 + 1];
+
+      // The derivative of the pixel with respect to the point in the camera frame.
+      double uX = fx * inverseZ;
+      double uZ = -fx * x * inverseZ * inverseZ;
+      double vY = fy * inverseZ;
+      double vZ = -fy * y * inverseZ * inverseZ;
+
+      // Moving the robot by t moves the point by -Mt in the camera frame, and rotating it by ω
+      // about the field axes moves the point by M(d × ω).
+      for (int axis = 0; axis < 3; axis++) {
+        jacobianU[axis] = -(uX * m[axis] + uZ * m[6 + axis]);
+        jacobianV[axis] = -(vY * m[3 + axis] + vZ * m[6 + axis]);
+      }
+      // d × x̂ = (0, dz, -dy), d × ŷ = (-dz, 0, dx), and d × ẑ = (dy, -dx, 0).
+      for (int axis = 0; axis < 3; axis++) {
+        double crossX = axis == 0 ? 0 : axis == 1 ? -dz : dy;
+        double crossY = axis == 0 ? dz : axis == 1 ? 0 : -dx;
+        double crossZ = axis == 0 ? -dy : axis == 1 ? dx : 0;
+        double pointX = m[0] * crossX + m[1] * crossY + m[2] * crossZ;
+        double pointY = m[3] * crossX + m[4] * crossY + m[5] * crossZ;
+        double pointZ = m[6] * crossX + m[7] * crossY + m[8] * crossZ;
+        jacobianU[3 + axis] = uX * pointX + uZ * pointZ;
+        jacobianV[3 + axis] = vY * pointY + vZ * pointZ;
+      }
+
+      for (int row = 0; row < 6; row++) {
+        gradient[row] += jacobianU[row] * residualU + jacobianV[row] * residualV;
+        for (int col = row; col < 6; col++) {
+          hessian[row * 6 + col] +=
+              jacobianU[row] * jacobianU[col] + jacobianV[row] * jacobianV[col];
+        }
+      }
+    }
+    for (int row = 0; row < 6; row++) {
+      for (int col = 0; col < row; col++) {
+        hessian[row * 6 + col] = hessian[col * 6 + row];
+      }
+    }
+  }
+
+  /**
+   * Moves the pose to the other solution for a single tag, where the tag is tilted the other way
+   * relative to the line of sight, by rotating the robot about the tag's center.
+   *
+   * @param tagPose The rotation and translation of the tag.
+   */
+  private void flip(double[] tagPose) {
+    // The line of sight from the camera to the tag.
+    double sightX = tagPose[9] - translation[0];
+    double sightY = tagPose[10] - translation[1];
+    double sightZ = tagPose[11] - translation[2];
+    for (int i = 0; i < 3; i++) {
+      double offset =
+          rotation[i * 3] * cameraTranslation[0]
+              + rotation[i * 3 + 1] * cameraTranslation[1]
+              + rotation[i * 3 + 2] * cameraTranslation[2];
+      if (i == 0) {
+        sightX -= offset;
+      } else if (i == 1) {
+        sightY -= offset;
+      } else {
+        sightZ -= offset;
+      }
+    }
+    double sightNorm = Math.sqrt(sightX * sightX + sightY * sightY + sightZ * sightZ);
+    sightX /= sightNorm;
+    sightY /= sightNorm;
+    sightZ /= sightNorm;
+
+    // The tag's normal, and its reflection about the line of sight.
+    double normalX = tagPose[2];
+    double normalY = tagPose[5];
+    double normalZ = tagPose[8];
+    double dot = normalX * sightX + normalY * sightY + normalZ * sightZ;
+    double flippedX = 2 * dot * sightX - normalX;
+    double flippedY = 2 * dot * sightY - normalY;
+    double flippedZ = 2 * dot * sightZ - normalZ;
+
+    // Tilting the tag from its normal to the reflection, as seen from the camera, is the same as
+    // moving the camera the opposite way around the tag.
+    double axisX = flippedY * normalZ - flippedZ * normalY;
+    double axisY = flippedZ * normalX - flippedX * normalZ;
+    double axisZ = flippedX * normalY - flippedY * normalX;
+    double sin = Math.sqrt(axisX * axisX + axisY * axisY + axisZ * axisZ);
+    if (sin < 1E-9) {
+      return;
+    }
+    double angle =
+        Math.atan2(sin, normalX * flippedX + normalY * flippedY + normalZ * flippedZ) / sin;
+    rotate(axisX * angle, axisY * angle, axisZ * angle, rotation, trialRotation);
+    System.arraycopy(trialRotation, 0, rotation, 0, 9);
+    var e = exponential;
+    double dx = translation[0] - tagPose[9];
+    double dy = translation[1] - tagPose[10];
+    double dz = translation[2] - tagPose[11];
+    translation[0] = tagPose[9] + e[0] * dx + e[1] * dy + e[2] * dz;
+    translation[1] = tagPose[10] + e[3] * dx + e[4] * dy + e[5] * dz;
+    translation[2] = tagPose[11] + e[6] * dx + e[7] * dy + e[8] * dz;
+  }
+
+  /**
+   * Rotates a rotation matrix by a rotation vector about the field axes, leaving the exponential of
+   * the rotation vector in {@link #exponential}.
+   */
+  private void rotate(double wx, double wy, double wz, double[] in, double[] out) {
+    double thetaSquared = wx * wx + wy * wy + wz * wz;
+    double a;
+    double b;
+    if (thetaSquared < 1E-12) {
+      a = 1 - thetaSquared / 6;
+      b = .5 - thetaSquared / 24;
+    } else {
+      double theta = Math.sqrt(thetaSquared);
+      a = Math.sin(theta) / theta;
+      b = (1 - Math.cos(theta)) / thetaSquared;
+    }
+    // Rodrigues' formula, I + a[ω]× + b[ω]×².
+    var e = exponential;
+    e[0] = 1 - b * (wy * wy + wz * wz);
+    e[1] = -a * wz + b * wx * wy;
+    e[2] = a * wy + b * wx * wz;
+    e[3] = a * wz + b * wx * wy;
+    e[4] = 1 - b * (wx * wx + wz * wz);
+    e[5] = -a * wx + b * wy * wz;
+    e[6] = -a * wy + b * wx * wz;
+    e[7] = a * wx + b * wy * wz;
+    e[8] = 1 - b * (wx * wx + wy * wy);
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        out[i * 3 + j] = e[i * 3] * in[j] + e[i * 3 + 1] * in[3 + j] + e[i * 3 + 2] * in[6 + j];
+      }
+    }
+  }
+
+  /**
+   * Factors a symmetric positive definite 6x6 matrix into its lower triangular Cholesky factor, in
+   * place. The upper triangle is left as it was.
+   *
+   * @return Whether the matrix was positive definite.
+   */
+  private static boolean choleskyDecompose(double[] a) {
+    for (int j = 0; j < 6; j++) {
+      double sum = a[j * 7];
+      for (int k = 0; k < j; k++) {
+        sum -= a[j * 6 + k] * a[j * 6 + k];
+      }
+      if (!(sum > 0)) {
+        return false;
+      }
+      double diagonal = Math.sqrt(sum);
+      a[j * 7] = diagonal;
+      for (int i = j + 1; i < 6; i++) {
+        double value = a[i * 6 + j];
+        for (int k = 0; k < j; k++) {
+          value -= a[i * 6 + k] * a[j * 6 + k];
+        }
+        a[i * 6 + j] = value / diagonal;
+      }
+    }
+    return true;
+  }
+
+  /** Solves LLᵀx = b, with L from {@link #choleskyDecompose}. */
+  private static void choleskySolve(double[] l, double[] b, double[] x) {
+    for (int i = 0; i < 6; i++) {
+      double value = b[i];
+      for (int k = 0; k < i; k++) {
+        value -= l[i * 6 + k] * x[k];
+      }
+      x[i] = value / l[i * 7];
+    }
+    for (int i = 5; i >= 0; i--) {
+      double value = x[i];
+      for (int k = i + 1; k < 6; k++) {
+        value -= l[k * 6 + i] * x[k];
+      }
+      x[i] = value / l[i * 7];
+    }
+  }
+
+  /** Builds the rotation matrix of intrinsic ZXZ angles, as the SDK orients the camera. */
+  private static double[] zxz(double yaw, double pitch, double roll) {
+    double sa = Math.sin(yaw);
+    double ca = Math.cos(yaw);
+    double sb = Math.sin(pitch);
+    double cb = Math.cos(pitch);
+    double sc = Math.sin(roll);
+    double cc = Math.cos(roll);
+    return new double[] {
+      ca * cc - sa * cb * sc,
+      -ca * sc - sa * cb * cc,
+      sa * sb,
+      sa * cc + ca * cb * sc,
+      -sa * sc + ca * cb * cc,
+      -ca * sb,
+      sb * sc,
+      sb * cc,
+      cb
+    };
+  }
+
+  /** Builds the rotation matrix of intrinsic ZXY angles, as the SDK orients the robot. */
+  private static void zxy(double yaw, double pitch, double roll, double[] out) {
+    double sy = Math.sin(yaw);
+    double cy = Math.cos(yaw);
+    double sp = Math.sin(pitch);
+    double cp = Math.cos(pitch);
+    double sr = Math.sin(roll);
+    double cr = Math.cos(roll);
+    out[0] = cy * cr - sy * sp * sr;
+    out[1] = -sy * cp;
+    out[2] = cy * sr + sy * sp * cr;
+    out[3] = sy * cr + cy * sp * sr;
+    out[4] = cy * cp;
+    out[5] = sy * sr - cy * sp * cr;
+    out[6] = -cp * sr;
+    out[7] = sp;
+    out[8] = cp * cr;
+  }
+
+  private static double square(double value) {
+    return value * value;
+  }
+}
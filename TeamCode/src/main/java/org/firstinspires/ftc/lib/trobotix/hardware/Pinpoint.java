@@ -7,13 +7,13 @@ import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
 import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose2d;
 import org.firstinspires.ftc.lib.wpilib.math.geometry.Rotation2d;
 import org.firstinspires.ftc.lib.wpilib.math.geometry.Translation2d;
-import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
 import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
-import org.firstinspires.ftc.robotcore.external.navigation.Pose2D;
 import org.psilynx.psikit.ftc.GoBildaPinpointDriver;
 
 public class Pinpoint {
   private final GoBildaPinpointDriver pinpoint;
+  private final int inputIndex;
+  private final boolean readVelocity;
 
   public Pinpoint(
       String name,
@@ -21,6 +21,21 @@ public class Pinpoint {
       double yWheelXPosMeters,
       boolean xInverted,
       boolean yInverted) {
+    this(name, xWheelYPosMeters, yWheelXPosMeters, xInverted, yInverted, false);
+  }
+
+  /**
+   * @param readVelocity Whether to read the Pinpoint's velocity every loop as well as its pose,
+   *     which adds the velocity registers to the bulk read.
+   */
+  public Pinpoint(
+      String name,
+      double xWheelYPosMeters,
+      double yWheelXPosMeters,
+      boolean xInverted,
+      boolean yInverted,
+      boolean readVelocity) {
+    this.readVelocity = readVelocity;
     pinpoint = BaseOpMode.hardwareMap.get(GoBildaPinpointDriver.class, name);
     pinpoint.setOffsets(xWheelYPosMeters, yWheelXPosMeters, DistanceUnit.METER);
     pinpoint.setEncoderDirections(
@@ -31,42 +46,72 @@ public class Pinpoint {
             ? GoBildaPinpointDriver.EncoderDirection.FORWARD
             : GoBildaPinpointDriver.EncoderDirection.REVERSED);
     pinpoint.setEncoderResolution(GoBildaPinpointDriver.GoBildaOdometryPods.goBILDA_4_BAR_POD);
-    pinpoint.setBulkReadScope(
-        GoBildaPinpointDriver.Register.X_POSITION,
-        GoBildaPinpointDriver.Register.Y_POSITION,
-        GoBildaPinpointDriver.Register.H_ORIENTATION);
+    if (readVelocity) {
+      pinpoint.setBulkReadScope(
+          GoBildaPinpointDriver.Register.X_POSITION,
+          GoBildaPinpointDriver.Register.Y_POSITION,
+          GoBildaPinpointDriver.Register.H_ORIENTATION,
+          GoBildaPinpointDriver.Register.X_VELOCITY,
+          GoBildaPinpointDriver.Register.Y_VELOCITY,
+          GoBildaPinpointDriver.Register.H_VELOCITY);
+    } else {
+      pinpoint.setBulkReadScope(
+          GoBildaPinpointDriver.Register.X_POSITION,
+          GoBildaPinpointDriver.Register.Y_POSITION,
+          GoBildaPinpointDriver.Register.H_ORIENTATION);
+    }
+    inputIndex = HardwareInputs.registerPinpoint(pinpoint, readVelocity);
   }
 
   private Pose2d cachedPose = new Pose2d();
 
+  /**
+   * Gets the pose of the Pinpoint.
+   *
+   * @param update Whether to refresh the pose from this loop's {@link HardwareInputs} snapshot. If
+   *     false, the last refreshed pose is returned.
+   * @return The pose.
+   */
   public Pose2d getPose(boolean update) {
     if (update) {
-      pinpoint.update();
       cachedPose =
           new Pose2d(
-              pinpoint.getPosX(DistanceUnit.METER),
-              pinpoint.getPosY(DistanceUnit.METER),
-              new Rotation2d(pinpoint.getHeading(AngleUnit.RADIANS)));
+              HardwareInputs.getPinpointX(inputIndex),
+              HardwareInputs.getPinpointY(inputIndex),
+              new Rotation2d(HardwareInputs.getPinpointHeading(inputIndex)));
     }
     return cachedPose;
   }
 
+  /**
+   * Writes this loop's pose of the Pinpoint into an array, without allocating. If the Pinpoint
+   * reads its velocity and the array has room for 6 values, the velocity is written after the pose.
+   *
+   * @param pose The array to write x (m), y (m), and heading (rad) into, followed by the x (m/s), y
+   *     (m/s), and heading (rad/s) velocities.
+   */
+  public void getPose(double[] pose) {
+    pose[0] = HardwareInputs.getPinpointX(inputIndex);
+    pose[1] = HardwareInputs.getPinpointY(inputIndex);
+    pose[2] = HardwareInputs.getPinpointHeading(inputIndex);
+    if (readVelocity && pose.length >= 6) {
+      pose[3] = HardwareInputs.getPinpointVelocityX(inputIndex);
+      pose[4] = HardwareInputs.getPinpointVelocityY(inputIndex);
+      pose[5] = HardwareInputs.getPinpointHeadingVelocity(inputIndex);
+    }
+  }
+
   public void resetPose(Pose2d pose) {
-    pinpoint.setPosition(
-        new Pose2D(
-            DistanceUnit.METER,
-            pose.getX(),
-            pose.getY(),
-            AngleUnit.RADIANS,
-            pose.getRotation().getRadians()));
+    HardwareInputs.resetPinpoint(
+        inputIndex, pose.getX(), pose.getY(), pose.getRotation().getRadians(), true, true);
   }
 
   public void resetTranslation(Translation2d translation) {
-    pinpoint.setPosX(translation.getX(), DistanceUnit.METER);
-    pinpoint.setPosY(translation.getY(), DistanceUnit.METER);
+    HardwareInputs.resetPinpoint(
+        inputIndex, translation.getX(), translation.getY(), 0, true, false);
   }
 
   public void resetRotation(Rotation2d rotation) {
-    pinpoint.setHeading(rotation.getRadians(), AngleUnit.RADIANS);
+    HardwareInputs.resetPinpoint(inputIndex, 0, 0, rotation.getRadians(), false, true);
   }
 }
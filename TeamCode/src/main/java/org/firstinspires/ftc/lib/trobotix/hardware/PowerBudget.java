@@ -0,0 +1,217 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import org.psilynx.psikit.core.Logger;
+
+/**
+ * Keeps the total current drawn by the motors low enough that the battery doesn't sag below a
+ * brownout threshold.
+ *
+ * <p>The battery is modeled as an open circuit voltage behind an internal resistance, both of which
+ * are fit online by recursive least squares, from every new bus voltage reading and the total
+ * current the motors were estimated to draw when it was measured. Every loop, {@link
+ * DeviceRegistry} estimates the supply current each modeled motor will draw from its model,
+ * velocity and commanded duty cycle, and adds it to the motor's priority level. If the predicted
+ * bus voltage at that total is below the threshold, outputs are scaled down starting from the
+ * lowest priority level, only moving on to higher levels once lower ones are off entirely. As the
+ * supply current of a motor at a scaled down duty cycle is at most the unscaled current times the
+ * scale, this never underestimates how much is shed.
+ *
+ * <p>Motors without a model aren't counted. Nothing here allocates.
+ */
+public final class PowerBudget {
+  private PowerBudget() {}
+
+  /** The number of priority levels. Level 0 is scaled down first. */
+  public static final int kPriorityLevels = 8;
+
+  /** The priority level motors are in unless set otherwise. */
+  public static final int kDefaultPriority = 3;
+
+  // The forgetting factor of the battery model fit. Lower forgets old measurements faster.
+  private static final double kForgettingFactor = .995;
+  // Bounds on the battery model, to keep a badly conditioned fit from doing anything unreasonable.
+  private static final double kMinOpenCircuitVoltage = 8;
+  private static final double kMaxOpenCircuitVoltage = 16;
+  private static final double kMinInternalResistance = .01;
+  private static final double kMaxInternalResistance = .5;
+  // The initial and largest variances of the fit, to stop the covariance winding up while the
+  // current is constant.
+  private static final double kMaxVoltageVariance = 1;
+  private static final double kMaxResistanceVariance = .01;
+
+  private static boolean enabled = true;
+  private static double brownoutThresholdVolts = 7.5;
+
+  private static boolean initialized = false;
+  private static double openCircuitVoltage = 12;
+  private static double internalResistance = .12;
+  // Covariance of the fit, which is symmetric.
+  private static double p00 = kMaxVoltageVariance;
+  private static double p01 = 0;
+  private static double p11 = kMaxResistanceVariance;
+
+  private static final double[] levelCurrents = new double[kPriorityLevels];
+  private static final double[] levelScales = new double[kPriorityLevels];
+  private static double requestedCurrent = 0;
+  private static double allowedCurrent = Double.POSITIVE_INFINITY;
+  // The total current estimated to be drawn with the outputs last written.
+  private static double drawnCurrent = 0;
+
+  static {
+    for (int i = 0; i < kPriorityLevels; i++) {
+      levelScales[i] = 1;
+    }
+  }
+
+  /**
+   * Sets whether outputs are scaled to stay within the budget. The battery model is fit either way.
+   *
+   * @param enabled Whether to scale outputs.
+   */
+  public static void setEnabled(boolean enabled) {
+    PowerBudget.enabled = enabled;
+  }
+
+  /**
+   * Sets the lowest bus voltage the budget allows. Defaults to 7.5 volts.
+   *
+   * @param volts The threshold in volts.
+   */
+  public static void setBrownoutThreshold(double volts) {
+    brownoutThresholdVolts = volts;
+  }
+
+  /**
+   * Fits the battery model to a bus voltage measurement, taken while the motors were drawing the
+   * current estimated for the outputs last written. Called by {@link BusVoltage} every time the
+   * voltage is read.
+   */
+  static void observe(double measuredVoltage) {
+    if (!initialized) {
+      openCircuitVoltage = measuredVoltage + internalResistance * drawnCurrent;
+      initialized = true;
+      return;
+    }
+    // The model is V = Voc - R * I, so the regressor is [1, -I].
+    double current = drawnCurrent;
+    double error = measuredVoltage - (openCircuitVoltage - internalResistance * current);
+    double pPhi0 = p00 - p01 * current;
+    double pPhi1 = p01 - p11 * current;
+    double denominator = kForgettingFactor + pPhi0 - current * pPhi1;
+    double k0 = pPhi0 / denominator;
+    double k1 = pPhi1 / denominator;
+    openCircuitVoltage += k0 * error;
+    internalResistance += k1 * error;
+    p00 = (p00 - k0 * pPhi0) / kForgettingFactor;
+    p01 = (p01 - k0 * pPhi1) / kForgettingFactor;
+    p11 = (p11 - k1 * pPhi1) / kForgettingFactor;
+
+    p00 = Math.min(p00, kMaxVoltageVariance);
+    p11 = Math.min(p11, kMaxResistanceVariance);
+    double maxCovariance = Math.sqrt(p00 * p11);
+    p01 = Math.max(-maxCovariance, Math.min(p01, maxCovariance));
+    openCircuitVoltage =
+        Math.max(kMinOpenCircuitVoltage, Math.min(openCircuitVoltage, kMaxOpenCircuitVoltage));
+    internalResistance =
+        Math.max(kMinInternalResistance, Math.min(internalResistance, kMaxInternalResistance));
+  }
+
+  /** Clears the current requested at every priority level, before they're added up again. */
+  static void beginAllocation() {
+    for (int i = 0; i < kPriorityLevels; i++) {
+      levelCurrents[i] = 0;
+    }
+  }
+
+  /** Adds the supply current a motor will draw at its commanded output to its priority level. */
+  static void addCurrent(int priority, double amps) {
+    levelCurrents[priority] += amps;
+  }
+
+  /**
+   * Works out how much to scale each priority level by to stay within the budget, from the currents
+   * added since {@link #beginAllocation()}.
+   */
+  static void allocate() {
+    requestedCurrent = 0;
+    for (int i = 0; i < kPriorityLevels; i++) {
+      requestedCurrent += levelCurrents[i];
+      levelScales[i] = 1;
+    }
+    allowedCurrent =
+        Math.max(0, (openCircuitVoltage - brownoutThresholdVolts) / internalResistance);
+    drawnCurrent = requestedCurrent;
+    if (!enabled || requestedCurrent <= allowedCurrent) {
+      return;
+    }
+    double excess = requestedCurrent - allowedCurrent;
+    for (int i = 0; i < kPriorityLevels && excess > 0; i++) {
+      double current = levelCurrents[i];
+      if (current <= 0) {
+        continue;
+      }
+      if (current > excess) {
+        levelScales[i] = 1 - excess / current;
+        drawnCurrent -= excess;
+        excess = 0;
+      } else {
+        levelScales[i] = 0;
+        drawnCurrent -= current;
+        excess -= current;
+      }
+    }
+  }
+
+  /** Gets the total current estimated to be drawn with the outputs last written. */
+  static double getDrawnCurrent() {
+    return drawnCurrent;
+  }
+
+  /** Gets how much to scale the outputs of a priority level by this loop. */
+  static double getScale(int priority) {
+    return levelScales[priority];
+  }
+
+  /**
+   * Gets the bus voltage predicted for the outputs requested this loop, before any scaling.
+   *
+   * @return The voltage in volts.
+   */
+  public static double getPredictedVoltage() {
+    return openCircuitVoltage - internalResistance * requestedCurrent;
+  }
+
+  /**
+   * Gets the fit internal resistance of the battery and wiring.
+   *
+   * @return The resistance in ohms.
+   */
+  public static double getInternalResistance() {
+    return internalResistance;
+  }
+
+  /**
+   * Gets the fit open circuit voltage of the battery.
+   *
+   * @return The voltage in volts.
+   */
+  public static double getOpenCircuitVoltage() {
+    return openCircuitVoltage;
+  }
+
+  /**
+   * Logs the battery model and allocation under {@code PowerBudget/}. Must be called between {@link
+   * Logger#periodicBeforeUser()} and {@link Logger#periodicAfterUser}.
+   */
+  public static void log() {
+    Logger.recordOutput("PowerBudget/OpenCircuitVoltage", openCircuitVoltage);
+    Logger.recordOutput("PowerBudget/InternalResistanceOhms", internalResistance);
+    Logger.recordOutput("PowerBudget/RequestedCurrentAmps", requestedCurrent);
+    Logger.recordOutput("PowerBudget/AllowedCurrentAmps", allowedCurrent);
+    Logger.recordOutput("PowerBudget/PredictedVoltage", getPredictedVoltage());
+    Logger.recordOutput("PowerBudget/LevelScales", levelScales);
+  }
+}
@@ -0,0 +1,31 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+/** How an {@link Encoder} estimates its velocity. */
+public enum VelocityEstimator {
+  /** The average of the last 3 finite differences of position. Smooth, but lags by about a loop. */
+  MOVING_AVERAGE,
+  /**
+   * The velocity measured by the hub. Has no lag beyond the read itself, but the REV hubs report it
+   * as a 16 bit value, so it overflows above 32767 ticks per second.
+   */
+  NATIVE,
+  /**
+   * The velocity measured by the hub, with overflow corrected using the finite difference of
+   * position. Has no lag, and is correct at any speed.
+   */
+  OVERFLOW_CORRECTED,
+  /**
+   * The slope of a least squares line fit through the last few positions, set with {@link
+   * Encoder#setLeastSquaresWindow}. Less noisy than a moving average for the same lag.
+   */
+  LEAST_SQUARES,
+  /**
+   * An alpha-beta filter on position, with gains set with {@link Encoder#setAlphaBetaGains}. At the
+   * default gains it's the least noisy estimator, but lags the most. With higher gains, such as an
+   * alpha of 0.7 and a beta of 0.4, it lags less than the moving average, for no more noise.
+   */
+  ALPHA_BETA
+}
@@ -0,0 +1,279 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.logging;
+
+import com.qualcomm.robotcore.util.RobotLog;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.psilynx.psikit.core.LogDataReceiver;
+import org.psilynx.psikit.core.LogTable;
+import org.psilynx.psikit.core.Logger;
+
+/**
+ * Wraps one or more {@link LogDataReceiver}s so that they run on their own thread, keeping their
+ * serialization and file or socket I/O off of the control loop.
+ *
+ * <p>Each loop's {@link LogTable} is snapshotted once, no matter how many receivers are wrapped,
+ * and handed to the writer thread through a bounded, lock-free, single-producer single-consumer
+ * ring buffer whose slots are allocated up front. If the writer falls far enough behind for the
+ * ring to fill up, the {@link OverflowPolicy} decides whether the loop drops the frame or waits a
+ * bounded amount of time for a free slot, so a slow SD card or a Wi-Fi stall can never stretch a
+ * loop by more than that. The writer thread hands each snapshot to every wrapped receiver in turn,
+ * so the receivers share the ring, and a slow receiver holds back the others.
+ *
+ * <p>Frames that are dropped, and frames that reach the wrapped receivers later than the late
+ * threshold after they were queued, are counted and logged by {@link #log()}.
+ */
+public final class AsyncLogReceiver implements LogDataReceiver {
+  /** What to do with a frame when the ring buffer is full. */
+  public enum OverflowPolicy {
+    /** Drop the frame immediately. */
+    DROP,
+    /** Wait up to the maximum wait time for a slot to free up, then drop the frame. */
+    WAIT
+  }
+
+  private static final int kDefaultCapacity = 64;
+  private static final long kDefaultMaxWaitNanos = 2_000_000;
+  private static final long kDefaultLateThresholdNanos = 100_000_000;
+  // How long the writer thread parks for when the ring is empty, in case it misses an unpark.
+  private static final long kIdleParkNanos = 10_000_000;
+  // How long to wait for the writer thread to drain the ring when logging ends.
+  private static final long kEndTimeoutMillis = 1000;
+
+  private final String name;
+  private final LogDataReceiver[] receivers;
+  private final OverflowPolicy policy;
+  private final long maxWaitNanos;
+  private final long lateThresholdNanos;
+
+  private final LogTable[] slots;
+  private final long[] queuedNanos;
+  private final int mask;
+  // Index of the next slot to write, only advanced by the loop thread.
+  private final AtomicLong head = new AtomicLong();
+  // Index of the next slot to read, only advanced by the writer thread.
+  private final AtomicLong tail = new AtomicLong();
+
+  private volatile Thread writerThread;
+  private volatile boolean running = false;
+
+  // Only written by the loop thread.
+  private volatile long queuedFrames = 0;
+  private volatile long droppedFrames = 0;
+  // Only written by the writer thread.
+  private volatile long writtenFrames = 0;
+  private volatile long lateFrames = 0;
+  private volatile long worstLatencyNanos = 0;
+
+  private final String queuedKey;
+  private final String droppedKey;
+  private final String lateKey;
+  private final String backlogKey;
+  private final String worstLatencyKey;
+
+  /**
+   * Constructs an AsyncLogReceiver with a 64 frame ring that drops frames when it's full.
+   *
+   * @param name The name to log the receiver's statistics under.
+   * @param receivers The receivers to run on the writer thread.
+   */
+  public AsyncLogReceiver(String name, LogDataReceiver... receivers) {
+    this(
+        name,
+        kDefaultCapacity,
+        OverflowPolicy.DROP,
+        kDefaultMaxWaitNanos / 1E9,
+        kDefaultLateThresholdNanos / 1E9,
+        receivers);
+  }
+
+  /**
+   * Constructs an AsyncLogReceiver.
+   *
+   * @param name The name to log the receiver's statistics under.
+   * @param capacity The number of frames the ring can hold. Rounded up to a power of 2.
+   * @param policy What to do with a frame when the ring is full.
+   * @param maxWaitSeconds The longest the loop will wait for a free slot under {@link
+   *     OverflowPolicy#WAIT}.
+   * @param lateThresholdSeconds How long after being queued a frame can reach the receiver before
+   *     it's counted as late.
+   * @param receivers The receivers to run on the writer thread.
+   */
+  public AsyncLogReceiver(
+      String name,
+      int capacity,
+      OverflowPolicy policy,
+      double maxWaitSeconds,
+      double lateThresholdSeconds,
+      LogDataReceiver... receivers) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+    }
+    if (receivers.length == 0) {
+      throw new IllegalArgumentException("At least one receiver is required");
+    }
+    this.name = name;
+    this.receivers = receivers.clone();
+    this.policy = policy;
+    maxWaitNanos = (long) (maxWaitSeconds * 1E9);
+    lateThresholdNanos = (long) (lateThresholdSeconds * 1E9);
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    slots = new LogTable[size];
+    queuedNanos = new long[size];
+    mask = size - 1;
+
+    var prefix = "Logging/" + name + "/";
+    queuedKey = prefix + "QueuedFrames";
+    droppedKey = prefix + "DroppedFrames";
+    lateKey = prefix + "LateFrames";
+    backlogKey = prefix + "Backlog";
+    worstLatencyKey = prefix + "WorstLatencyMs";
+  }
+
+  @Override
+  public void start() {
+    head.set(0);
+    tail.set(0);
+    running = true;
+    writerThread = new Thread(this::runWriter, "AsyncLogReceiver-" + name);
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  @Override
+  public void end() {
+    running = false;
+    var thread = writerThread;
+    if (thread == null) {
+      return;
+    }
+    LockSupport.unpark(thread);
+    try {
+      thread.join(kEndTimeoutMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (thread.isAlive()) {
+      thread.interrupt();
+    }
+    writerThread = null;
+  }
+
+  /**
+   * Queues a frame for the writer thread. Called by the {@link Logger} on the loop thread.
+   *
+   * @param table The frame to queue.
+   */
+  @Override
+  public void putTable(LogTable table) {
+    long h = head.get();
+    if (h - tail.get() > mask && !waitForSlot(h)) {
+      droppedFrames++;
+      return;
+    }
+    int index = (int) (h & mask);
+    // The logger reuses its table every loop, so the writer thread needs its own copy. It's only
+    // read by the receivers, so they all share it.
+    slots[index] = LogTable.clone(table);
+    queuedNanos[index] = System.nanoTime();
+    // Publishes the slot to the writer thread.
+    head.lazySet(h + 1);
+    queuedFrames++;
+    LockSupport.unpark(writerThread);
+  }
+
+  private boolean waitForSlot(long h) {
+    if (policy == OverflowPolicy.DROP) {
+      return false;
+    }
+    long deadline = System.nanoTime() + maxWaitNanos;
+    while (h - tail.get() > mask) {
+      if (System.nanoTime() - deadline > 0) {
+        return false;
+      }
+      Thread.yield();
+    }
+    return true;
+  }
+
+  private void runWriter() {
+    try {
+      for (var receiver : receivers) {
+        receiver.start();
+      }
+      // Keeps draining after end() is called, so frames queued before it aren't lost.
+      while (running || tail.get() != head.get()) {
+        long t = tail.get();
+        if (t == head.get()) {
+          LockSupport.parkNanos(this, kIdleParkNanos);
+          continue;
+        }
+        int index = (int) (t & mask);
+        var table = slots[index];
+        long latencyNanos = System.nanoTime() - queuedNanos[index];
+        slots[index] = null;
+        for (var receiver : receivers) {
+          try {
+            receiver.putTable(table);
+          } catch (RuntimeException e) {
+            RobotLog.ee(
+                "AsyncLogReceiver",
+                e,
+                "Log receiver " + receiver.getClass().getSimpleName() + " threw an exception");
+          }
+        }
+        // Frees the slot for the loop thread.
+        tail.lazySet(t + 1);
+        writtenFrames++;
+        if (latencyNanos > lateThresholdNanos) {
+          lateFrames++;
+        }
+        if (latencyNanos > worstLatencyNanos) {
+          worstLatencyNanos = latencyNanos;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      for (var receiver : receivers) {
+        receiver.end();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of frames that were dropped because the ring was full.
+   *
+   * @return The number of dropped frames.
+   */
+  public long getDroppedFrames() {
+    return droppedFrames;
+  }
+
+  /**
+   * Gets the number of frames that reached the wrapped receivers later than the late threshold.
+   *
+   * @return The number of late frames.
+   */
+  public long getLateFrames() {
+    return lateFrames;
+  }
+
+  /**
+   * Logs the receiver's statistics under {@code Logging/<name>/}. Must be called between {@link
+   * Logger#periodicBeforeUser()} and {@link Logger#periodicAfterUser}.
+   */
+  public void log() {
+    Logger.recordOutput(queuedKey, queuedFrames);
+    Logger.recordOutput(droppedKey, droppedFrames);
+    Logger.recordOutput(lateKey, lateFrames);
+    Logger.recordOutput(backlogKey, queuedFrames - writtenFrames);
+    Logger.recordOutput(worstLatencyKey, worstLatencyNanos / 1E6);
+  }
+}
@@ -0,0 +1,326 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.logging;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import org.psilynx.psikit.core.LogTable;
+import org.psilynx.psikit.core.wpi.Struct;
+
+/**
+ * Packs arrays of a {@link Struct} type in bulk, into a pooled direct {@link ByteBuffer} that's
+ * reused across calls instead of allocating a new buffer every frame.
+ *
+ * <p>For structs made up entirely of doubles, such as the geometry types, values can also be packed
+ * from and unpacked into flat {@code double[]} views, where each element takes {@link
+ * #getDoublesPerElement()} consecutive doubles in the same order as the struct's schema. Working
+ * with the flat view instead of arrays of objects avoids allocating an object per element when
+ * logging and replaying large arrays. Flat views can be logged and replayed with {@link
+ * #put(LogTable, String, double[], int)} and {@link #get(LogTable, String, double[])}, under the
+ * same struct array type as an array of objects, so the log can't tell the difference.
+ *
+ * <p>Buffers returned by this class are only valid until the next call that packs into it. Not
+ * thread safe.
+ *
+ * @param <T> The struct type.
+ */
+public final class StructArrayCodec<T> {
+  private static final int kInitialCapacity = 256;
+  private static final byte[] kEmptyBytes = new byte[0];
+
+  private final Struct<T> struct;
+  private final int size;
+  private final int doublesPerElement;
+
+  private ByteBuffer buffer = allocate(kInitialCapacity);
+  // A view of the whole pooled buffer as doubles, kept so that a new view isn't allocated per call.
+  private DoubleBuffer doubles = buffer.asDoubleBuffer();
+
+  private final FlatStruct flatStruct = new FlatStruct();
+  // The elements to hand to the logger for each count, where element i of each array refers to
+  // element i of the flat view. Created the first time each count is logged.
+  private final ArrayList<FlatElement[]> flatElements = new ArrayList<>();
+
+  /**
+   * Constructs a StructArrayCodec.
+   *
+   * @param struct The struct to pack and unpack with.
+   */
+  public StructArrayCodec(Struct<T> struct) {
+    this.struct = struct;
+    size = struct.getSize();
+    doublesPerElement = isAllDoubles(struct) ? size / Struct.kSizeDouble : 0;
+  }
+
+  private static ByteBuffer allocate(int capacity) {
+    return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Whether every field of a struct, including the fields of nested structs, is a double or an
+   * array of doubles.
+   */
+  private static boolean isAllDoubles(Struct<?> struct) {
+    for (String declaration : struct.getSchema().split(";")) {
+      String type = declaration.trim().split("\\s+")[0];
+      if (type.equals("double")) {
+        continue;
+      }
+      Struct<?> nested = null;
+      for (Struct<?> candidate : struct.getNested()) {
+        if (candidate.getTypeName().equals(type)) {
+          nested = candidate;
+          break;
+        }
+      }
+      if (nested == null || !isAllDoubles(nested)) {
+        return false;
+      }
+    }
+    return struct.getSize() % Struct.kSizeDouble == 0;
+  }
+
+  /**
+   * Clears the pooled buffer, growing it if it can't hold the given number of elements.
+   *
+   * @param count The number of elements that will be packed.
+   * @return The cleared buffer.
+   */
+  private ByteBuffer prepare(int count) {
+    int bytes = count * size;
+    if (buffer.capacity() < bytes) {
+      buffer = allocate(Math.max(bytes, buffer.capacity() * 2));
+      doubles = buffer.asDoubleBuffer();
+    }
+    buffer.clear();
+    doubles.clear();
+    return buffer;
+  }
+
+  private void requireAllDoubles() {
+    if (doublesPerElement == 0) {
+      throw new UnsupportedOperationException(
+          struct.getTypeName() + " isn't made up entirely of doubles, so it has no flat view");
+    }
+  }
+
+  /**
+   * Gets the number of doubles each element takes in the flat view.
+   *
+   * @return The number of doubles, or 0 if the struct isn't made up entirely of doubles.
+   */
+  public int getDoublesPerElement() {
+    return doublesPerElement;
+  }
+
+  /**
+   * Packs the first {@code count} elements of an array.
+   *
+   * @param values The values to pack.
+   * @param count The number of values to pack.
+   * @return The pooled buffer, positioned at 0 with its limit at the end of the packed data.
+   */
+  public ByteBuffer pack(T[] values, int count) {
+    var bb = prepare(count);
+    for (int i = 0; i < count; i++) {
+      struct.pack(bb, values[i]);
+    }
+    bb.flip();
+    return bb;
+  }
+
+  /**
+   * Packs the first {@code count} elements of a flat view.
+   *
+   * @param flat The flat view to pack.
+   * @param count The number of elements to pack.
+   * @return The pooled buffer, positioned at 0 with its limit at the end of the packed data.
+   * @throws UnsupportedOperationException if the struct isn't made up entirely of doubles.
+   */
+  public ByteBuffer pack(double[] flat, int count) {
+    requireAllDoubles();
+    var bb = prepare(count);
+    doubles.put(flat, 0, count * doublesPerElement);
+    bb.limit(count * size);
+    return bb;
+  }
+
+  /**
+   * Unpacks every remaining element of a buffer into a flat view.
+   *
+   * @param bb The buffer to unpack. Must be little-endian.
+   * @param flat The flat view to unpack into. Must be large enough to hold every element.
+   * @return The number of elements unpacked.
+   * @throws UnsupportedOperationException if the struct isn't made up entirely of doubles.
+   */
+  public int unpackInto(ByteBuffer bb, double[] flat) {
+    requireAllDoubles();
+    int count = bb.remaining() / size;
+    // Buffers from this codec already have a view, other buffers need a new one.
+    var view = bb == buffer && bb.position() == 0 ? doubles : bb.asDoubleBuffer();
+    view.clear();
+    view.get(flat, 0, count * doublesPerElement);
+    bb.position(bb.position() + count * size);
+    return count;
+  }
+
+  /**
+   * Unpacks every remaining element of a buffer as new objects, stored into an existing array.
+   *
+   * <p>Only the array is reused. Each element is still a new object from {@link
+   * Struct#unpack(ByteBuffer)}, as the geometry types are immutable and can't be unpacked in place.
+   * Use {@link #unpackInto(ByteBuffer, double[])} to unpack without allocating.
+   *
+   * @param bb The buffer to unpack. Must be little-endian.
+   * @param values The array to store the unpacked objects in. Must be large enough to hold every
+   *     element.
+   * @return The number of elements unpacked.
+   */
+  public int unpackAll(ByteBuffer bb, T[] values) {
+    int count = bb.remaining() / size;
+    for (int i = 0; i < count; i++) {
+      values[i] = struct.unpack(bb);
+    }
+    return count;
+  }
+
+  /**
+   * Writes a value into a flat view, without allocating.
+   *
+   * @param value The value to write.
+   * @param flat The flat view to write into.
+   * @param index The index of the element in the flat view to write.
+   * @throws UnsupportedOperationException if the struct isn't made up entirely of doubles.
+   */
+  public void set(T value, double[] flat, int index) {
+    requireAllDoubles();
+    struct.pack(prepare(1), value);
+    doubles.get(flat, index * doublesPerElement, doublesPerElement);
+  }
+
+  /**
+   * Reads an element of a flat view as an object.
+   *
+   * @param flat The flat view to read from.
+   * @param index The index of the element in the flat view to read.
+   * @return The element.
+   * @throws UnsupportedOperationException if the struct isn't made up entirely of doubles.
+   */
+  public T get(double[] flat, int index) {
+    requireAllDoubles();
+    var bb = prepare(1);
+    doubles.put(flat, index * doublesPerElement, doublesPerElement);
+    bb.limit(size);
+    return struct.unpack(bb);
+  }
+
+  /**
+   * Logs the first {@code count} elements of a flat view as a struct array, the same as logging an
+   * array of objects with {@link LogTable#put(String, Struct, Object[])} would, but without
+   * unpacking an object per element.
+   *
+   * @param table The table to log to.
+   * @param key The key to log under.
+   * @param flat The flat view to log.
+   * @param count The number of elements to log.
+   * @throws UnsupportedOperationException if the struct isn't made up entirely of doubles.
+   */
+  public void put(LogTable table, String key, double[] flat, int count) {
+    requireAllDoubles();
+    while (flatElements.size() <= count) {
+      var elements = new FlatElement[flatElements.size()];
+      for (int i = 0; i < elements.length; i++) {
+        elements[i] = new FlatElement(i);
+      }
+      flatElements.add(elements);
+    }
+    flatStruct.flat = flat;
+    try {
+      table.put(key, flatStruct, flatElements.get(count));
+    } finally {
+      flatStruct.flat = null;
+    }
+  }
+
+  /**
+   * Reads a struct array logged by {@link #put(LogTable, String, double[], int)}, or as an array of
+   * objects, into a flat view.
+   *
+   * @param table The table to read from.
+   * @param key The key to read.
+   * @param flat The flat view to read into, reused if it's already the right size.
+   * @return The flat view holding every element of the array, which is a new array if {@code flat}
+   *     wasn't the right size.
+   * @throws UnsupportedOperationException if the struct isn't made up entirely of doubles.
+   */
+  public double[] get(LogTable table, String key, double[] flat) {
+    requireAllDoubles();
+    // Struct arrays are logged as raw bytes tagged with their type, so they can be read as bytes.
+    var bytes = table.get(key, kEmptyBytes);
+    int count = bytes.length / size;
+    if (flat.length != count * doublesPerElement) {
+      flat = new double[count * doublesPerElement];
+    }
+    unpackInto(ByteBuffer.wrap(bytes, 0, count * size).order(ByteOrder.LITTLE_ENDIAN), flat);
+    return flat;
+  }
+
+  /** An element of the flat view being logged, by its index. */
+  private static final class FlatElement {
+    final int index;
+
+    FlatElement(int index) {
+      this.index = index;
+    }
+  }
+
+  /**
+   * Packs elements of the flat view being logged, while describing itself as the wrapped struct, so
+   * that the logged type and schema are the same as for an array of objects.
+   */
+  private final class FlatStruct implements Struct<FlatElement> {
+    // The flat view being logged, only set during put().
+    double[] flat;
+
+    @Override
+    public Class<FlatElement> getTypeClass() {
+      return FlatElement.class;
+    }
+
+    @Override
+    public String getTypeName() {
+      return struct.getTypeName();
+    }
+
+    @Override
+    public int getSize() {
+      return size;
+    }
+
+    @Override
+    public String getSchema() {
+      return struct.getSchema();
+    }
+
+    @Override
+    public Struct<?>[] getNested() {
+      return struct.getNested();
+    }
+
+    @Override
+    public FlatElement unpack(ByteBuffer bb) {
+      throw new UnsupportedOperationException("Flat views are only unpacked through get()");
+    }
+
+    @Override
+    public void pack(ByteBuffer bb, FlatElement value) {
+      int offset = value.index * doublesPerElement;
+      for (int i = 0; i < doublesPerElement; i++) {
+        bb.putDouble(flat[offset + i]);
+      }
+    }
+  }
+}
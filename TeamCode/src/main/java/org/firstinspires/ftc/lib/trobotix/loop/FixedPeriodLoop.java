@@ -0,0 +1,146 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.loop;
+
+import org.psilynx.psikit.core.Logger;
+
+/**
+ * Paces a loop to a fixed period.
+ *
+ * <p>Deadlines are tracked on the monotonic {@link System#nanoTime()} clock and advanced by exactly
+ * one period every loop, so a loop that runs a little long is made up for by the next one instead
+ * of pushing every following loop later. If a loop overruns by a full period or more, the deadline
+ * is re-anchored to the current time instead of trying to catch up with a burst of back-to-back
+ * loops.
+ *
+ * <p>Waiting is hybrid: the thread sleeps until {@link #kSpinThresholdNanos} before the deadline,
+ * then busy-waits the rest of the way, as {@link Thread#sleep} on the Control Hub can oversleep by
+ * a millisecond or more.
+ */
+public final class FixedPeriodLoop {
+  private static final long kSpinThresholdNanos = 1_000_000;
+
+  // Upper edges of the overrun histogram buckets, as fractions of the loop period. The last bucket
+  // catches everything above the final edge.
+  private static final double[] kOverrunBucketEdges = {0.1, 0.25, 0.5, 1, 2};
+
+  private final long periodNanos;
+  private final long[] overrunBucketEdgesNanos = new long[kOverrunBucketEdges.length];
+
+  private long deadlineNanos;
+
+  private long loopCount = 0;
+  private long overrunCount = 0;
+  private long consecutiveOverruns = 0;
+  private long maxConsecutiveOverruns = 0;
+  private long lastOverrunNanos = 0;
+  private long worstOverrunNanos = 0;
+  private long lastWaitNanos = 0;
+  private final long[] overrunHistogram = new long[kOverrunBucketEdges.length + 1];
+
+  /**
+   * Constructs a FixedPeriodLoop.
+   *
+   * @param periodSeconds The period of the loop, in seconds.
+   */
+  public FixedPeriodLoop(double periodSeconds) {
+    if (periodSeconds <= 0) {
+      throw new IllegalArgumentException("Loop period must be positive, got " + periodSeconds);
+    }
+    periodNanos = (long) (periodSeconds * 1E9);
+    for (int i = 0; i < kOverrunBucketEdges.length; i++) {
+      overrunBucketEdgesNanos[i] = (long) (kOverrunBucketEdges[i] * periodNanos);
+    }
+    reset();
+  }
+
+  /** Re-anchors the deadline so that the next period starts now. */
+  public void reset() {
+    deadlineNanos = System.nanoTime() + periodNanos;
+  }
+
+  /**
+   * Gets the period of this loop.
+   *
+   * @return The period in seconds.
+   */
+  public double getPeriodSeconds() {
+    return periodNanos / 1E9;
+  }
+
+  /**
+   * Blocks until the end of the current period. Should be called exactly once at the end of each
+   * loop.
+   *
+   * <p>If the thread is interrupted while waiting, this returns early with the interrupt flag set
+   * so the caller can notice the stop request.
+   */
+  public void waitForNextPeriod() {
+    long now = System.nanoTime();
+    long remainingNanos = deadlineNanos - now;
+    loopCount++;
+
+    if (remainingNanos < 0) {
+      recordOverrun(-remainingNanos);
+      lastWaitNanos = 0;
+      if (-remainingNanos >= periodNanos) {
+        // Too far behind to catch up without running loops back-to-back, so start fresh.
+        deadlineNanos = now + periodNanos;
+      } else {
+        deadlineNanos += periodNanos;
+      }
+      return;
+    }
+
+    consecutiveOverruns = 0;
+    lastOverrunNanos = 0;
+    lastWaitNanos = remainingNanos;
+
+    long sleepNanos = remainingNanos - kSpinThresholdNanos;
+    if (sleepNanos > 0) {
+      try {
+        Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        deadlineNanos += periodNanos;
+        return;
+      }
+    }
+    //noinspection StatementWithEmptyBody
+    while (System.nanoTime() - deadlineNanos < 0) {}
+
+    deadlineNanos += periodNanos;
+  }
+
+  private void recordOverrun(long overrunNanos) {
+    overrunCount++;
+    consecutiveOverruns++;
+    maxConsecutiveOverruns = Math.max(maxConsecutiveOverruns, consecutiveOverruns);
+    lastOverrunNanos = overrunNanos;
+    worstOverrunNanos = Math.max(worstOverrunNanos, overrunNanos);
+
+    int bucket = 0;
+    while (bucket < overrunBucketEdgesNanos.length
+        && overrunNanos > overrunBucketEdgesNanos[bucket]) {
+      bucket++;
+    }
+    overrunHistogram[bucket]++;
+  }
+
+  /**
+   * Logs the loop timing statistics. Must be called between {@link Logger#periodicBeforeUser()} and
+   * {@link Logger#periodicAfterUser}.
+   */
+  public void log() {
+    Logger.recordOutput("LoopTiming/PeriodMs", periodNanos / 1E6);
+    Logger.recordOutput("LoopTiming/LoopCount", loopCount);
+    Logger.recordOutput("LoopTiming/OverrunCount", overrunCount);
+    Logger.recordOutput("LoopTiming/ConsecutiveOverruns", consecutiveOverruns);
+    Logger.recordOutput("LoopTiming/MaxConsecutiveOverruns", maxConsecutiveOverruns);
+    Logger.recordOutput("LoopTiming/LastOverrunMs", lastOverrunNanos / 1E6);
+    Logger.recordOutput("LoopTiming/WorstOverrunMs", worstOverrunNanos / 1E6);
+    Logger.recordOutput("LoopTiming/LastWaitMs", lastWaitNanos / 1E6);
+    Logger.recordOutput("LoopTiming/OverrunHistogram", overrunHistogram);
+  }
+}
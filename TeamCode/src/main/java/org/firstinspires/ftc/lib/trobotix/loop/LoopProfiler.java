@@ -0,0 +1,154 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.loop;
+
+import java.util.Arrays;
+import org.psilynx.psikit.core.Logger;
+
+/**
+ * Measures how long each phase of the robot loop takes, and logs rolling statistics for each phase
+ * under {@code LoopProfiler/}.
+ *
+ * <p>Phases are timed by chaining calls to {@link #record}:
+ *
+ * <pre>{@code
+ * long t = System.nanoTime();
+ * doHardwareReads();
+ * t = LoopProfiler.record(Phase.HARDWARE_INPUTS, t);
+ * doVoltageRead();
+ * t = LoopProfiler.record(Phase.VOLTAGE, t);
+ * }</pre>
+ *
+ * <p>A phase can be recorded multiple times in the same loop, in which case the durations are
+ * summed. {@link #endLoop()} must be called once at the end of every loop, from inside the logging
+ * cycle. Nothing here allocates after class initialization.
+ */
+public final class LoopProfiler {
+  private LoopProfiler() {}
+
+  /** A phase of the robot loop. */
+  public enum Phase {
+    /** {@link Logger#periodicBeforeUser()} and {@link Logger#periodicAfterUser}. */
+    LOGGING("Logging"),
+    /** Bulk reads and other hardware input processing. */
+    HARDWARE_INPUTS("HardwareInputs"),
+    /** Recalculating encoder velocities. */
+    ENCODER_VELOCITY("EncoderVelocity"),
+    /** Reading the bus voltage. Only recorded when the hardware isn't read on its own thread. */
+    VOLTAGE("Voltage"),
+    /** Running every subsystem's periodic method. */
+    SUBSYSTEM_PERIODIC("SubsystemPeriodic"),
+    /** Polling button bindings. */
+    BUTTON_POLL("ButtonPoll"),
+    /** Executing commands, checking whether they've finished and ending them. */
+    COMMANDS("Commands"),
+    /** Processing the scheduler's queued schedules and cancels, and scheduling default commands. */
+    SCHEDULER_QUEUES("SchedulerQueues"),
+    /** Writing motor and servo outputs to the hubs. */
+    OUTPUTS("Outputs"),
+    /** Sending telemetry to the driver station. */
+    TELEMETRY("Telemetry");
+
+    private final String name;
+
+    Phase(String name) {
+      this.name = name;
+    }
+  }
+
+  // Number of loops the statistics are computed over.
+  private static final int kWindowSize = 256;
+  // Number of loops between recomputing and logging the statistics.
+  private static final int kPublishPeriod = 50;
+
+  private static final Phase[] phases = Phase.values();
+  private static final int kPhaseCount = phases.length;
+
+  // Index kPhaseCount holds the total of every phase.
+  private static final long[] currentLoopNanos = new long[kPhaseCount + 1];
+  private static final long[][] windowNanos = new long[kPhaseCount + 1][kWindowSize];
+  private static final long[] sortScratch = new long[kWindowSize];
+  private static int windowIndex = 0;
+  private static int windowCount = 0;
+  private static int loopsSincePublish = 0;
+
+  private static final String[] minKeys = new String[kPhaseCount + 1];
+  private static final String[] meanKeys = new String[kPhaseCount + 1];
+  private static final String[] p99Keys = new String[kPhaseCount + 1];
+  private static final String[] maxKeys = new String[kPhaseCount + 1];
+
+  static {
+    for (int i = 0; i <= kPhaseCount; i++) {
+      var prefix = "LoopProfiler/" + (i == kPhaseCount ? "Total" : phases[i].name) + "/";
+      minKeys[i] = prefix + "MinMs";
+      meanKeys[i] = prefix + "MeanMs";
+      p99Keys[i] = prefix + "P99Ms";
+      maxKeys[i] = prefix + "MaxMs";
+    }
+  }
+
+  /** Clears all recorded timings. */
+  public static void reset() {
+    for (int i = 0; i <= kPhaseCount; i++) {
+      currentLoopNanos[i] = 0;
+    }
+    windowIndex = 0;
+    windowCount = 0;
+    loopsSincePublish = 0;
+  }
+
+  /**
+   * Records the time elapsed since {@code startNanos} against a phase.
+   *
+   * @param phase The phase that was running.
+   * @param startNanos The {@link System#nanoTime()} timestamp the phase started at.
+   * @return The current {@link System#nanoTime()} timestamp, to be used as the start of the next
+   *     phase.
+   */
+  public static long record(Phase phase, long startNanos) {
+    long now = System.nanoTime();
+    currentLoopNanos[phase.ordinal()] += now - startNanos;
+    return now;
+  }
+
+  /**
+   * Ends the current loop, adding its phase durations to the rolling window. Periodically logs the
+   * statistics for every phase, so this must be called between {@link Logger#periodicBeforeUser()}
+   * and {@link Logger#periodicAfterUser}.
+   */
+  public static void endLoop() {
+    long total = 0;
+    for (int i = 0; i < kPhaseCount; i++) {
+      total += currentLoopNanos[i];
+    }
+    currentLoopNanos[kPhaseCount] = total;
+    for (int i = 0; i <= kPhaseCount; i++) {
+      windowNanos[i][windowIndex] = currentLoopNanos[i];
+      currentLoopNanos[i] = 0;
+    }
+    windowIndex = (windowIndex + 1) % kWindowSize;
+    windowCount = Math.min(windowCount + 1, kWindowSize);
+
+    if (++loopsSincePublish >= kPublishPeriod) {
+      loopsSincePublish = 0;
+      publish();
+    }
+  }
+
+  private static void publish() {
+    for (int i = 0; i <= kPhaseCount; i++) {
+      System.arraycopy(windowNanos[i], 0, sortScratch, 0, windowCount);
+      Arrays.sort(sortScratch, 0, windowCount);
+      long sum = 0;
+      for (int j = 0; j < windowCount; j++) {
+        sum += sortScratch[j];
+      }
+      int p99Index = Math.min(windowCount - 1, (int) Math.ceil(windowCount * 0.99) - 1);
+      Logger.recordOutput(minKeys[i], sortScratch[0] / 1E6);
+      Logger.recordOutput(meanKeys[i], sum / (windowCount * 1E6));
+      Logger.recordOutput(p99Keys[i], sortScratch[p99Index] / 1E6);
+      Logger.recordOutput(maxKeys[i], sortScratch[windowCount - 1] / 1E6);
+    }
+  }
+}
@@ -5,8 +5,11 @@ package org.firstinspires.ftc.lib.wpilib.command;
 
 import static org.firstinspires.ftc.lib.wpilib.util.ErrorMessages.requireNonNullParam;
 
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.BooleanSupplier;
 import org.firstinspires.ftc.lib.wpilib.util.function.BooleanConsumer;
@@ -23,10 +26,16 @@ import org.firstinspires.ftc.lib.wpilib.util.function.BooleanConsumer;
  */
 public abstract class Command {
   /** Requirements set. */
-  private final Set<Subsystem> m_requirements = new HashSet<>();
+  private final RequirementSet m_requirements = new RequirementSet();
 
   private String name;
 
+  /** Execution-time statistics, created by the scheduler the first time this is scheduled. */
+  ExecutionStats m_executionStats;
+
+  /** This command wrapped in an Optional, created by the scheduler the first time it interrupts. */
+  Optional<Command> m_asInterruptor;
+
   /** Default constructor. */
   @SuppressWarnings("this-escape")
   protected Command() {
@@ -105,6 +114,119 @@ public abstract class Command {
     m_requirements.addAll(requirements);
   }
 
+  /**
+   * Adds another command's requirements to the requirements of this command, merging its
+   * requirement mask into this command's instead of recomputing it. Used by compositions.
+   *
+   * @param command the command whose requirements to add
+   */
+  final void addRequirements(Command command) {
+    long mask = getRequirementMask() | command.getRequirementMask();
+    m_requirements.addAll(command.getRequirements());
+    m_requirements.setMask(mask);
+  }
+
+  /**
+   * Gets the requirement mask of this command, which has the bit of each required subsystem's
+   * scheduler ID set. Two commands share a requirement if and only if their masks intersect.
+   *
+   * <p>The mask is cached by the requirement set, which drops it whenever the set is changed. If
+   * {@link #getRequirements()} is overridden to return some other set, the mask is recomputed every
+   * call.
+   *
+   * @return the requirement mask
+   */
+  final long getRequirementMask() {
+    Set<Subsystem> requirements = getRequirements();
+    if (requirements instanceof RequirementSet requirementSet) {
+      return requirementSet.getMask();
+    }
+    return CommandScheduler.getInstance().getRequirementMask(requirements);
+  }
+
+  /**
+   * A set of requirements that caches its requirement mask. Every way of changing the set goes
+   * through {@link #add}, {@link #remove}, {@link #clear}, or its iterator's {@code remove}, each
+   * of which drops the cached mask. The mask is also dropped if the scheduler has freed a subsystem
+   * ID since it was computed.
+   */
+  private static final class RequirementSet extends AbstractSet<Subsystem> {
+    private final Set<Subsystem> m_subsystems = new HashSet<>();
+    private long m_mask;
+    private boolean m_maskValid = false;
+    private int m_maskGeneration;
+
+    long getMask() {
+      CommandScheduler scheduler = CommandScheduler.getInstance();
+      if (!m_maskValid || m_maskGeneration != scheduler.getIdGeneration()) {
+        setMask(scheduler.getRequirementMask(this));
+      }
+      return m_mask;
+    }
+
+    void setMask(long mask) {
+      m_mask = mask;
+      m_maskValid = true;
+      m_maskGeneration = CommandScheduler.getInstance().getIdGeneration();
+    }
+
+    @Override
+    public boolean add(Subsystem subsystem) {
+      if (!m_subsystems.add(subsystem)) {
+        return false;
+      }
+      m_maskValid = false;
+      return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!m_subsystems.remove(o)) {
+        return false;
+      }
+      m_maskValid = false;
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      m_subsystems.clear();
+      m_maskValid = false;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return m_subsystems.contains(o);
+    }
+
+    @Override
+    public int size() {
+      return m_subsystems.size();
+    }
+
+    @Override
+    public Iterator<Subsystem> iterator() {
+      Iterator<Subsystem> iterator = m_subsystems.iterator();
+      return new Iterator<>() {
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public Subsystem next() {
+          return iterator.next();
+        }
+
+        @Override
+        public void remove() {
+          iterator.remove();
+          m_maskValid = false;
+        }
+      };
+    }
+  }
+
   /**
    * Gets the name of this Command.
    *
@@ -5,15 +5,14 @@ package org.firstinspires.ftc.lib.wpilib.command;
 
 import static org.firstinspires.ftc.lib.wpilib.util.ErrorMessages.requireNonNullParam;
 
+import com.qualcomm.robotcore.util.RobotLog;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -22,8 +21,10 @@ import java.util.WeakHashMap;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
+import org.firstinspires.ftc.lib.trobotix.loop.LoopProfiler;
 import org.firstinspires.ftc.lib.wpilib.command.Command.InterruptionBehavior;
 import org.firstinspires.ftc.lib.wpilib.wpilibj.event.EventLoop;
+import org.psilynx.psikit.core.Logger;
 
 /**
  * The scheduler responsible for running {@link Command}s. A Command-based robot should call {@link
@@ -54,16 +55,53 @@ public final class CommandScheduler {
 
   private final Map<Command, Exception> m_composedCommands = new WeakHashMap<>();
 
-  // A set of the currently-running commands.
-  private final Set<Command> m_scheduledCommands = new LinkedHashSet<>();
-
-  // A map from required subsystems to their requiring commands. Also used as a set of the
-  // currently-required subsystems.
-  private final Map<Subsystem, Command> m_requirements = new LinkedHashMap<>();
-
-  // A map from subsystems registered with the scheduler to their default commands.  Also used
-  // as a list of currently-registered subsystems.
-  private final Map<Subsystem, Command> m_subsystems = new LinkedHashMap<>();
+  /** The maximum number of subsystems, as subsystem IDs are bits of a {@code long}. */
+  public static final int kMaxSubsystems = Long.SIZE;
+
+  // The currently-running commands, in the order they were scheduled, and the requirement mask each
+  // of them was scheduled with. Only the first m_scheduledCount entries are valid.
+  private Command[] m_scheduledCommands = new Command[8];
+  private long[] m_scheduledMasks = new long[8];
+  private int m_scheduledCount = 0;
+
+  // Every subsystem that has been registered or required by a command is given a small integer ID,
+  // and all per-subsystem state is kept in arrays indexed by that ID. A subsystem's ID is freed
+  // when
+  // it's unregistered, or once it's no longer required if it was required at the time, and freed
+  // IDs
+  // are reused lowest first. Every time one is freed the generation is incremented, so commands
+  // know
+  // to recompute their cached requirement masks.
+  private final Map<Subsystem, Integer> m_subsystemIds = new HashMap<>();
+  private long m_assignedMask = 0;
+  private long m_pendingReleaseMask = 0;
+  private int m_idGeneration = 0;
+  private final Subsystem[] m_subsystems = new Subsystem[kMaxSubsystems];
+  // The default command of each subsystem, or null if it doesn't have one.
+  private final Command[] m_defaultCommands = new Command[kMaxSubsystems];
+  // The command currently requiring each subsystem, or null if it isn't required.
+  private final Command[] m_requiringCommands = new Command[kMaxSubsystems];
+  // The execution-time statistics of each registered subsystem.
+  private final ExecutionStats[] m_subsystemStats = new ExecutionStats[kMaxSubsystems];
+  // Bitmasks of the IDs of the registered subsystems, and of the subsystems currently required by a
+  // scheduled command.
+  private long m_registeredMask = 0;
+  private long m_requiredMask = 0;
+
+  // The execution-time statistics of the commands that ended most recently, in a ring. Each command
+  // owns its own statistics, so these are only kept so they can be reported after it ends.
+  private static final int kEndedCommandStats = 32;
+  private final ExecutionStats[] m_endedCommandStats = new ExecutionStats[kEndedCommandStats];
+  private int m_endedCommandStatsHead = 0;
+
+  // Loop overrun detection, similar to WPILib's Watchdog.
+  private static final long kMinOverrunPrintPeriodNanos = 1_000_000_000;
+  private long m_overrunThresholdNanos = 20_000_000;
+  private long m_loopCount = 0;
+  private long m_lastOverrunPrintNanos = 0;
+  private boolean m_lastLoopOverran = false;
+  private ExecutionStats m_worstOffender = null;
+  private long m_worstOffenderNanos = 0;
 
   private final EventLoop m_defaultButtonLoop = new EventLoop();
   // The set of currently-registered buttons that will be polled every iteration.
@@ -76,12 +114,13 @@ public final class CommandScheduler {
   private final List<Consumer<Command>> m_finishActions = new ArrayList<>();
 
   // Flag and queues for avoiding ConcurrentModificationException if commands are
-  // scheduled/canceled during run
+  // scheduled/canceled during run. These are lists rather than sets so that they can be iterated
+  // by index without allocating an iterator.
   private boolean m_inRunLoop;
-  private final Set<Command> m_toSchedule = new LinkedHashSet<>();
+  private final List<Command> m_toSchedule = new ArrayList<>();
   private final List<Command> m_toCancelCommands = new ArrayList<>();
   private final List<Optional<Command>> m_toCancelInterruptors = new ArrayList<>();
-  private final Set<Command> m_endingCommands = new LinkedHashSet<>();
+  private final List<Command> m_endingCommands = new ArrayList<>();
 
   CommandScheduler() {}
 
@@ -113,20 +152,156 @@ public final class CommandScheduler {
         requireNonNullParam(loop, "loop", "CommandScheduler" + ".replaceButtonEventLoop");
   }
 
+  /**
+   * Gets the ID of a subsystem, assigning it a new ID if it doesn't have one yet.
+   *
+   * @param subsystem The subsystem.
+   * @return The subsystem's ID.
+   * @throws IllegalStateException if there are already {@link #kMaxSubsystems} subsystems.
+   */
+  private int getId(Subsystem subsystem) {
+    Integer id = m_subsystemIds.get(subsystem);
+    if (id != null) {
+      return id;
+    }
+    long free = ~m_assignedMask;
+    if (free == 0) {
+      throw new IllegalStateException(
+          "Tried to use more than " + kMaxSubsystems + " subsystems: " + subsystem.getName());
+    }
+    int newId = Long.numberOfTrailingZeros(free);
+    m_assignedMask |= 1L << newId;
+    m_subsystems[newId] = subsystem;
+    m_subsystemIds.put(subsystem, newId);
+    return newId;
+  }
+
+  /**
+   * Frees the ID of a subsystem, so it can be given to another one. If a command is requiring the
+   * subsystem, the ID is freed once the command ends instead.
+   *
+   * @param id The subsystem's ID.
+   */
+  private void releaseId(int id) {
+    if (m_requiringCommands[id] != null) {
+      m_pendingReleaseMask |= 1L << id;
+      return;
+    }
+    m_pendingReleaseMask &= ~(1L << id);
+    m_subsystemIds.remove(m_subsystems[id]);
+    m_subsystems[id] = null;
+    m_assignedMask &= ~(1L << id);
+    m_idGeneration++;
+  }
+
+  /**
+   * Gets the generation of subsystem IDs, which changes every time an ID is freed. A requirement
+   * mask computed in an earlier generation may have bits of freed IDs set.
+   *
+   * @return The generation.
+   */
+  int getIdGeneration() {
+    return m_idGeneration;
+  }
+
+  /**
+   * Gets the requirement mask of a set of subsystems, with the bit of each subsystem's ID set.
+   * Commands cache the result, see {@link Command#getRequirementMask()}.
+   *
+   * @param requirements The subsystems.
+   * @return The requirement mask.
+   */
+  long getRequirementMask(Set<Subsystem> requirements) {
+    long mask = 0;
+    for (Subsystem requirement : requirements) {
+      mask |= 1L << getId(requirement);
+    }
+    return mask;
+  }
+
+  /**
+   * Finds the index of a command in the scheduled commands array.
+   *
+   * @param command The command to find.
+   * @return The index, or -1 if the command isn't scheduled.
+   */
+  private int indexOfScheduled(Command command) {
+    for (int i = 0; i < m_scheduledCount; i++) {
+      if (m_scheduledCommands[i] == command) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Removes the command at an index of the scheduled commands array, and frees its requirements.
+   *
+   * @param index The index of the command to remove.
+   */
+  private void removeScheduled(int index) {
+    Command command = m_scheduledCommands[index];
+    for (long bits = m_scheduledMasks[index]; bits != 0; bits &= bits - 1) {
+      int id = Long.numberOfTrailingZeros(bits);
+      if (m_requiringCommands[id] == command) {
+        m_requiringCommands[id] = null;
+        m_requiredMask &= ~(1L << id);
+        if ((m_pendingReleaseMask & 1L << id) != 0) {
+          releaseId(id);
+        }
+      }
+    }
+    retireStats(command.m_executionStats);
+    m_scheduledCount--;
+    System.arraycopy(
+        m_scheduledCommands, index + 1, m_scheduledCommands, index, m_scheduledCount - index);
+    System.arraycopy(
+        m_scheduledMasks, index + 1, m_scheduledMasks, index, m_scheduledCount - index);
+    m_scheduledCommands[m_scheduledCount] = null;
+  }
+
+  /**
+   * Keeps the statistics of a command that ended, so they can still be reported, unless they're
+   * already kept. Replaces the statistics kept the longest once full.
+   *
+   * @param stats The statistics of the command.
+   */
+  private void retireStats(ExecutionStats stats) {
+    for (ExecutionStats ended : m_endedCommandStats) {
+      if (ended == stats) {
+        return;
+      }
+    }
+    m_endedCommandStats[m_endedCommandStatsHead] = stats;
+    m_endedCommandStatsHead = (m_endedCommandStatsHead + 1) % kEndedCommandStats;
+  }
+
   /**
    * Initializes a given command, adds its requirements to the list, and performs the init actions.
    *
    * @param command The command to initialize
-   * @param requirements The command requirements
+   * @param requirementMask The requirement mask of the command
    */
-  private void initCommand(Command command, Set<Subsystem> requirements) {
-    m_scheduledCommands.add(command);
-    for (Subsystem requirement : requirements) {
-      m_requirements.put(requirement, command);
+  private void initCommand(Command command, long requirementMask) {
+    if (m_scheduledCount == m_scheduledCommands.length) {
+      m_scheduledCommands = Arrays.copyOf(m_scheduledCommands, m_scheduledCount * 2);
+      m_scheduledMasks = Arrays.copyOf(m_scheduledMasks, m_scheduledCount * 2);
+    }
+    m_scheduledCommands[m_scheduledCount] = command;
+    m_scheduledMasks[m_scheduledCount] = requirementMask;
+    m_scheduledCount++;
+    for (long bits = requirementMask; bits != 0; bits &= bits - 1) {
+      m_requiringCommands[Long.numberOfTrailingZeros(bits)] = command;
     }
+    m_requiredMask |= requirementMask;
+    if (command.m_executionStats == null) {
+      command.m_executionStats = new ExecutionStats(command::getName);
+    }
+    long startTime = System.nanoTime();
     command.initialize();
-    for (Consumer<Command> action : m_initActions) {
-      action.accept(command);
+    trackExecutionTime(command.m_executionStats, startTime);
+    for (int i = 0; i < m_initActions.size(); i++) {
+      m_initActions.get(i).accept(command);
     }
   }
 
@@ -141,12 +316,14 @@ public final class CommandScheduler {
    *
    * @param command the command to schedule. If null, no-op.
    */
-  private void schedule(Command command) {
+  void schedule(Command command) {
     if (command == null) {
       throw new NullPointerException("Tried to schedule a null command");
     }
     if (m_inRunLoop) {
-      m_toSchedule.add(command);
+      if (!m_toSchedule.contains(command)) {
+        m_toSchedule.add(command);
+      }
       return;
     }
 
@@ -158,28 +335,32 @@ public final class CommandScheduler {
       return;
     }
 
-    Set<Subsystem> requirements = command.getRequirements();
+    long requirementMask = command.getRequirementMask();
+    long conflicts = requirementMask & m_requiredMask;
 
     // Schedule the command if the requirements are not currently in-use.
-    if (Collections.disjoint(m_requirements.keySet(), requirements)) {
-      initCommand(command, requirements);
+    if (conflicts == 0) {
+      initCommand(command, requirementMask);
     } else {
       // Else check if the requirements that are in use have all have interruptible commands,
       // and if so, interrupt those commands and schedule the new command.
-      for (Subsystem requirement : requirements) {
-        Command requiring = requiring(requirement);
-        if (requiring != null
-            && requiring.getInterruptionBehavior() == InterruptionBehavior.kCancelIncoming) {
+      for (long bits = conflicts; bits != 0; bits &= bits - 1) {
+        if (m_requiringCommands[Long.numberOfTrailingZeros(bits)].getInterruptionBehavior()
+            == InterruptionBehavior.kCancelIncoming) {
           return;
         }
       }
-      for (Subsystem requirement : requirements) {
-        Command requiring = requiring(requirement);
+      for (long bits = conflicts; bits != 0; bits &= bits - 1) {
+        // Null if it was already canceled for requiring an earlier subsystem.
+        Command requiring = m_requiringCommands[Long.numberOfTrailingZeros(bits)];
         if (requiring != null) {
-          cancel(requiring, Optional.of(command));
+          if (command.m_asInterruptor == null) {
+            command.m_asInterruptor = Optional.of(command);
+          }
+          cancel(requiring, command.m_asInterruptor);
         }
       }
-      initCommand(command, requirements);
+      initCommand(command, requirementMask);
     }
   }
 
@@ -210,51 +391,72 @@ public final class CommandScheduler {
    * have their end methods called and are removed.
    *
    * <p>Any subsystems not being used as requirements have their default methods started.
+   *
+   * <p>Once every command and subsystem has been scheduled at least once, this does not allocate.
    */
   public void run() {
+    long profilerTime = System.nanoTime();
+    final long loopStartTime = profilerTime;
+    m_loopCount++;
+    m_worstOffender = null;
+    m_worstOffenderNanos = 0;
+
     // Run the periodic method of all registered subsystems.
-    for (Subsystem subsystem : m_subsystems.keySet()) {
-      subsystem.periodic();
+    for (long bits = m_registeredMask; bits != 0; bits &= bits - 1) {
+      int id = Long.numberOfTrailingZeros(bits);
+      long startTime = System.nanoTime();
+      m_subsystems[id].periodic();
+      trackExecutionTime(m_subsystemStats[id], startTime);
     }
+    profilerTime = LoopProfiler.record(LoopProfiler.Phase.SUBSYSTEM_PERIODIC, profilerTime);
 
     // Cache the active instance to avoid concurrency problems if setActiveLoop() is called from
     // inside the button bindings.
     EventLoop loopCache = m_activeButtonLoop;
     // Poll buttons for new commands to add.
     loopCache.poll();
+    profilerTime = LoopProfiler.record(LoopProfiler.Phase.BUTTON_POLL, profilerTime);
 
     m_inRunLoop = true;
     boolean isDisabled = !BaseOpMode.robotEnabled;
-    // Run scheduled commands, remove finished commands.
-    for (Iterator<Command> iterator = m_scheduledCommands.iterator(); iterator.hasNext(); ) {
-      Command command = iterator.next();
+    // Run scheduled commands, remove finished commands. Scheduling and canceling are deferred while
+    // in this loop, so the only changes to the array are the removals made here.
+    for (int i = 0; i < m_scheduledCount; i++) {
+      Command command = m_scheduledCommands[i];
 
       if (isDisabled && !command.runsWhenDisabled()) {
         cancel(command, kNoInterruptor);
         continue;
       }
 
+      long startTime = System.nanoTime();
       command.execute();
-      for (Consumer<Command> action : m_executeActions) {
-        action.accept(command);
+      startTime = trackExecutionTime(command.m_executionStats, startTime);
+      for (int j = 0; j < m_executeActions.size(); j++) {
+        m_executeActions.get(j).accept(command);
       }
-      if (command.isFinished()) {
+      startTime = System.nanoTime();
+      boolean finished = command.isFinished();
+      trackExecutionTime(command.m_executionStats, startTime);
+      if (finished) {
         m_endingCommands.add(command);
+        startTime = System.nanoTime();
         command.end(false);
-        for (Consumer<Command> action : m_finishActions) {
-          action.accept(command);
+        trackExecutionTime(command.m_executionStats, startTime);
+        for (int j = 0; j < m_finishActions.size(); j++) {
+          m_finishActions.get(j).accept(command);
         }
         m_endingCommands.remove(command);
-        iterator.remove();
-
-        m_requirements.keySet().removeAll(command.getRequirements());
+        removeScheduled(i);
+        i--;
       }
     }
     m_inRunLoop = false;
+    profilerTime = LoopProfiler.record(LoopProfiler.Phase.COMMANDS, profilerTime);
 
     // Schedule/cancel commands from queues populated during loop
-    for (Command command : m_toSchedule) {
-      schedule(command);
+    for (int i = 0; i < m_toSchedule.size(); i++) {
+      schedule(m_toSchedule.get(i));
     }
 
     for (int i = 0; i < m_toCancelCommands.size(); i++) {
@@ -266,12 +468,144 @@ public final class CommandScheduler {
     m_toCancelInterruptors.clear();
 
     // Add default commands for un-required registered subsystems.
-    for (Map.Entry<Subsystem, Command> subsystemCommand : m_subsystems.entrySet()) {
-      if (!m_requirements.containsKey(subsystemCommand.getKey())
-          && subsystemCommand.getValue() != null) {
-        schedule(subsystemCommand.getValue());
+    for (long bits = m_registeredMask & ~m_requiredMask; bits != 0; bits &= bits - 1) {
+      int id = Long.numberOfTrailingZeros(bits);
+      // Checked again, as scheduling an earlier default command may have required this subsystem.
+      if (m_requiringCommands[id] == null && m_defaultCommands[id] != null) {
+        schedule(m_defaultCommands[id]);
+      }
+    }
+    LoopProfiler.record(LoopProfiler.Phase.SCHEDULER_QUEUES, profilerTime);
+
+    // Only logged on change, as logging a value allocates.
+    long loopTime = System.nanoTime() - loopStartTime;
+    boolean overrun = loopTime > m_overrunThresholdNanos;
+    if (overrun != m_lastLoopOverran) {
+      m_lastLoopOverran = overrun;
+      Logger.recordOutput("CommandScheduler/Overrun", overrun);
+    }
+    if (overrun) {
+      reportOverrun(loopTime);
+    }
+  }
+
+  /**
+   * Adds the time elapsed since {@code startTime} to a command's or subsystem's statistics, and
+   * tracks whether it's the most expensive this loop.
+   *
+   * @param stats The statistics to add to.
+   * @param startTime The {@link System#nanoTime()} timestamp the call started at.
+   * @return The current {@link System#nanoTime()} timestamp.
+   */
+  private long trackExecutionTime(ExecutionStats stats, long startTime) {
+    long now = System.nanoTime();
+    long loopNanos = stats.add(m_loopCount, now - startTime);
+    if (loopNanos > m_worstOffenderNanos) {
+      m_worstOffender = stats;
+      m_worstOffenderNanos = loopNanos;
+    }
+    return now;
+  }
+
+  private void reportOverrun(long loopTime) {
+    String worstOffender = m_worstOffender == null ? "none" : m_worstOffender.getName();
+    Logger.recordOutput("CommandScheduler/LoopTimeMs", loopTime / 1E6);
+    Logger.recordOutput("CommandScheduler/WorstOffender", worstOffender);
+    Logger.recordOutput("CommandScheduler/WorstOffenderMs", m_worstOffenderNanos / 1E6);
+
+    // Rate limited so that a slow loop isn't made even slower by printing every iteration.
+    long now = System.nanoTime();
+    if (now - m_lastOverrunPrintNanos > kMinOverrunPrintPeriodNanos) {
+      m_lastOverrunPrintNanos = now;
+      RobotLog.ww(
+          "CommandScheduler",
+          String.format(
+              "CommandScheduler loop overrun: %.3fms (limit %.3fms). Worst offender: %s (%.3fms)",
+              loopTime / 1E6,
+              m_overrunThresholdNanos / 1E6,
+              worstOffender,
+              m_worstOffenderNanos / 1E6));
+    }
+  }
+
+  /**
+   * Sets how long {@link CommandScheduler#run()} can take before it's considered to have overrun.
+   * Overruns are logged along with the command or subsystem that took the longest that loop.
+   *
+   * @param seconds The overrun threshold in seconds. Defaults to 20ms.
+   */
+  public void setOverrunThreshold(double seconds) {
+    m_overrunThresholdNanos = (long) (seconds * 1E9);
+  }
+
+  /**
+   * Gets the commands that have taken the most time per loop on average, most expensive first.
+   * Includes the commands currently running, and the last {@value #kEndedCommandStats} distinct
+   * commands that ended.
+   *
+   * @param n The maximum number of commands to return.
+   * @return The statistics of the most expensive commands.
+   */
+  public List<ExecutionStats> getMostExpensiveCommands(int n) {
+    var stats = new ArrayList<ExecutionStats>();
+    for (int i = 0; i < m_scheduledCount; i++) {
+      stats.add(m_scheduledCommands[i].m_executionStats);
+    }
+    for (ExecutionStats ended : m_endedCommandStats) {
+      if (ended != null && !stats.contains(ended)) {
+        stats.add(ended);
       }
     }
+    return getMostExpensive(stats, n);
+  }
+
+  /**
+   * Gets the subsystems whose {@link Subsystem#periodic()} methods have taken the most time per
+   * loop on average, most expensive first.
+   *
+   * @param n The maximum number of subsystems to return.
+   * @return The statistics of the most expensive subsystems.
+   */
+  public List<ExecutionStats> getMostExpensiveSubsystems(int n) {
+    var stats = new ArrayList<ExecutionStats>();
+    for (long bits = m_registeredMask; bits != 0; bits &= bits - 1) {
+      stats.add(m_subsystemStats[Long.numberOfTrailingZeros(bits)]);
+    }
+    return getMostExpensive(stats, n);
+  }
+
+  private static List<ExecutionStats> getMostExpensive(Collection<ExecutionStats> stats, int n) {
+    var sorted = new ArrayList<>(stats);
+    sorted.sort(Comparator.comparingDouble(ExecutionStats::getAverageMs).reversed());
+    return sorted.subList(0, Math.min(n, sorted.size()));
+  }
+
+  /**
+   * Marks a subsystem as registered, giving it an ID if it doesn't already have one.
+   *
+   * @param subsystem The subsystem to register.
+   * @return The subsystem's ID.
+   */
+  private int register(Subsystem subsystem) {
+    int id = getId(subsystem);
+    if ((m_registeredMask & 1L << id) == 0) {
+      m_registeredMask |= 1L << id;
+      m_pendingReleaseMask &= ~(1L << id);
+      m_defaultCommands[id] = null;
+      m_subsystemStats[id] = new ExecutionStats(subsystem::getName);
+    }
+    return id;
+  }
+
+  /**
+   * Whether a subsystem is registered with the scheduler.
+   *
+   * @param subsystem The subsystem.
+   * @return Whether it's registered.
+   */
+  private boolean isRegistered(Subsystem subsystem) {
+    Integer id = m_subsystemIds.get(subsystem);
+    return id != null && (m_registeredMask & 1L << id) != 0;
   }
 
   /**
@@ -279,28 +613,41 @@ public final class CommandScheduler {
    * to run when the scheduler is run, and for the subsystem's default command to be scheduled. It
    * is recommended to call this from the constructor of your subsystem implementations.
    *
+   * <p>Each subsystem is given a small integer ID, so at most {@link #kMaxSubsystems} subsystems
+   * can be used.
+   *
    * @param subsystems the subsystem to register
+   * @throws IllegalStateException if this would exceed {@link #kMaxSubsystems} subsystems
    */
   public void registerSubsystem(Subsystem... subsystems) {
     for (Subsystem subsystem : subsystems) {
       if (subsystem == null) {
         throw new NullPointerException("Tried to register a null subsystem");
       }
-      if (m_subsystems.containsKey(subsystem)) {
+      if (isRegistered(subsystem)) {
         throw new IllegalArgumentException("Tried to register an already-registered subsystem");
       }
-      m_subsystems.put(subsystem, null);
+      register(subsystem);
     }
   }
 
   /**
    * Un-registers subsystems with the scheduler. The subsystem will no longer have its periodic
-   * block called, and will not have its default command scheduled.
+   * block called, and will not have its default command scheduled. Its ID is freed for another
+   * subsystem to use.
    *
    * @param subsystems the subsystem to un-register
    */
   public void unregisterSubsystem(Subsystem... subsystems) {
-    m_subsystems.keySet().removeAll(Set.of(subsystems));
+    for (Subsystem subsystem : subsystems) {
+      Integer id = m_subsystemIds.get(subsystem);
+      if (id != null) {
+        m_registeredMask &= ~(1L << id);
+        m_defaultCommands[id] = null;
+        m_subsystemStats[id] = null;
+        releaseId(id);
+      }
+    }
   }
 
   /**
@@ -309,7 +656,12 @@ public final class CommandScheduler {
    * scheduled.
    */
   public void unregisterAllSubsystems() {
-    m_subsystems.clear();
+    for (long bits = m_registeredMask; bits != 0; bits &= bits - 1) {
+      releaseId(Long.numberOfTrailingZeros(bits));
+    }
+    m_registeredMask = 0;
+    Arrays.fill(m_defaultCommands, null);
+    Arrays.fill(m_subsystemStats, null);
   }
 
   /**
@@ -336,7 +688,7 @@ public final class CommandScheduler {
       throw new IllegalArgumentException("Default commands must require their subsystem!");
     }
 
-    m_subsystems.put(subsystem, defaultCommand);
+    m_defaultCommands[register(subsystem)] = defaultCommand;
   }
 
   /**
@@ -351,7 +703,7 @@ public final class CommandScheduler {
       throw new NullPointerException("Tried to remove a default command for a null subsystem");
     }
 
-    m_subsystems.put(subsystem, null);
+    m_defaultCommands[register(subsystem)] = null;
   }
 
   /**
@@ -362,7 +714,8 @@ public final class CommandScheduler {
    * @return the default command associated with the subsystem
    */
   public Command getDefaultCommand(Subsystem subsystem) {
-    return m_subsystems.get(subsystem);
+    Integer id = m_subsystemIds.get(subsystem);
+    return id == null ? null : m_defaultCommands[id];
   }
 
   /**
@@ -380,6 +733,20 @@ public final class CommandScheduler {
     }
   }
 
+  /**
+   * Cancels a command. The scheduler will only call {@link Command#end(boolean)} method of the
+   * canceled command with {@code true}, indicating they were canceled (as opposed to finishing
+   * normally).
+   *
+   * <p>Commands will be canceled regardless of {@link InterruptionBehavior interruption behavior}.
+   * Unlike {@link #cancel(Command...)}, this doesn't allocate an array.
+   *
+   * @param command the command to cancel
+   */
+  public void cancel(Command command) {
+    cancel(command, kNoInterruptor);
+  }
+
   /**
    * Cancels a command. The scheduler will only call {@link Command#end(boolean)} method of the
    * canceled command with {@code true}, indicating they were canceled (as opposed to finishing
@@ -407,19 +774,24 @@ public final class CommandScheduler {
     }
 
     m_endingCommands.add(command);
+    long startTime = System.nanoTime();
     command.end(true);
-    for (BiConsumer<Command, Optional<Command>> action : m_interruptActions) {
-      action.accept(command, interruptor);
+    trackExecutionTime(command.m_executionStats, startTime);
+    for (int i = 0; i < m_interruptActions.size(); i++) {
+      m_interruptActions.get(i).accept(command, interruptor);
     }
     m_endingCommands.remove(command);
-    m_scheduledCommands.remove(command);
-    m_requirements.keySet().removeAll(command.getRequirements());
+    // Looked up again, as end() or the interrupt actions may have scheduled other commands.
+    int index = indexOfScheduled(command);
+    if (index >= 0) {
+      removeScheduled(index);
+    }
   }
 
   /** Cancels all commands that are currently scheduled. */
   public void cancelAll() {
     // Copy to array to avoid concurrent modification.
-    cancel(m_scheduledCommands.toArray(new Command[0]));
+    cancel(Arrays.copyOf(m_scheduledCommands, m_scheduledCount));
   }
 
   /**
@@ -448,7 +820,7 @@ public final class CommandScheduler {
    * @return whether all of the commands are currently scheduled
    */
   public boolean isScheduled(Command command) {
-    return m_scheduledCommands.contains(command);
+    return indexOfScheduled(command) >= 0;
   }
 
   /**
@@ -460,7 +832,8 @@ public final class CommandScheduler {
    *     scheduled
    */
   public Command requiring(Subsystem subsystem) {
-    return m_requirements.get(subsystem);
+    Integer id = m_subsystemIds.get(subsystem);
+    return id == null ? null : m_requiringCommands[id];
   }
 
   /**
@@ -586,19 +959,31 @@ public final class CommandScheduler {
    */
   public void requireNotComposed(Command... commands) {
     for (var command : commands) {
-      var exception = m_composedCommands.getOrDefault(command, null);
-      if (exception != null) {
-        exception.setStackTrace(stripFrameworkStackElements(exception.getStackTrace()));
-        var buffer = new StringWriter();
-        var writer = new PrintWriter(buffer);
-        writer.println(
-            "Commands that have been composed may not be added to another composition or scheduled "
-                + "individually!");
-        exception.printStackTrace(writer);
-        var thrownException = new IllegalArgumentException(buffer.toString());
-        thrownException.setStackTrace(stripFrameworkStackElements(thrownException.getStackTrace()));
-        throw thrownException;
-      }
+      requireNotComposed(command);
+    }
+  }
+
+  /**
+   * Requires that the specified command hasn't already been added to a composition. Unlike {@link
+   * #requireNotComposed(Command...)}, this doesn't allocate an array, as it's checked every time a
+   * command is scheduled.
+   *
+   * @param command The command to check
+   * @throws IllegalArgumentException if the given command has already been composed.
+   */
+  public void requireNotComposed(Command command) {
+    var exception = m_composedCommands.get(command);
+    if (exception != null) {
+      exception.setStackTrace(stripFrameworkStackElements(exception.getStackTrace()));
+      var buffer = new StringWriter();
+      var writer = new PrintWriter(buffer);
+      writer.println(
+          "Commands that have been composed may not be added to another composition or scheduled "
+              + "individually!");
+      exception.printStackTrace(writer);
+      var thrownException = new IllegalArgumentException(buffer.toString());
+      thrownException.setStackTrace(stripFrameworkStackElements(thrownException.getStackTrace()));
+      throw thrownException;
     }
   }
 
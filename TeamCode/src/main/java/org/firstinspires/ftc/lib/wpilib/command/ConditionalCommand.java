@@ -38,8 +38,8 @@ public class ConditionalCommand extends Command {
 
     CommandScheduler.getInstance().registerComposedCommands(onTrue, onFalse);
 
-    addRequirements(m_onTrue.getRequirements());
-    addRequirements(m_onFalse.getRequirements());
+    addRequirements(m_onTrue);
+    addRequirements(m_onFalse);
   }
 
   @Override
@@ -0,0 +1,108 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.wpilib.command;
+
+import java.util.function.Supplier;
+
+/**
+ * Execution-time statistics for a single {@link Command} or {@link Subsystem}, as measured by the
+ * {@link CommandScheduler}.
+ *
+ * <p>For commands, this covers {@link Command#initialize()}, {@link Command#execute()}, {@link
+ * Command#isFinished()} and {@link Command#end(boolean)}. For subsystems, this covers {@link
+ * Subsystem#periodic()}.
+ */
+public final class ExecutionStats {
+  private final Supplier<String> nameSupplier;
+
+  private long lastLoop = -1;
+  private long lastLoopNanos = 0;
+  private long maxLoopNanos = 0;
+  private long totalNanos = 0;
+  private long activeLoops = 0;
+
+  ExecutionStats(Supplier<String> nameSupplier) {
+    this.nameSupplier = nameSupplier;
+  }
+
+  /**
+   * Adds time spent in the given scheduler loop.
+   *
+   * @param loop The scheduler loop the time was spent in.
+   * @param nanos The time spent, in nanoseconds.
+   * @return The total time spent in the given loop so far, in nanoseconds.
+   */
+  long add(long loop, long nanos) {
+    if (loop != lastLoop) {
+      lastLoop = loop;
+      lastLoopNanos = 0;
+      activeLoops++;
+    }
+    lastLoopNanos += nanos;
+    totalNanos += nanos;
+    maxLoopNanos = Math.max(maxLoopNanos, lastLoopNanos);
+    return lastLoopNanos;
+  }
+
+  /**
+   * Gets the name of the command or subsystem these statistics are for.
+   *
+   * @return The name.
+   */
+  public String getName() {
+    return nameSupplier.get();
+  }
+
+  /**
+   * Gets the time spent in the most recent loop the command or subsystem ran in.
+   *
+   * @return The time in milliseconds.
+   */
+  public double getLastLoopMs() {
+    return lastLoopNanos / 1E6;
+  }
+
+  /**
+   * Gets the average time spent per loop, counting only loops the command or subsystem ran in.
+   *
+   * @return The time in milliseconds.
+   */
+  public double getAverageMs() {
+    return activeLoops == 0 ? 0 : totalNanos / (activeLoops * 1E6);
+  }
+
+  /**
+   * Gets the most time spent in a single loop.
+   *
+   * @return The time in milliseconds.
+   */
+  public double getMaxMs() {
+    return maxLoopNanos / 1E6;
+  }
+
+  /**
+   * Gets the total time spent across all loops.
+   *
+   * @return The time in milliseconds.
+   */
+  public double getTotalMs() {
+    return totalNanos / 1E6;
+  }
+
+  /**
+   * Gets the number of loops the command or subsystem has run in.
+   *
+   * @return The number of loops.
+   */
+  public long getActiveLoops() {
+    return activeLoops;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s: avg %.3fms, max %.3fms, last %.3fms",
+        getName(), getAverageMs(), getMaxMs(), getLastLoopMs());
+  }
+}
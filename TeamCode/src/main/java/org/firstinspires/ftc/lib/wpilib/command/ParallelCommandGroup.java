@@ -3,7 +3,6 @@
 
 package org.firstinspires.ftc.lib.wpilib.command;
 
-import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -50,12 +49,12 @@ public class ParallelCommandGroup extends Command {
     CommandScheduler.getInstance().registerComposedCommands(commands);
 
     for (Command command : commands) {
-      if (!Collections.disjoint(command.getRequirements(), getRequirements())) {
+      if ((command.getRequirementMask() & getRequirementMask()) != 0) {
         throw new IllegalArgumentException(
             "Multiple commands in a parallel composition cannot require the same subsystems");
       }
       m_commands.put(command, false);
-      addRequirements(command.getRequirements());
+      addRequirements(command);
       m_runWhenDisabled &= command.runsWhenDisabled();
       if (command.getInterruptionBehavior() == InterruptionBehavior.kCancelSelf) {
         m_interruptBehavior = InterruptionBehavior.kCancelSelf;
@@ -30,7 +30,7 @@ public class RepeatCommand extends Command {
   public RepeatCommand(Command command) {
     m_command = requireNonNullParam(command, "command", "RepeatCommand");
     CommandScheduler.getInstance().registerComposedCommands(command);
-    addRequirements(command.getRequirements());
+    addRequirements(command);
     setName("Repeat(" + command.getName() + ")");
   }
 
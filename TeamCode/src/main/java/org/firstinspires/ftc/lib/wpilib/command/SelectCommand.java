@@ -46,7 +46,7 @@ public class SelectCommand<K> extends Command {
         .registerComposedCommands(commands.values().toArray(new Command[] {}));
 
     for (Command command : m_commands.values()) {
-      addRequirements(command.getRequirements());
+      addRequirements(command);
       m_runsWhenDisabled &= command.runsWhenDisabled();
       if (command.getInterruptionBehavior() == InterruptionBehavior.kCancelSelf) {
         m_interruptBehavior = InterruptionBehavior.kCancelSelf;
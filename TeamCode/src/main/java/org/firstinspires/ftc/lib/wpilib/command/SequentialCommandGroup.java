@@ -48,7 +48,7 @@ public class SequentialCommandGroup extends Command {
 
     for (Command command : commands) {
       m_commands.add(command);
-      addRequirements(command.getRequirements());
+      addRequirements(command);
       m_runWhenDisabled &= command.runsWhenDisabled();
       if (command.getInterruptionBehavior() == InterruptionBehavior.kCancelSelf) {
         m_interruptBehavior = InterruptionBehavior.kCancelSelf;
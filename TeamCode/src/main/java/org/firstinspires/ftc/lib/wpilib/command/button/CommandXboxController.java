@@ -5,33 +5,75 @@ package org.firstinspires.ftc.lib.wpilib.command.button;
 
 import com.qualcomm.robotcore.hardware.Gamepad;
 import com.qualcomm.robotcore.util.Range;
-import java.util.function.Supplier;
+import java.util.HashMap;
+import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
+import org.firstinspires.ftc.lib.trobotix.hardware.GamepadSnapshot;
 import org.firstinspires.ftc.lib.wpilib.command.CommandScheduler;
 import org.firstinspires.ftc.lib.wpilib.wpilibj.event.EventLoop;
 
-/** A wrapper for {@link Gamepad} with {@link Trigger} factories for command-based. */
+/**
+ * A wrapper for {@link Gamepad} with {@link Trigger} factories for command-based. Reads from a
+ * {@link GamepadSnapshot}, so every trigger and axis sees the same state for the whole loop.
+ */
 public class CommandXboxController {
-  private final Supplier<Gamepad> gamepadSupplier;
+  /** The digital buttons of the controller. */
+  private enum Button {
+    LEFT_BUMPER(GamepadSnapshot.kLeftBumper),
+    RIGHT_BUMPER(GamepadSnapshot.kRightBumper),
+    LEFT_STICK(GamepadSnapshot.kLeftStick),
+    RIGHT_STICK(GamepadSnapshot.kRightStick),
+    A(GamepadSnapshot.kA),
+    B(GamepadSnapshot.kB),
+    X(GamepadSnapshot.kX),
+    Y(GamepadSnapshot.kY),
+    START(GamepadSnapshot.kStart),
+    BACK(GamepadSnapshot.kBack),
+    DPAD_UP(GamepadSnapshot.kDpadUp),
+    DPAD_DOWN(GamepadSnapshot.kDpadDown),
+    DPAD_LEFT(GamepadSnapshot.kDpadLeft),
+    DPAD_RIGHT(GamepadSnapshot.kDpadRight);
+
+    private final int mask;
+
+    Button(int mask) {
+      this.mask = mask;
+    }
+  }
+
+  private static final Button[] buttons = Button.values();
+
+  private final GamepadSnapshot snapshot;
+
+  // The trigger for each button, per loop. Reused so that each button's state is evaluated once per
+  // loop, no matter how many times its trigger factory is called.
+  private final HashMap<EventLoop, Trigger[]> buttonTriggers = new HashMap<>();
 
   /**
    * Construct an instance of an Xbox controller.
    *
-   * @param gamepadSupplier A supplier providing the {@link Gamepad} to use.
+   * @param snapshot The snapshot of the {@link Gamepad} to use. Must be captured every loop.
    */
-  public CommandXboxController(Supplier<Gamepad> gamepadSupplier) {
-    this.gamepadSupplier = gamepadSupplier;
+  public CommandXboxController(GamepadSnapshot snapshot) {
+    this.snapshot = snapshot;
   }
 
-  private Gamepad getGamepad() {
-    // We don't directly use the Gamepad object itself, as instead of the values inside Gamepad
-    // being mutated, the value of gamepad1/gamepad2 itself is replaced when new data comes in.
-    //
-    // The behaviour is counter-intuitive, completely undocumented AFAIK, and not immediately
-    // obvious from source-code trawling. From looking at how the values inside Gamepad are marked
-    // volatile you would think that it's mutating and not replacing the whole thing, but nope.
-    // The values inside Gamepad (Ex, left_bumper) should be treated as final even though they're
-    // actually volatile variables.
-    return gamepadSupplier.get();
+  /**
+   * Gets the trigger for a button on the given loop, creating it if it doesn't exist yet.
+   *
+   * @param button The button.
+   * @param loop The loop the trigger is attached to.
+   * @return The trigger.
+   */
+  private Trigger button(Button button, EventLoop loop) {
+    var triggers = buttonTriggers.computeIfAbsent(loop, (l) -> new Trigger[buttons.length]);
+    var trigger = triggers[button.ordinal()];
+    // Triggers are tied to the OpMode that was active when they were created, so they can't be
+    // reused across OpModes.
+    if (trigger == null || trigger.getContextId() != BaseOpMode.activeOpModeId) {
+      trigger = new Trigger(loop, () -> snapshot.isPressed(button.mask));
+      triggers[button.ordinal()] = trigger;
+    }
+    return trigger;
   }
 
   /**
@@ -53,7 +95,7 @@ public class CommandXboxController {
    *     loop.
    */
   public Trigger leftBumper(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().left_bumper);
+    return button(Button.LEFT_BUMPER, loop);
   }
 
   /**
@@ -75,7 +117,7 @@ public class CommandXboxController {
    *     loop.
    */
   public Trigger rightBumper(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().right_bumper);
+    return button(Button.RIGHT_BUMPER, loop);
   }
 
   /**
@@ -97,7 +139,7 @@ public class CommandXboxController {
    *     given loop.
    */
   public Trigger leftStick(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().left_stick_button);
+    return button(Button.LEFT_STICK, loop);
   }
 
   /**
@@ -119,7 +161,7 @@ public class CommandXboxController {
    *     given loop.
    */
   public Trigger rightStick(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().right_stick_button);
+    return button(Button.RIGHT_STICK, loop);
   }
 
   /**
@@ -141,7 +183,7 @@ public class CommandXboxController {
    *     loop.
    */
   public Trigger a(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().a);
+    return button(Button.A, loop);
   }
 
   /**
@@ -163,7 +205,7 @@ public class CommandXboxController {
    *     loop.
    */
   public Trigger b(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().b);
+    return button(Button.B, loop);
   }
 
   /**
@@ -185,7 +227,7 @@ public class CommandXboxController {
    *     loop.
    */
   public Trigger x(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().x);
+    return button(Button.X, loop);
   }
 
   /**
@@ -207,7 +249,7 @@ public class CommandXboxController {
    *     loop.
    */
   public Trigger y(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().y);
+    return button(Button.Y, loop);
   }
 
   /**
@@ -229,7 +271,7 @@ public class CommandXboxController {
    *     loop.
    */
   public Trigger start(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().start);
+    return button(Button.START, loop);
   }
 
   /**
@@ -251,7 +293,7 @@ public class CommandXboxController {
    *     loop.
    */
   public Trigger back(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().back);
+    return button(Button.BACK, loop);
   }
 
   public Trigger dPadUp() {
@@ -259,7 +301,7 @@ public class CommandXboxController {
   }
 
   public Trigger dPadUp(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().dpad_up);
+    return button(Button.DPAD_UP, loop);
   }
 
   public Trigger dPadDown() {
@@ -267,7 +309,7 @@ public class CommandXboxController {
   }
 
   public Trigger dPadDown(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().dpad_down);
+    return button(Button.DPAD_DOWN, loop);
   }
 
   public Trigger dPadLeft() {
@@ -275,7 +317,7 @@ public class CommandXboxController {
   }
 
   public Trigger dPadLeft(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().dpad_left);
+    return button(Button.DPAD_LEFT, loop);
   }
 
   public Trigger dPadRight() {
@@ -283,7 +325,7 @@ public class CommandXboxController {
   }
 
   public Trigger dPadRight(EventLoop loop) {
-    return new Trigger(loop, () -> getGamepad().dpad_right);
+    return button(Button.DPAD_RIGHT, loop);
   }
 
   /**
@@ -298,7 +340,7 @@ public class CommandXboxController {
    */
   public Trigger leftTrigger(double threshold, EventLoop loop) {
     Range.throwIfRangeIsInvalid(threshold, 0, 1);
-    return new Trigger(loop, () -> getGamepad().left_trigger >= threshold);
+    return new Trigger(loop, () -> snapshot.getAxis(GamepadSnapshot.kLeftTrigger) >= threshold);
   }
 
   /**
@@ -338,7 +380,7 @@ public class CommandXboxController {
    */
   public Trigger rightTrigger(double threshold, EventLoop loop) {
     Range.throwIfRangeIsInvalid(threshold, 0, 1);
-    return new Trigger(loop, () -> getGamepad().right_trigger >= threshold);
+    return new Trigger(loop, () -> snapshot.getAxis(GamepadSnapshot.kRightTrigger) >= threshold);
   }
 
   /**
@@ -372,7 +414,7 @@ public class CommandXboxController {
    * @return The axis value.
    */
   public double getLeftX() {
-    return getGamepad().left_stick_x;
+    return snapshot.getAxis(GamepadSnapshot.kLeftStickX);
   }
 
   /**
@@ -381,7 +423,7 @@ public class CommandXboxController {
    * @return The axis value.
    */
   public double getRightX() {
-    return getGamepad().right_stick_x;
+    return snapshot.getAxis(GamepadSnapshot.kRightStickX);
   }
 
   /**
@@ -390,7 +432,7 @@ public class CommandXboxController {
    * @return The axis value.
    */
   public double getLeftY() {
-    return getGamepad().left_stick_y;
+    return snapshot.getAxis(GamepadSnapshot.kLeftStickY);
   }
 
   /**
@@ -399,7 +441,7 @@ public class CommandXboxController {
    * @return The axis value.
    */
   public double getRightY() {
-    return getGamepad().right_stick_y;
+    return snapshot.getAxis(GamepadSnapshot.kRightStickY);
   }
 
   /**
@@ -409,7 +451,7 @@ public class CommandXboxController {
    * @return The axis value.
    */
   public double getLeftTriggerAxis() {
-    return getGamepad().left_trigger;
+    return snapshot.getAxis(GamepadSnapshot.kLeftTrigger);
   }
 
   /**
@@ -419,6 +461,6 @@ public class CommandXboxController {
    * @return The axis value.
    */
   public double getRightTriggerAxis() {
-    return getGamepad().right_trigger;
+    return snapshot.getAxis(GamepadSnapshot.kRightTrigger);
   }
 }
@@ -5,6 +5,9 @@ package org.firstinspires.ftc.lib.wpilib.command.button;
 
 import static org.firstinspires.ftc.lib.wpilib.util.ErrorMessages.requireNonNullParam;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.function.BooleanSupplier;
 import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
 import org.firstinspires.ftc.lib.wpilib.command.Command;
@@ -22,6 +25,11 @@ import org.firstinspires.ftc.lib.wpilib.wpilibj.event.EventLoop;
  * <p>Triggers can easily be composed for advanced functionality using the {@link
  * #and(BooleanSupplier)}, {@link #or(BooleanSupplier)}, {@link #negate()} operators.
  *
+ * <p>A trigger's condition is evaluated at most once per poll of its loop, no matter how many
+ * bindings or composed triggers depend on it, and its bindings only run on the polls where its
+ * state changes. While the trigger's context isn't active its condition isn't evaluated at all, and
+ * it's treated as false.
+ *
  * <p>This class is provided by the NewCommands VendorDep
  */
 public class Trigger implements BooleanSupplier {
@@ -37,9 +45,31 @@ public class Trigger implements BooleanSupplier {
     void run(boolean previous, boolean current);
   }
 
+  /** The context ID of triggers that run regardless of the active OpMode. */
+  public static final int kAlwaysContextId = 0;
+
+  private static final HashMap<String, Integer> contextIds = new HashMap<>();
+
+  static {
+    contextIds.put("ALWAYS", kAlwaysContextId);
+  }
+
   private final BooleanSupplier m_condition;
   private final EventLoop m_loop;
   private final String context;
+  private final int m_contextId;
+
+  // The bodies of every binding of this trigger. The trigger is bound to its loop once, when the
+  // first binding is added, and all of the bindings share its state.
+  private final List<BindingBody> m_bindings = new ArrayList<>();
+  // The generation of the loop the trigger was bound to, or -1 if it hasn't been bound yet.
+  private long m_boundGeneration = -1;
+  private boolean m_previous;
+  private boolean m_current;
+
+  // The value of the condition, memoized for the poll of the loop it was evaluated in.
+  private long m_evaluatedTick = -1;
+  private boolean m_evaluated;
 
   /**
    * Creates a new trigger based on the given condition.
@@ -53,6 +83,7 @@ public class Trigger implements BooleanSupplier {
     m_loop = requireNonNullParam(loop, "loop", "Trigger");
     m_condition = requireNonNullParam(condition, "condition", "Trigger");
     this.context = requireNonNullParam(context, "context", "Trigger");
+    m_contextId = getContextId(context);
   }
 
   /**
@@ -90,29 +121,76 @@ public class Trigger implements BooleanSupplier {
     this(condition, BaseOpMode.activeOpMode);
   }
 
-  private boolean inContext() {
-    return context.equals("ALWAYS") || context.equals(BaseOpMode.activeOpMode);
+  /**
+   * Gets the interned ID of a context, so that checking whether a trigger is in context is an
+   * integer comparison instead of a string comparison.
+   *
+   * @param context Either {@code ALWAYS} or the name of an OpMode.
+   * @return The ID of the context. {@link #kAlwaysContextId} for {@code ALWAYS}.
+   */
+  public static int getContextId(String context) {
+    return contextIds.computeIfAbsent(context, (c) -> contextIds.size());
   }
 
   /**
-   * Adds a binding to the EventLoop.
+   * Gets the interned ID of the context this trigger runs in.
    *
-   * @param body The body of the binding to add.
+   * @return The context ID.
    */
-  private void addBinding(BindingBody body) {
-    m_loop.bind(
-        new Runnable() {
-          private boolean m_previous = m_condition.getAsBoolean();
+  int getContextId() {
+    return m_contextId;
+  }
 
-          @Override
-          public void run() {
-            boolean current = m_condition.getAsBoolean() && inContext();
+  private boolean inContext() {
+    return m_contextId == kAlwaysContextId || m_contextId == BaseOpMode.activeOpModeId;
+  }
 
-            body.run(m_previous, current);
+  /**
+   * Evaluates the condition, memoized for the current poll of the loop.
+   *
+   * @return The value of the condition.
+   */
+  private boolean evaluate() {
+    long tick = m_loop.getTick();
+    if (tick != m_evaluatedTick) {
+      m_evaluatedTick = tick;
+      m_evaluated = m_condition.getAsBoolean();
+    }
+    return m_evaluated;
+  }
 
-            m_previous = current;
-          }
-        });
+  /** Updates the state of the trigger and runs the bindings if it changed. Bound to the loop. */
+  private void poll() {
+    m_previous = m_current;
+    // Out of context triggers are treated as false, which gives their bindings one falling edge if
+    // the context changes while they're true.
+    m_current = inContext() && evaluate();
+    if (m_previous == m_current) {
+      return;
+    }
+    // Indexed, as bindings can be added to this trigger by the bindings themselves.
+    for (int i = 0; i < m_bindings.size(); i++) {
+      m_bindings.get(i).run(m_previous, m_current);
+    }
+  }
+
+  /**
+   * Adds a binding to the trigger, binding the trigger to the EventLoop if it hasn't been already.
+   * Binding bodies are only run when the state of the trigger changes.
+   *
+   * @param body The body of the binding to add.
+   */
+  private void addBinding(BindingBody body) {
+    long generation = m_loop.getGeneration();
+    if (m_boundGeneration != generation) {
+      // Either never bound, or the loop has been cleared since. Clearing the loop removes every
+      // binding, so the ones from before it was cleared don't come back with this one.
+      m_bindings.clear();
+      m_current = m_condition.getAsBoolean();
+      m_loop.bind(this::poll);
+      m_boundGeneration = generation;
+    }
+    m_bindings.add(body);
   }
 
   /**
@@ -256,7 +334,8 @@ public class Trigger implements BooleanSupplier {
 
   @Override
   public boolean getAsBoolean() {
-    return m_condition.getAsBoolean();
+    // Only memoized while the loop is being polled, as otherwise the memoized value could be stale.
+    return m_loop.isPolling() ? evaluate() : m_condition.getAsBoolean();
   }
 
   /**
@@ -266,7 +345,7 @@ public class Trigger implements BooleanSupplier {
    * @return A trigger which is active when both component triggers are active.
    */
   public Trigger and(BooleanSupplier trigger) {
-    return new Trigger(m_loop, () -> m_condition.getAsBoolean() && trigger.getAsBoolean(), context);
+    return new Trigger(m_loop, () -> getAsBoolean() && trigger.getAsBoolean(), context);
   }
 
   /**
@@ -276,7 +355,7 @@ public class Trigger implements BooleanSupplier {
    * @return A trigger which is active when either component trigger is active.
    */
   public Trigger or(BooleanSupplier trigger) {
-    return new Trigger(m_loop, () -> m_condition.getAsBoolean() || trigger.getAsBoolean(), context);
+    return new Trigger(m_loop, () -> getAsBoolean() || trigger.getAsBoolean(), context);
   }
 
   /**
@@ -286,7 +365,7 @@ public class Trigger implements BooleanSupplier {
    * @return the negated trigger
    */
   public Trigger negate() {
-    return new Trigger(m_loop, () -> !m_condition.getAsBoolean(), context);
+    return new Trigger(m_loop, () -> !getAsBoolean(), context);
   }
 
   /**
@@ -316,7 +395,7 @@ public class Trigger implements BooleanSupplier {
 
           @Override
           public boolean getAsBoolean() {
-            return m_debouncer.calculate(m_condition.getAsBoolean());
+            return m_debouncer.calculate(Trigger.this.getAsBoolean());
           }
         },
         context);
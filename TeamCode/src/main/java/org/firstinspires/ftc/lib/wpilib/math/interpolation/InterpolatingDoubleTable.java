@@ -0,0 +1,252 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.wpilib.math.interpolation;
+
+import java.util.TreeMap;
+
+/**
+ * An immutable, primitive version of {@link InterpolatingDoubleTreeMap}, for tables that are built
+ * once and then queried every loop.
+ *
+ * <p>Keys and values are stored in sorted {@code double[]}s. {@link #get} finds the surrounding
+ * keys by binary search, or in constant time if the keys are evenly spaced, and doesn't box or
+ * allocate. Values can be interpolated linearly, which gives the same results as {@link
+ * InterpolatingDoubleTreeMap}, or with a monotone cubic (PCHIP) spline, which is smooth but never
+ * overshoots the values in the table. Either way, keys outside of the table return the value of the
+ * nearest end.
+ *
+ * <p>Example of use:
+ *
+ * <pre><code>
+ * InterpolatingDoubleTable table =
+ *     InterpolatingDoubleTable.builder()
+ *         .put(0.0, 0.0)
+ *         .put(1.0, 10.0)
+ *         .put(2.0, 30.0)
+ *         .build();
+ * double result = table.get(1.5); // Returns 20.0
+ * </code></pre>
+ */
+public final class InterpolatingDoubleTable {
+  /** How values are interpolated between keys. */
+  public enum Interpolation {
+    /** Linear interpolation, the same as {@link InterpolatingDoubleTreeMap}. */
+    LINEAR,
+    /**
+     * Piecewise cubic Hermite interpolation with Fritsch-Carlson slopes, which is monotone between
+     * every pair of keys.
+     */
+    PCHIP
+  }
+
+  // Keys that are evenly spaced to within this fraction of the spacing are indexed directly.
+  private static final double kUniformTolerance = 1E-9;
+
+  private final double[] m_keys;
+  private final double[] m_values;
+  // The slope of the spline at each key. Null for linear interpolation.
+  private final double[] m_slopes;
+  private final boolean m_uniform;
+  private final double m_inverseSpacing;
+
+  private InterpolatingDoubleTable(double[] keys, double[] values, Interpolation interpolation) {
+    m_keys = keys;
+    m_values = values;
+    m_slopes = interpolation == Interpolation.PCHIP ? pchipSlopes(keys, values) : null;
+
+    int n = keys.length;
+    boolean uniform = n >= 2;
+    double spacing = n >= 2 ? (keys[n - 1] - keys[0]) / (n - 1) : 0;
+    for (int i = 1; i < n && uniform; i++) {
+      uniform = Math.abs(keys[i] - keys[0] - i * spacing) <= kUniformTolerance * spacing;
+    }
+    m_uniform = uniform;
+    m_inverseSpacing = uniform ? 1 / spacing : 0;
+  }
+
+  /**
+   * Creates a builder for a table.
+   *
+   * @return The builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builds an {@link InterpolatingDoubleTable}. */
+  public static final class Builder {
+    private final TreeMap<Double, Double> m_entries = new TreeMap<>();
+    private Interpolation m_interpolation = Interpolation.LINEAR;
+
+    private Builder() {}
+
+    /**
+     * Adds an entry to the table, replacing any entry with the same key.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @return This builder.
+     */
+    public Builder put(double key, double value) {
+      if (!Double.isFinite(key) || !Double.isFinite(value)) {
+        throw new IllegalArgumentException("Table entries must be finite");
+      }
+      m_entries.put(key, value);
+      return this;
+    }
+
+    /**
+     * Sets how values are interpolated between keys. Defaults to {@link Interpolation#LINEAR}.
+     *
+     * @param interpolation The interpolation.
+     * @return This builder.
+     */
+    public Builder withInterpolation(Interpolation interpolation) {
+      m_interpolation = interpolation;
+      return this;
+    }
+
+    /**
+     * Builds the table.
+     *
+     * @return The table.
+     * @throws IllegalStateException if no entries have been added.
+     */
+    public InterpolatingDoubleTable build() {
+      if (m_entries.isEmpty()) {
+        throw new IllegalStateException("A table needs at least one entry");
+      }
+      var keys = new double[m_entries.size()];
+      var values = new double[m_entries.size()];
+      int i = 0;
+      for (var entry : m_entries.entrySet()) {
+        keys[i] = entry.getKey();
+        values[i] = entry.getValue();
+        i++;
+      }
+      return new InterpolatingDoubleTable(keys, values, m_interpolation);
+    }
+  }
+
+  /**
+   * Calculates the slopes of a monotone cubic spline through the points, as SciPy's {@code
+   * PchipInterpolator} does.
+   */
+  private static double[] pchipSlopes(double[] keys, double[] values) {
+    int n = keys.length;
+    var slopes = new double[n];
+    if (n < 2) {
+      return slopes;
+    }
+    var secants = new double[n - 1];
+    var spacings = new double[n - 1];
+    for (int i = 0; i < n - 1; i++) {
+      spacings[i] = keys[i + 1] - keys[i];
+      secants[i] = (values[i + 1] - values[i]) / spacings[i];
+    }
+    if (n == 2) {
+      slopes[0] = secants[0];
+      slopes[1] = secants[0];
+      return slopes;
+    }
+
+    // Interior slopes are the weighted harmonic mean of the secants on either side, or 0 at
+    // extrema, so the spline doesn't overshoot.
+    for (int i = 1; i < n - 1; i++) {
+      double before = secants[i - 1];
+      double after = secants[i];
+      if (before == 0 || after == 0 || (before > 0) != (after > 0)) {
+        slopes[i] = 0;
+      } else {
+        double w1 = 2 * spacings[i] + spacings[i - 1];
+        double w2 = spacings[i] + 2 * spacings[i - 1];
+        slopes[i] = (w1 + w2) / (w1 / before + w2 / after);
+      }
+    }
+    slopes[0] = endSlope(spacings[0], spacings[1], secants[0], secants[1]);
+    slopes[n - 1] = endSlope(spacings[n - 2], spacings[n - 3], secants[n - 2], secants[n - 3]);
+    return slopes;
+  }
+
+  /** Calculates the slope at an end with a shape-preserving three point formula. */
+  private static double endSlope(double h0, double h1, double secant0, double secant1) {
+    double slope = ((2 * h0 + h1) * secant0 - h0 * secant1) / (h0 + h1);
+    if (Math.signum(slope) != Math.signum(secant0)) {
+      return 0;
+    }
+    if (Math.signum(secant0) != Math.signum(secant1) && Math.abs(slope) > 3 * Math.abs(secant0)) {
+      return 3 * secant0;
+    }
+    return slope;
+  }
+
+  /**
+   * Returns the value at a given key, interpolated between the keys before and after it if there's
+   * no matching key. Keys outside of the table return the value of the nearest end.
+   *
+   * @param key The key.
+   * @return The value at the given key.
+   */
+  public double get(double key) {
+    var keys = m_keys;
+    int last = keys.length - 1;
+    if (key <= keys[0]) {
+      return m_values[0];
+    }
+    if (key >= keys[last]) {
+      return m_values[last];
+    }
+
+    int i = m_uniform ? uniformSegment(key) : searchSegment(key);
+    double spacing = keys[i + 1] - keys[i];
+    double t = (key - keys[i]) / spacing;
+    double start = m_values[i];
+    double end = m_values[i + 1];
+    if (m_slopes == null) {
+      return start + (end - start) * t;
+    }
+    double oneMinusT = 1 - t;
+    return oneMinusT * oneMinusT * ((1 + 2 * t) * start + t * spacing * m_slopes[i])
+        + t * t * ((3 - 2 * t) * end - oneMinusT * spacing * m_slopes[i + 1]);
+  }
+
+  /** Finds the index of the last key at or below a key inside the table, by binary search. */
+  private int searchSegment(double key) {
+    var keys = m_keys;
+    int low = 0;
+    int high = keys.length - 1;
+    while (high - low > 1) {
+      int mid = (low + high) >>> 1;
+      if (keys[mid] <= key) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /** Finds the index of the last key at or below a key inside the table, from the spacing. */
+  private int uniformSegment(double key) {
+    var keys = m_keys;
+    int i = Math.min((int) ((key - keys[0]) * m_inverseSpacing), keys.length - 2);
+    // The keys are only evenly spaced to within rounding, so the index can be off by one.
+    if (key < keys[i]) {
+      i--;
+    } else if (key >= keys[i + 1] && i < keys.length - 2) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Returns whether the keys are evenly spaced, so that {@link #get} indexes them directly instead
+   * of searching.
+   *
+   * @return Whether the keys are evenly spaced.
+   */
+  public boolean isUniform() {
+    return m_uniform;
+  }
+}
@@ -0,0 +1,283 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.wpilib.math.interpolation;
+
+import java.util.Optional;
+import org.firstinspires.ftc.lib.wpilib.math.MathUtil;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose2d;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Rotation2d;
+
+/**
+ * A {@link TimeInterpolatableBuffer} of {@link Pose2d}s, specialized to store samples as primitives
+ * in a circular buffer instead of a {@link java.util.TreeMap}.
+ *
+ * <p>Timestamps and the x, y, and heading of each sample are stored in parallel arrays, so adding
+ * and removing samples doesn't box or allocate, once the buffer has grown to fit the history size.
+ * Samples are found by binary search, and {@link #getSample(double, double[])} interpolates into a
+ * caller-provided array. Sampling behaves the same as a {@link TimeInterpolatableBuffer}, including
+ * interpolating along the twist between samples, as {@link Pose2d#interpolate} does.
+ *
+ * <p>Samples are expected to be added in time order. A sample older than the newest one is inserted
+ * in order, by shifting the newer samples, and a sample with the same timestamp as an existing one
+ * replaces it.
+ */
+public final class TimeInterpolatablePose2dBuffer {
+  private static final int kInitialCapacity = 64;
+
+  private final double m_historySize;
+
+  private double[] m_times = new double[kInitialCapacity];
+  private double[] m_x = new double[kInitialCapacity];
+  private double[] m_y = new double[kInitialCapacity];
+  private double[] m_theta = new double[kInitialCapacity];
+  // The physical index of the oldest sample, and the number of samples.
+  private int m_head = 0;
+  private int m_size = 0;
+
+  private TimeInterpolatablePose2dBuffer(double historySizeSeconds) {
+    this.m_historySize = historySizeSeconds;
+  }
+
+  /**
+   * Create a new TimeInterpolatablePose2dBuffer.
+   *
+   * @param historySizeSeconds The history size of the buffer.
+   * @return The new TimeInterpolatablePose2dBuffer.
+   */
+  public static TimeInterpolatablePose2dBuffer createBuffer(double historySizeSeconds) {
+    return new TimeInterpolatablePose2dBuffer(historySizeSeconds);
+  }
+
+  /**
+   * Add a sample to the buffer.
+   *
+   * @param timeSeconds The timestamp of the sample.
+   * @param x The x position of the sample in meters.
+   * @param y The y position of the sample in meters.
+   * @param thetaRadians The heading of the sample in radians.
+   */
+  public void addSample(double timeSeconds, double x, double y, double thetaRadians) {
+    cleanUp(timeSeconds);
+
+    // Find where the sample goes. Normally it's newer than every other sample.
+    int index = m_size;
+    if (m_size > 0 && timeSeconds <= m_times[physical(m_size - 1)]) {
+      index = lowerBound(timeSeconds);
+      if (index < m_size && m_times[physical(index)] == timeSeconds) {
+        set(physical(index), timeSeconds, x, y, thetaRadians);
+        return;
+      }
+    }
+
+    if (m_size == m_times.length) {
+      grow();
+    }
+    for (int i = m_size; i > index; i--) {
+      int to = physical(i);
+      int from = physical(i - 1);
+      set(to, m_times[from], m_x[from], m_y[from], m_theta[from]);
+    }
+    set(physical(index), timeSeconds, x, y, thetaRadians);
+    m_size++;
+  }
+
+  /**
+   * Add a sample to the buffer.
+   *
+   * @param timeSeconds The timestamp of the sample.
+   * @param sample The sample object.
+   */
+  public void addSample(double timeSeconds, Pose2d sample) {
+    addSample(timeSeconds, sample.getX(), sample.getY(), sample.getRotation().getRadians());
+  }
+
+  /**
+   * Removes samples older than our current history size.
+   *
+   * @param time The current timestamp.
+   */
+  private void cleanUp(double time) {
+    while (m_size > 0 && time - m_times[m_head] >= m_historySize) {
+      m_head = (m_head + 1) % m_times.length;
+      m_size--;
+    }
+  }
+
+  /** Doubles the capacity, unwrapping the samples to start at index 0. */
+  private void grow() {
+    int capacity = m_times.length * 2;
+    m_times = unwrap(m_times, capacity);
+    m_x = unwrap(m_x, capacity);
+    m_y = unwrap(m_y, capacity);
+    m_theta = unwrap(m_theta, capacity);
+    m_head = 0;
+  }
+
+  private double[] unwrap(double[] values, int capacity) {
+    var unwrapped = new double[capacity];
+    int firstPart = Math.min(m_size, values.length - m_head);
+    System.arraycopy(values, m_head, unwrapped, 0, firstPart);
+    System.arraycopy(values, 0, unwrapped, firstPart, m_size - firstPart);
+    return unwrapped;
+  }
+
+  private int physical(int index) {
+    return (m_head + index) % m_times.length;
+  }
+
+  private void set(int physicalIndex, double time, double x, double y, double theta) {
+    m_times[physicalIndex] = time;
+    m_x[physicalIndex] = x;
+    m_y[physicalIndex] = y;
+    m_theta[physicalIndex] = theta;
+  }
+
+  /** Finds the index of the oldest sample at or after a time, or the size if there isn't one. */
+  private int lowerBound(double timeSeconds) {
+    int low = 0;
+    int high = m_size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (m_times[physical(mid)] < timeSeconds) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /** Clear all old samples. */
+  public void clear() {
+    m_head = 0;
+    m_size = 0;
+  }
+
+  /**
+   * Returns whether the buffer has no samples.
+   *
+   * @return Whether the buffer is empty.
+   */
+  public boolean isEmpty() {
+    return m_size == 0;
+  }
+
+  /**
+   * Returns the timestamp of the oldest sample. Only valid if the buffer isn't empty.
+   *
+   * @return The timestamp in seconds.
+   */
+  public double getOldestTimestamp() {
+    return m_times[m_head];
+  }
+
+  /**
+   * Returns the timestamp of the newest sample. Only valid if the buffer isn't empty.
+   *
+   * @return The timestamp in seconds.
+   */
+  public double getNewestTimestamp() {
+    return m_times[physical(m_size - 1)];
+  }
+
+  /**
+   * Sample the buffer at the given time, without allocating. If the buffer is empty, nothing is
+   * written.
+   *
+   * @param timeSeconds The time at which to sample.
+   * @param pose The array to write the x (m), y (m), and heading (rad) of the sample into.
+   * @return Whether the buffer had a sample to write.
+   */
+  public boolean getSample(double timeSeconds, double[] pose) {
+    if (m_size == 0) {
+      return false;
+    }
+
+    int topIndex = lowerBound(timeSeconds);
+    // Return the opposite bound if only one exists, or the sample itself if the requested time is
+    // the same as a sample.
+    if (topIndex == m_size) {
+      write(physical(m_size - 1), pose);
+      return true;
+    }
+    int top = physical(topIndex);
+    if (topIndex == 0 || m_times[top] == timeSeconds) {
+      write(top, pose);
+      return true;
+    }
+    int bottom = physical(topIndex - 1);
+
+    // Otherwise, interpolate along the twist from the bottom bound to the top bound, as
+    // Pose2d.interpolate does.
+    double t = (timeSeconds - m_times[bottom]) / (m_times[top] - m_times[bottom]);
+    double startTheta = m_theta[bottom];
+    double startCos = Math.cos(startTheta);
+    double startSin = Math.sin(startTheta);
+
+    // Twist from the bottom pose to the top pose.
+    double globalDx = m_x[top] - m_x[bottom];
+    double globalDy = m_y[top] - m_y[bottom];
+    double localDx = globalDx * startCos + globalDy * startSin;
+    double localDy = -globalDx * startSin + globalDy * startCos;
+    double dtheta = MathUtil.angleModulus(m_theta[top] - startTheta);
+    double halfDtheta = dtheta / 2.0;
+    double cosMinusOne = Math.cos(dtheta) - 1;
+    double halfThetaByTanOfHalfDtheta;
+    if (Math.abs(cosMinusOne) < 1E-9) {
+      halfThetaByTanOfHalfDtheta = 1.0 - 1.0 / 12.0 * dtheta * dtheta;
+    } else {
+      halfThetaByTanOfHalfDtheta = -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+    }
+    double twistDx = (localDx * halfThetaByTanOfHalfDtheta + localDy * halfDtheta) * t;
+    double twistDy = (-localDx * halfDtheta + localDy * halfThetaByTanOfHalfDtheta) * t;
+    double twistDtheta = dtheta * t;
+
+    // Exponential of the scaled twist, applied to the bottom pose.
+    double s;
+    double c;
+    if (Math.abs(twistDtheta) < 1E-9) {
+      s = 1.0 - 1.0 / 6.0 * twistDtheta * twistDtheta;
+      c = 0.5 * twistDtheta;
+    } else {
+      s = Math.sin(twistDtheta) / twistDtheta;
+      c = (1 - Math.cos(twistDtheta)) / twistDtheta;
+    }
+    double transformX = twistDx * s - twistDy * c;
+    double transformY = twistDx * c + twistDy * s;
+    pose[0] = m_x[bottom] + transformX * startCos - transformY * startSin;
+    pose[1] = m_y[bottom] + transformX * startSin + transformY * startCos;
+    pose[2] = MathUtil.angleModulus(startTheta + twistDtheta);
+    return true;
+  }
+
+  private void write(int physicalIndex, double[] pose) {
+    pose[0] = m_x[physicalIndex];
+    pose[1] = m_y[physicalIndex];
+    pose[2] = m_theta[physicalIndex];
+  }
+
+  /**
+   * Sample the buffer at the given time. If the buffer is empty, an empty Optional is returned.
+   * Allocates the returned pose; use {@link #getSample(double, double[])} to avoid that.
+   *
+   * @param timeSeconds The time at which to sample.
+   * @return The interpolated value at that timestamp or an empty Optional.
+   */
+  public Optional<Pose2d> getSample(double timeSeconds) {
+    var pose = new double[3];
+    if (!getSample(timeSeconds, pose)) {
+      return Optional.empty();
+    }
+    return Optional.of(new Pose2d(pose[0], pose[1], new Rotation2d(pose[2])));
+  }
+
+  /**
+   * Returns the number of samples in the buffer.
+   *
+   * @return The number of samples.
+   */
+  public int size() {
+    return m_size;
+  }
+}
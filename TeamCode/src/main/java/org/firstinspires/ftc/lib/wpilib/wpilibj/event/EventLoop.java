@@ -3,16 +3,20 @@
 
 package org.firstinspires.ftc.lib.wpilib.wpilibj.event;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
-import java.util.LinkedHashSet;
+import java.util.List;
 
 /**
  * A declarative way to bind a set of actions to a loop and execute them when the loop is polled.
  */
 public final class EventLoop {
-  private final Collection<Runnable> m_bindings = new LinkedHashSet<>();
+  // A list rather than a set so that polling doesn't allocate an iterator. Duplicate bindings are
+  // rejected in bind() instead.
+  private final List<Runnable> m_bindings = new ArrayList<>();
   private boolean m_running;
+  private long m_tick = 0;
+  private long m_generation = 0;
 
   /** Default constructor. */
   public EventLoop() {}
@@ -26,7 +30,9 @@ public final class EventLoop {
     if (m_running) {
       throw new ConcurrentModificationException("Cannot bind EventLoop while it is running");
     }
-    m_bindings.add(action);
+    if (!m_bindings.contains(action)) {
+      m_bindings.add(action);
+    }
   }
 
   /** Poll all bindings. */
@@ -34,17 +40,50 @@ public final class EventLoop {
   public void poll() {
     try {
       m_running = true;
-      m_bindings.forEach(Runnable::run);
+      m_tick++;
+      for (int i = 0; i < m_bindings.size(); i++) {
+        m_bindings.get(i).run();
+      }
     } finally {
       m_running = false;
     }
   }
 
+  /**
+   * Gets the number of times this loop has been polled. Can be used to memoize values for the
+   * duration of a single poll.
+   *
+   * @return The poll count.
+   */
+  public long getTick() {
+    return m_tick;
+  }
+
+  /**
+   * Whether the loop is currently being polled.
+   *
+   * @return Whether the loop is being polled.
+   */
+  public boolean isPolling() {
+    return m_running;
+  }
+
+  /**
+   * Gets the number of times this loop has been cleared. Can be used to tell whether something
+   * bound to the loop earlier is still bound.
+   *
+   * @return The clear count.
+   */
+  public long getGeneration() {
+    return m_generation;
+  }
+
   /** Clear all bindings. */
   public void clear() {
     if (m_running) {
       throw new ConcurrentModificationException("Cannot clear EventLoop while it is running");
     }
     m_bindings.clear();
+    m_generation++;
   }
 }
@@ -54,6 +54,11 @@ public class Drivetrain extends SubsystemBase {
             6,
             4);
 
+    // All four share one table, as they have the same model and limits.
+    frontLeft.setUseLookupTable(true);
+    frontRight.setUseLookupTable(true);
+    backLeft.setUseLookupTable(true);
+    backRight.setUseLookupTable(true);
     frontRight.setInverted(true);
     backRight.setInverted(true);
     frontLeft.setBrake(true);
@@ -103,7 +108,7 @@ public class Drivetrain extends SubsystemBase {
     //        case 22 -> motif = Motif.PGP;
     //        case 23 -> motif = Motif.PPG;
     //        default ->
-    //            poseEstimator.addVisionMeasurement(inputs.poses[i].toPose2d(),
+    //            poseEstimator.addVisionMeasurement(inputs.getPose(i).toPose2d(),
     // inputs.timestamps[i]);
     //      }
     //    }
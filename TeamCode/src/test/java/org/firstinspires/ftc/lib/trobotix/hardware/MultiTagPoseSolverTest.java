@@ -0,0 +1,420 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.ejml.simple.SimpleMatrix;
+import org.firstinspires.ftc.lib.trobotix.CoordinateSystems;
+import org.firstinspires.ftc.lib.wpilib.math.VecBuilder;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose3d;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Rotation3d;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Transform3d;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Translation3d;
+import org.firstinspires.ftc.robotcore.external.matrices.VectorF;
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit;
+import org.firstinspires.ftc.robotcore.external.navigation.Pose3D;
+import org.firstinspires.ftc.robotcore.external.navigation.Position;
+import org.firstinspires.ftc.robotcore.external.navigation.Quaternion;
+import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles;
+import org.firstinspires.ftc.vision.apriltag.AprilTagDetection;
+import org.firstinspires.ftc.vision.apriltag.AprilTagLibrary;
+import org.firstinspires.ftc.vision.apriltag.AprilTagMetadata;
+import org.junit.Test;
+import org.opencv.core.Point;
+
+/**
+ * Solves synthetic frames, whose corners are projected from a known robot pose through a pinhole
+ * camera, with {@link MultiTagPoseSolver}.
+ *
+ * <p>The projection here is written separately from the solver's: the robot and camera rotations
+ * are composed from elementary rotations of the SDK's Euler angles, and the tags' corners are
+ * rotated with WPILib's quaternion math. The covariance is checked against one calculated from a
+ * numerical Jacobian of that projection, taken with respect to the WPILib pose, so it checks the
+ * mapping of the solver's axes to WPILib's as well as the solver's own Jacobian.
+ */
+public class MultiTagPoseSolverTest {
+  private static final double kFx = 600;
+  private static final double kFy = 600;
+  private static final double kCx = 320;
+  private static final double kCy = 240;
+  private static final double kTagSize = .1;
+
+  // Pitched to face forward, 15 degrees above level, 10 cm ahead of and 20 cm above the center.
+  private static final Transform3d kCameraPose =
+      new Transform3d(new Translation3d(.1, 0, .2), new Rotation3d(0, Math.toRadians(75), 0));
+
+  // The robot in the SDK's field frame, facing the tags, which are ahead of it in +y.
+  private static final double kRobotX = .2;
+  private static final double kRobotY = -.3;
+  private static final double kRobotYaw = Math.toRadians(10);
+
+  /** A tag in the SDK's field frame. */
+  private static AprilTagMetadata tag(
+      int id, double x, double y, double z, double size, double yawDegrees) {
+    // Rotated about x to stand upright facing -y, then turned about the field's z axis.
+    var upright = axisAngle(1, 0, 0, Math.PI / 2);
+    var turned = axisAngle(0, 0, 1, Math.toRadians(yawDegrees)).multiply(upright, 0);
+    return new AprilTagMetadata(
+        id,
+        "Tag " + id,
+        size,
+        new VectorF((float) x, (float) y, (float) z),
+        DistanceUnit.METER,
+        turned);
+  }
+
+  private static Quaternion axisAngle(double x, double y, double z, double angle) {
+    double sin = Math.sin(angle / 2);
+    return new Quaternion(
+        (float) Math.cos(angle / 2), (float) (x * sin), (float) (y * sin), (float) (z * sin), 0);
+  }
+
+  private static AprilTagLibrary library(AprilTagMetadata... tags) {
+    var builder = new AprilTagLibrary.Builder();
+    for (var tag : tags) {
+      builder.addTag(tag);
+    }
+    return builder.build();
+  }
+
+  private static final AprilTagMetadata[] kWallTags = {
+    tag(1, -.4, 1.5, .35, kTagSize, 0),
+    tag(2, .3, 1.6, .4, kTagSize, 25),
+    tag(3, .7, 1.2, .25, kTagSize, 50),
+  };
+
+  /** The pose of the robot, in the SDK's field frame. */
+  private static final class SdkPose {
+    final double[] translation = new double[3];
+    final double[] rotation;
+
+    SdkPose(double x, double y, double z, double yaw, double pitch, double roll) {
+      translation[0] = x;
+      translation[1] = y;
+      translation[2] = z;
+      // Intrinsic ZXY, as the SDK orients the robot.
+      rotation = multiply(multiply(rotZ(yaw), rotX(pitch)), rotY(roll));
+    }
+
+    /** Converts the pose the same way the solver does, to compare against its result. */
+    Pose3d toWPILib() {
+      return new Pose3d(
+          CoordinateSystems.fieldCoordinatesToWPILib(
+              new Position(DistanceUnit.METER, translation[0], translation[1], translation[2], 0)),
+          CoordinateSystems.SDKRotationToWPILib(
+              new YawPitchRollAngles(AngleUnit.RADIANS, yaw(), pitch(), roll(), 0)));
+    }
+
+    static SdkPose fromWPILib(Pose3d pose) {
+      var position = CoordinateSystems.WPILibToFieldCoordinates(pose.getTranslation());
+      var orientation = CoordinateSystems.WPILibToSDKRotation(pose.getRotation());
+      return new SdkPose(
+          position.x,
+          position.y,
+          position.z,
+          orientation.getYaw(AngleUnit.RADIANS),
+          orientation.getPitch(AngleUnit.RADIANS),
+          orientation.getRoll(AngleUnit.RADIANS));
+    }
+
+    double yaw() {
+      return Math.atan2(-rotation[1], rotation[4]);
+    }
+
+    double pitch() {
+      return Math.asin(rotation[7]);
+    }
+
+    double roll() {
+      return Math.atan2(-rotation[6], rotation[8]);
+    }
+
+    Pose3D toSdk() {
+      return new Pose3D(
+          new Position(DistanceUnit.METER, translation[0], translation[1], translation[2], 0),
+          new YawPitchRollAngles(AngleUnit.RADIANS, yaw(), pitch(), roll(), 0));
+    }
+  }
+
+  /**
+   * Projects the corners of a tag through the camera of a robot at a pose, as the detector would
+   * see them.
+   */
+  private static Point[] project(AprilTagMetadata tag, SdkPose robot) {
+    var cameraOrientation = CoordinateSystems.WPILibToSDKRotation(kCameraPose.getRotation());
+    // Intrinsic ZXZ, as the SDK orients the camera.
+    double[] camera =
+        multiply(
+            multiply(
+                rotZ(cameraOrientation.getYaw(AngleUnit.RADIANS)),
+                rotX(cameraOrientation.getPitch(AngleUnit.RADIANS))),
+            rotZ(cameraOrientation.getRoll(AngleUnit.RADIANS)));
+    var cameraPosition = CoordinateSystems.WPILibToRobotCoordinates(kCameraPose.getTranslation());
+    double[] cameraToField = multiply(robot.rotation, camera);
+    double[] cameraTranslation = new double[3];
+    for (int i = 0; i < 3; i++) {
+      cameraTranslation[i] =
+          robot.translation[i]
+              + robot.rotation[i * 3] * cameraPosition.x
+              + robot.rotation[i * 3 + 1] * cameraPosition.y
+              + robot.rotation[i * 3 + 2] * cameraPosition.z;
+    }
+
+    var q = tag.fieldOrientation;
+    var tagRotation =
+        new Rotation3d(
+                new org.firstinspires.ftc.lib.wpilib.math.geometry.Quaternion(q.w, q.x, q.y, q.z))
+            .toMatrix();
+    double half = tag.tagsize / 2;
+    double[][] tagCorners = {{-half, half}, {half, half}, {half, -half}, {-half, -half}};
+    var corners = new Point[4];
+    for (int corner = 0; corner < 4; corner++) {
+      double[] offset = new double[3];
+      for (int i = 0; i < 3; i++) {
+        offset[i] =
+            tag.fieldPosition.get(i)
+                + tagRotation.get(i, 0) * tagCorners[corner][0]
+                + tagRotation.get(i, 1) * tagCorners[corner][1]
+                - cameraTranslation[i];
+      }
+      // Into the camera frame, with the transpose of the camera's rotation in the field.
+      double x = 0, y = 0, z = 0;
+      for (int i = 0; i < 3; i++) {
+        x += cameraToField[i * 3] * offset[i];
+        y += cameraToField[i * 3 + 1] * offset[i];
+        z += cameraToField[i * 3 + 2] * offset[i];
+      }
+      assertTrue("Corner behind the camera", z > 0);
+      corners[corner] = new Point(kFx * x / z + kCx, kFy * y / z + kCy);
+    }
+    return corners;
+  }
+
+  private static AprilTagDetection detect(AprilTagMetadata tag, SdkPose robot, SdkPose guess) {
+    var corners = project(tag, robot);
+    var center =
+        new Point(
+            (corners[0].x + corners[1].x + corners[2].x + corners[3].x) / 4,
+            (corners[0].y + corners[1].y + corners[2].y + corners[3].y) / 4);
+    return new AprilTagDetection(
+        tag.id, 0, 0, center, corners, tag, null, null, guess == null ? null : guess.toSdk(), 0);
+  }
+
+  private static void addNoise(AprilTagDetection detection, Random random, double stdDev) {
+    for (var corner : detection.corners) {
+      corner.x += random.nextGaussian() * stdDev;
+      corner.y += random.nextGaussian() * stdDev;
+    }
+  }
+
+  private static MultiTagPoseSolver solver(AprilTagMetadata... tags) {
+    return new MultiTagPoseSolver(library(tags), kCameraPose, kFx, kCx, kFy, kCy);
+  }
+
+  private static SdkPose truth() {
+    return new SdkPose(kRobotX, kRobotY, 0, kRobotYaw, 0, 0);
+  }
+
+  private static void assertPoseNear(
+      Pose3d expected, Pose3d actual, double meters, double radians) {
+    double distance = expected.getTranslation().getDistance(actual.getTranslation());
+    double angle = actual.getRotation().minus(expected.getRotation()).getAngle();
+    assertTrue("Off by " + distance + " m: " + actual, distance < meters);
+    assertTrue("Off by " + angle + " rad: " + actual, angle < radians);
+  }
+
+  @Test
+  public void convergesToTheTruePose() {
+    var truth = truth();
+    // Every tag's pose is a guess well off from the truth, as a noisy single tag solve would be.
+    var guesses =
+        new SdkPose[] {
+          new SdkPose(kRobotX + .15, kRobotY - .1, .05, kRobotYaw + .1, .05, -.05),
+          new SdkPose(kRobotX - .1, kRobotY + .2, -.05, kRobotYaw - .15, -.05, .05),
+          new SdkPose(kRobotX + .05, kRobotY + .1, .1, kRobotYaw + .2, .1, 0),
+        };
+    var detections = new ArrayList<AprilTagDetection>();
+    for (int i = 0; i < kWallTags.length; i++) {
+      detections.add(detect(kWallTags[i], truth, guesses[i]));
+    }
+
+    var solver = solver(kWallTags);
+    var pose = solver.solve(detections, new double[36]);
+    assertNotNull(pose);
+    assertPoseNear(truth.toWPILib(), pose, 1E-6, 1E-6);
+    assertEquals(3, solver.getTagCount());
+    assertEquals(0, solver.getAmbiguity(), 0);
+    assertTrue(
+        "Reprojection error " + solver.getReprojectionError(),
+        solver.getReprojectionError() < 1E-4);
+  }
+
+  @Test
+  public void skipsTagsWithoutAFieldPose() {
+    var truth = truth();
+    var unplaced = new AprilTagMetadata(7, "Unplaced", kTagSize, DistanceUnit.METER);
+    var detections =
+        List.of(
+            detect(kWallTags[0], truth, truth),
+            new AprilTagDetection(
+                7, 0, 0, new Point(), project(kWallTags[1], truth), unplaced, null, null, null, 0));
+
+    var solver = solver(kWallTags[0], unplaced);
+    assertNotNull(solver.solve(detections, new double[36]));
+    assertEquals(1, solver.getTagCount());
+    assertNull(solver.solve(List.of(detections.get(1)), new double[36]));
+  }
+
+  @Test
+  public void outvotesAFlippedTag() {
+    var truth = truth();
+    // The first tag's pose flipped, tilting it the other way, and so is far from the truth.
+    var flipped = new SdkPose(kRobotX - .6, kRobotY + .2, .1, kRobotYaw - .8, .1, 0);
+    var detections =
+        List.of(
+            detect(kWallTags[0], truth, flipped),
+            detect(kWallTags[1], truth, truth),
+            detect(kWallTags[2], truth, truth));
+
+    var pose = solver(kWallTags).solve(detections, new double[36]);
+    assertNotNull(pose);
+    assertPoseNear(truth.toWPILib(), pose, 1E-6, 1E-6);
+  }
+
+  @Test
+  public void findsTheBetterOfASingleTagsSolutions() {
+    // Close to a tag turned well away from the camera, the two solutions are easily told apart.
+    var truth = truth();
+    var tag = tag(4, kRobotX + .1, kRobotY + .7, .3, .15, 45);
+    var random = new Random(8696);
+    var detection = detect(tag, truth, truth);
+    addNoise(detection, random, .2);
+
+    var solver = solver(tag);
+    var pose = solver.solve(List.of(detection), new double[36]);
+    assertNotNull(pose);
+    assertPoseNear(truth.toWPILib(), pose, .02, .05);
+    assertTrue("Ambiguity " + solver.getAmbiguity(), solver.getAmbiguity() < .2);
+
+    // Starting from the other solution instead finds the same one.
+    var fromFlipped = new SdkPose(kRobotX + .55, kRobotY + .25, 0, kRobotYaw + .9, 0, 0);
+    detection = detect(tag, truth, fromFlipped);
+    addNoise(detection, random, .2);
+    pose = solver.solve(List.of(detection), new double[36]);
+    assertNotNull(pose);
+    assertPoseNear(truth.toWPILib(), pose, .02, .05);
+  }
+
+  @Test
+  public void rejectsAnAmbiguousSingleTag() {
+    // Far from a small tag turned a little from the camera, the two solutions fit about as well.
+    var truth = truth();
+    var tag = tag(5, kRobotX + .1, kRobotY + 3, .3, .05, 15);
+    var detection = detect(tag, truth, truth);
+    addNoise(detection, new Random(8696), .5);
+
+    var solver = solver(tag);
+    assertNull(solver.solve(List.of(detection), new double[36]));
+    assertTrue("Ambiguity " + solver.getAmbiguity(), solver.getAmbiguity() > .2);
+  }
+
+  @Test
+  public void covarianceMatchesTheWPILibFrame() {
+    var truth = truth();
+    var detections = new ArrayList<AprilTagDetection>();
+    for (var tag : kWallTags) {
+      detections.add(detect(tag, truth, truth));
+    }
+    var covariance = new double[36];
+    var pose = solver(kWallTags).solve(detections, covariance);
+    assertNotNull(pose);
+
+    // The Jacobian of every corner's pixel with respect to the WPILib pose, moving it along the
+    // field's axes, then rotating it about them.
+    double epsilon = 1E-6;
+    var jacobian = new SimpleMatrix(kWallTags.length * 8, 6);
+    for (int axis = 0; axis < 6; axis++) {
+      var plus = perturb(pose, axis, epsilon);
+      var minus = perturb(pose, axis, -epsilon);
+      for (int t = 0; t < kWallTags.length; t++) {
+        var plusCorners = project(kWallTags[t], SdkPose.fromWPILib(plus));
+        var minusCorners = project(kWallTags[t], SdkPose.fromWPILib(minus));
+        for (int corner = 0; corner < 4; corner++) {
+          int row = t * 8 + corner * 2;
+          jacobian.set(row, axis, (plusCorners[corner].x - minusCorners[corner].x) / (2 * epsilon));
+          jacobian.set(
+              row + 1, axis, (plusCorners[corner].y - minusCorners[corner].y) / (2 * epsilon));
+        }
+      }
+    }
+    // The residuals are 0, so the solver uses its minimum pixel variance of 1.
+    var expected = jacobian.transpose().mult(jacobian).invert();
+
+    for (int i = 0; i < 6; i++) {
+      for (int j = 0; j < 6; j++) {
+        double scale = Math.sqrt(expected.get(i, i) * expected.get(j, j));
+        assertEquals(
+            "Covariance (" + i + ", " + j + ")",
+            expected.get(i, j),
+            covariance[i * 6 + j],
+            1E-3 * scale);
+      }
+    }
+  }
+
+  /** Moves a pose along, or rotates it about, one of the field's axes. */
+  private static Pose3d perturb(Pose3d pose, int axis, double amount) {
+    if (axis < 3) {
+      double[] offset = new double[3];
+      offset[axis] = amount;
+      return new Pose3d(
+          pose.getTranslation().plus(new Translation3d(offset[0], offset[1], offset[2])),
+          pose.getRotation());
+    }
+    double[] rotation = new double[3];
+    rotation[axis - 3] = amount;
+    return new Pose3d(
+        pose.getTranslation(),
+        pose.getRotation()
+            .rotateBy(new Rotation3d(VecBuilder.fill(rotation[0], rotation[1], rotation[2]))));
+  }
+
+  private static double[] rotX(double angle) {
+    double cos = Math.cos(angle);
+    double sin = Math.sin(angle);
+    return new double[] {1, 0, 0, 0, cos, -sin, 0, sin, cos};
+  }
+
+  private static double[] rotY(double angle) {
+    double cos = Math.cos(angle);
+    double sin = Math.sin(angle);
+    return new double[] {cos, 0, sin, 0, 1, 0, -sin, 0, cos};
+  }
+
+  private static double[] rotZ(double angle) {
+    double cos = Math.cos(angle);
+    double sin = Math.sin(angle);
+    return new double[] {cos, -sin, 0, sin, cos, 0, 0, 0, 1};
+  }
+
+  private static double[] multiply(double[] a, double[] b) {
+    var product = new double[9];
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        for (int k = 0; k < 3; k++) {
+          product[i * 3 + j] += a[i * 3 + k] * b[k * 3 + j];
+        }
+      }
+    }
+    return product;
+  }
+}
@@ -0,0 +1,251 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.trobotix.hardware;
+
+import static org.junit.Assert.assertTrue;
+
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Runs every {@link VelocityEstimator} through {@link DeviceRegistry#updateEncoders} over the same
+ * synthetic encoder trace, and compares how far each one lags the true velocity and how noisy it
+ * is, and checks the trade-offs the estimators document against the figures.
+ *
+ * <p>The trace is a motion profile read at a jittery 100 Hz: a standstill, a step, a ramp through
+ * zero, a sine, and a stretch fast enough to overflow the hub's 16 bit native velocity. Positions
+ * are integrated from the true velocity and truncated to whole ticks, and the native velocity is
+ * the true velocity rounded and wrapped to 16 bits, as the hub reports it.
+ */
+public class VelocityEstimatorComparisonTest {
+  private static final double kMeanPeriod = .01;
+  private static final double kPeriodJitter = .003;
+  private static final double kDuration = 12;
+  // Samples before this are left out, while the estimators' histories fill up.
+  private static final double kSettleTime = .5;
+  private static final double kStepVelocity = 2000;
+  private static final double kOverflowVelocity = 40000;
+  // The largest lag searched for, and the resolution it's searched at.
+  private static final double kMaxLag = .05;
+  private static final double kLagStep = .00025;
+
+  /** The true velocity of the trace, in ticks per second. */
+  private static double trueVelocity(double t) {
+    if (t < 1) {
+      return 0;
+    } else if (t < 3) {
+      return kStepVelocity;
+    } else if (t < 5) {
+      return kStepVelocity * (1 - (t - 3));
+    } else if (t < 8) {
+      return 1500 + 1000 * Math.sin(2 * Math.PI * 2 * (t - 5));
+    } else if (t < 10) {
+      return kOverflowVelocity;
+    } else {
+      return 0;
+    }
+  }
+
+  private static boolean isOverflowing(double t) {
+    return t >= 8 && t < 10;
+  }
+
+  private static boolean isSteady(double t) {
+    return t >= 1.5 && t < 3;
+  }
+
+  /** An estimator under test, and the error statistics it accumulated. */
+  private static final class Row {
+    final String name;
+    final int index;
+    final int sampleCount;
+    final double[] estimates;
+
+    Row(String name, int index, int sampleCount) {
+      this.name = name;
+      this.index = index;
+      this.sampleCount = sampleCount;
+      estimates = new double[sampleCount];
+    }
+
+    double lag;
+    double steadyNoise;
+    double rmsError;
+    double overflowRmsError;
+  }
+
+  // The encoder the registry reads, through HardwareInputs.
+  private int ticks = 0;
+  private int nativeVelocity = 0;
+
+  private DcMotorEx fakeMotor() {
+    return (DcMotorEx)
+        Proxy.newProxyInstance(
+            DcMotorEx.class.getClassLoader(),
+            new Class<?>[] {DcMotorEx.class},
+            (proxy, method, args) ->
+                switch (method.getName()) {
+                  case "getCurrentPosition" -> ticks;
+                  case "getVelocity" -> (double) nativeVelocity;
+                  case "hashCode" -> System.identityHashCode(proxy);
+                  case "equals" -> proxy == args[0];
+                  default -> throw new UnsupportedOperationException(method.getName());
+                });
+  }
+
+  private Row register(String name, VelocityEstimator estimator, int sampleCount) {
+    int index = DeviceRegistry.registerEncoder(HardwareInputs.registerEncoder(fakeMotor()), 1);
+    DeviceRegistry.setVelocityEstimator(index, estimator);
+    return new Row(name, index, sampleCount);
+  }
+
+  @Test
+  public void compareEstimators() {
+    // The read times, with the first at 0.
+    var random = new Random(8696);
+    int sampleCount = (int) (kDuration / kMeanPeriod);
+    var times = new double[sampleCount];
+    for (int k = 1; k < sampleCount; k++) {
+      times[k] = times[k - 1] + kMeanPeriod + (random.nextDouble() * 2 - 1) * kPeriodJitter;
+    }
+
+    var movingAverage = register("MOVING_AVERAGE", VelocityEstimator.MOVING_AVERAGE, sampleCount);
+    var nativeRow = register("NATIVE", VelocityEstimator.NATIVE, sampleCount);
+    var overflowCorrected =
+        register("OVERFLOW_CORRECTED", VelocityEstimator.OVERFLOW_CORRECTED, sampleCount);
+    var leastSquares = register("LEAST_SQUARES (5)", VelocityEstimator.LEAST_SQUARES, sampleCount);
+    // Spans the same 4 samples as the moving average of 3 differences, so it has the same lag.
+    var leastSquares4 = register("LEAST_SQUARES (4)", VelocityEstimator.LEAST_SQUARES, sampleCount);
+    DeviceRegistry.setLeastSquaresWindow(leastSquares4.index, 4);
+    var alphaBeta = register("ALPHA_BETA", VelocityEstimator.ALPHA_BETA, sampleCount);
+    var fastAlphaBeta = register("ALPHA_BETA (.7, .4)", VelocityEstimator.ALPHA_BETA, sampleCount);
+    DeviceRegistry.setAlphaBetaGains(fastAlphaBeta.index, .7, .4);
+    var rows =
+        new Row[] {
+          movingAverage,
+          nativeRow,
+          overflowCorrected,
+          leastSquares,
+          leastSquares4,
+          alphaBeta,
+          fastAlphaBeta
+        };
+
+    // Integrates position finely between reads, so the ticks are exact apart from truncation.
+    double position = 0;
+    double t = 0;
+    for (int k = 0; k < sampleCount; k++) {
+      while (t < times[k]) {
+        double step = Math.min(1E-4, times[k] - t);
+        position += trueVelocity(t + step / 2) * step;
+        t += step;
+      }
+      ticks = (int) Math.floor(position);
+      nativeVelocity = (short) Math.round(trueVelocity(times[k]));
+      HardwareInputs.update(System.nanoTime());
+      if (k > 0) {
+        DeviceRegistry.updateEncoders(times[k] - times[k - 1]);
+      }
+      for (var row : rows) {
+        row.estimates[k] = DeviceRegistry.getVelocity(row.index);
+      }
+    }
+
+    for (var row : rows) {
+      analyze(row, times);
+    }
+
+    // Only the estimators that use the hub's velocity keep up with no lag.
+    assertTrue(
+        describe(overflowCorrected, movingAverage), overflowCorrected.lag < movingAverage.lag);
+    assertTrue(describe(nativeRow, movingAverage), nativeRow.lag < movingAverage.lag);
+    // The native velocity wraps above 32767 ticks per second, and the correction undoes it.
+    assertTrue(describe(nativeRow), nativeRow.overflowRmsError > kOverflowVelocity / 2);
+    assertTrue(describe(overflowCorrected), overflowCorrected.overflowRmsError < 1);
+    // A least squares fit over the same samples as the moving average lags as much, but is quieter.
+    assertTrue(
+        describe(leastSquares4, movingAverage),
+        Math.abs(leastSquares4.lag - movingAverage.lag) < .002);
+    assertTrue(
+        describe(leastSquares4, movingAverage),
+        leastSquares4.steadyNoise < movingAverage.steadyNoise);
+    // At its default gains the alpha-beta filter is the quietest estimator, but lags the most.
+    assertTrue(describe(alphaBeta, leastSquares), alphaBeta.steadyNoise < leastSquares.steadyNoise);
+    assertTrue(describe(alphaBeta, leastSquares), alphaBeta.lag > leastSquares.lag);
+    // With higher gains it lags less than the moving average, and is no noisier.
+    assertTrue(describe(fastAlphaBeta, movingAverage), fastAlphaBeta.lag < movingAverage.lag);
+    assertTrue(
+        describe(fastAlphaBeta, movingAverage),
+        fastAlphaBeta.steadyNoise <= movingAverage.steadyNoise);
+  }
+
+  /** Describes the figures of the estimators an assertion compares, for its failure message. */
+  private static String describe(Row... rows) {
+    var description = new StringBuilder();
+    for (var row : rows) {
+      if (description.length() > 0) {
+        description.append("; ");
+      }
+      description.append(
+          String.format(
+              "%s: lag %.2f ms, noise %.2f t/s, RMS %.2f t/s, overflow RMS %.2f t/s",
+              row.name, row.lag * 1E3, row.steadyNoise, row.rmsError, row.overflowRmsError));
+    }
+    return description.toString();
+  }
+
+  /**
+   * Works out the lag that best lines an estimator up with the true velocity, then its errors once
+   * lined up. The overflowing stretch is left out of everything but the overflow error.
+   */
+  private static void analyze(Row row, double[] times) {
+    double bestError = Double.POSITIVE_INFINITY;
+    for (double lag = 0; lag <= kMaxLag; lag += kLagStep) {
+      double error = rmsError(row, times, lag);
+      if (error < bestError) {
+        bestError = error;
+        row.lag = lag;
+      }
+    }
+    row.rmsError = bestError;
+
+    double sum = 0, sumSquares = 0, overflowSumSquares = 0;
+    int steadyCount = 0, overflowCount = 0;
+    for (int k = 0; k < row.sampleCount; k++) {
+      double t = times[k];
+      if (isSteady(t)) {
+        sum += row.estimates[k];
+        sumSquares += row.estimates[k] * row.estimates[k];
+        steadyCount++;
+      } else if (isOverflowing(t) && isOverflowing(t - kSettleTime)) {
+        double error = row.estimates[k] - kOverflowVelocity;
+        overflowSumSquares += error * error;
+        overflowCount++;
+      }
+    }
+    double mean = sum / steadyCount;
+    row.steadyNoise = Math.sqrt(Math.max(0, sumSquares / steadyCount - mean * mean));
+    row.overflowRmsError = Math.sqrt(overflowSumSquares / overflowCount);
+  }
+
+  private static double rmsError(Row row, double[] times, double lag) {
+    double sumSquares = 0;
+    int count = 0;
+    for (int k = 0; k < row.sampleCount; k++) {
+      double t = times[k];
+      if (t < kSettleTime
+          || isOverflowing(t)
+          || isOverflowing(t - kSettleTime)
+          || isOverflowing(t + kMaxLag)) {
+        continue;
+      }
+      double error = row.estimates[k] - trueVelocity(t - lag);
+      sumSquares += error * error;
+      count++;
+    }
+    return Math.sqrt(sumSquares / count);
+  }
+}
@@ -0,0 +1,138 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.wpilib.command;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
+import org.firstinspires.ftc.lib.wpilib.command.button.Trigger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that {@link CommandScheduler#run()} doesn't allocate once every command and subsystem has
+ * been scheduled at least once, by counting the bytes the test thread allocates.
+ */
+public class CommandSchedulerAllocationTest {
+  private static final int kWarmupLoops = 20_000;
+  private static final int kMeasuredRounds = 5;
+  private static final int kLoopsPerRound = 10_000;
+  // How many loops the button is held for and released for.
+  private static final int kButtonPeriod = 7;
+
+  private static class TestSubsystem implements Subsystem {
+    int periodicCount = 0;
+
+    @Override
+    public void periodic() {
+      periodicCount++;
+    }
+  }
+
+  /** Finishes after a number of loops. */
+  private static class CountdownCommand extends Command {
+    private final int loops;
+    private int remaining;
+
+    CountdownCommand(int loops, Subsystem... requirements) {
+      this.loops = loops;
+      addRequirements(requirements);
+    }
+
+    @Override
+    public void initialize() {
+      remaining = loops;
+    }
+
+    @Override
+    public void execute() {
+      remaining--;
+    }
+
+    @Override
+    public boolean isFinished() {
+      return remaining <= 0;
+    }
+  }
+
+  private final com.sun.management.ThreadMXBean threadBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private CommandScheduler scheduler;
+  private boolean buttonHeld = false;
+
+  @Before
+  public void setUp() {
+    assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+    BaseOpMode.robotEnabled = true;
+    scheduler = CommandScheduler.getInstance();
+    // A slow test machine shouldn't log overruns, as logging allocates.
+    scheduler.setOverrunThreshold(1000);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.cancelAll();
+    scheduler.unregisterAllSubsystems();
+    scheduler.getDefaultButtonLoop().clear();
+    BaseOpMode.robotEnabled = false;
+  }
+
+  @Test
+  public void steadyStateRunDoesNotAllocate() {
+    var drive = new TestSubsystem();
+    var intake = new TestSubsystem();
+    var shooter = new TestSubsystem();
+    scheduler.registerSubsystem(drive, intake, shooter);
+    scheduler.setDefaultCommand(drive, new RunCommand(() -> {}, drive));
+    scheduler.setDefaultCommand(intake, new RunCommand(() -> {}, intake));
+
+    // Interrupts the intake's default command while held, which is rescheduled on release, and
+    // starts a command that finishes on its own on every press.
+    var button = new Trigger(scheduler.getDefaultButtonLoop(), () -> buttonHeld, "ALWAYS");
+    button.whileTrue(new RunCommand(() -> {}, intake));
+    button.onTrue(new CountdownCommand(3, shooter));
+
+    for (int i = 0; i < kWarmupLoops; i++) {
+      loop(i);
+    }
+
+    // The JIT occasionally allocates a few bytes on the test thread while it recompiles, so a
+    // round is allowed to allocate as long as another one doesn't. Anything that allocates every
+    // loop, or every time the button changes, allocates in every round.
+    long overhead = allocatedBytes();
+    overhead = allocatedBytes() - overhead;
+    var allocated = new long[kMeasuredRounds];
+    boolean anyRoundWithoutAllocation = false;
+    for (int round = 0; round < kMeasuredRounds && !anyRoundWithoutAllocation; round++) {
+      long start = allocatedBytes();
+      for (int i = 0; i < kLoopsPerRound; i++) {
+        loop(i);
+      }
+      allocated[round] = allocatedBytes() - start - overhead;
+      anyRoundWithoutAllocation = allocated[round] <= 0;
+    }
+
+    assertTrue(
+        "Bytes allocated by each round of "
+            + kLoopsPerRound
+            + " loops: "
+            + Arrays.toString(allocated),
+        anyRoundWithoutAllocation);
+    assertTrue(drive.periodicCount > kWarmupLoops);
+  }
+
+  private void loop(int i) {
+    buttonHeld = i / kButtonPeriod % 2 == 1;
+    scheduler.run();
+  }
+
+  private long allocatedBytes() {
+    return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
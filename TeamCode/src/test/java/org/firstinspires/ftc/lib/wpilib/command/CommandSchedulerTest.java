@@ -0,0 +1,121 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.wpilib.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.firstinspires.ftc.lib.trobotix.BaseOpMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the state the scheduler keeps about commands and subsystems stays bounded, and that
+ * requirement masks stay correct as requirements and subsystem IDs change.
+ */
+public class CommandSchedulerTest {
+  private static class TestSubsystem implements Subsystem {}
+
+  private CommandScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    BaseOpMode.robotEnabled = true;
+    scheduler = CommandScheduler.getInstance();
+    scheduler.setOverrunThreshold(1000);
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.cancelAll();
+    scheduler.unregisterAllSubsystems();
+    BaseOpMode.robotEnabled = false;
+  }
+
+  @Test
+  public void endedCommandStatsAreBounded() {
+    var subsystem = new TestSubsystem();
+    scheduler.registerSubsystem(subsystem);
+    // As a binding that creates a new command every time it's triggered would.
+    for (int i = 0; i < 1000; i++) {
+      scheduler.schedule(new InstantCommand(() -> {}, subsystem));
+      scheduler.run();
+    }
+    var running = new RunCommand(() -> {}, subsystem);
+    scheduler.schedule(running);
+    scheduler.run();
+
+    var stats = scheduler.getMostExpensiveCommands(Integer.MAX_VALUE);
+    assertTrue("Kept the statistics of " + stats.size() + " commands", stats.size() <= 33);
+    assertTrue(stats.contains(running.m_executionStats));
+  }
+
+  @Test
+  public void unregisteringFreesSubsystemIds() {
+    // Twice as many subsystems as there are IDs, which only fit if unregistering frees them.
+    for (int i = 0; i < 2 * CommandScheduler.kMaxSubsystems; i++) {
+      var subsystem = new TestSubsystem();
+      scheduler.registerSubsystem(subsystem);
+      scheduler.unregisterSubsystem(subsystem);
+    }
+  }
+
+  @Test
+  public void requirementMasksFollowReusedIds() {
+    var first = new TestSubsystem();
+    var second = new TestSubsystem();
+    scheduler.registerSubsystem(first);
+    var requiresFirst = new RunCommand(() -> {}, first);
+    long firstMask = requiresFirst.getRequirementMask();
+
+    // The second subsystem is given the first's freed ID, so the cached mask is out of date.
+    scheduler.unregisterSubsystem(first);
+    scheduler.registerSubsystem(second);
+    var requiresSecond = new RunCommand(() -> {}, second);
+    assertEquals(firstMask, requiresSecond.getRequirementMask());
+
+    scheduler.schedule(requiresSecond);
+    scheduler.schedule(requiresFirst);
+    assertTrue(scheduler.isScheduled(requiresSecond));
+    assertTrue(scheduler.isScheduled(requiresFirst));
+  }
+
+  @Test
+  public void swappingRequirementsUpdatesTheMask() {
+    var first = new TestSubsystem();
+    var second = new TestSubsystem();
+    var command = new RunCommand(() -> {}, first);
+    var requiresSecond = new RunCommand(() -> {}, second);
+    long firstMask = command.getRequirementMask();
+
+    // The same number of requirements, so the mask can't be checked by size.
+    command.getRequirements().remove(first);
+    command.getRequirements().add(second);
+    assertEquals(requiresSecond.getRequirementMask(), command.getRequirementMask());
+    assertTrue(firstMask != command.getRequirementMask());
+
+    var iterator = command.getRequirements().iterator();
+    iterator.next();
+    iterator.remove();
+    assertEquals(0, command.getRequirementMask());
+  }
+
+  @Test
+  public void requiredSubsystemKeepsItsIdUntilReleased() {
+    var subsystem = new TestSubsystem();
+    scheduler.registerSubsystem(subsystem);
+    var requiring = new RunCommand(() -> {}, subsystem);
+    scheduler.schedule(requiring);
+    scheduler.unregisterSubsystem(subsystem);
+    assertEquals(requiring, scheduler.requiring(subsystem));
+
+    // Interrupted by a command requiring the same subsystem, as it still has the same ID.
+    var interrupting = new RunCommand(() -> {}, subsystem);
+    scheduler.schedule(interrupting);
+    assertFalse(scheduler.isScheduled(requiring));
+    assertTrue(scheduler.isScheduled(interrupting));
+  }
+}
@@ -0,0 +1,148 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.wpilib.math.interpolation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.firstinspires.ftc.lib.wpilib.math.interpolation.InterpolatingDoubleTable.Interpolation;
+import org.junit.Test;
+
+public class InterpolatingDoubleTableTest {
+  private static final double kEpsilon = 1E-12;
+
+  /** Builds the same entries into a table and an {@link InterpolatingDoubleTreeMap}. */
+  private static InterpolatingDoubleTable build(
+      double[] keys, double[] values, Interpolation interpolation, InterpolatingDoubleTreeMap map) {
+    var builder = InterpolatingDoubleTable.builder().withInterpolation(interpolation);
+    for (int i = 0; i < keys.length; i++) {
+      builder.put(keys[i], values[i]);
+      if (map != null) {
+        map.put(keys[i], values[i]);
+      }
+    }
+    return builder.build();
+  }
+
+  /** Checks the table against the map at every key, between keys, and past both ends. */
+  private static void assertMatches(
+      InterpolatingDoubleTreeMap map, InterpolatingDoubleTable table, double[] keys) {
+    double first = keys[0];
+    double last = keys[keys.length - 1];
+    double[] ends = {first - 1, first, Math.nextDown(first), last, Math.nextUp(last), last + 1};
+    for (double key : ends) {
+      assertEquals("At " + key, map.get(key), table.get(key), kEpsilon);
+    }
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals("At key " + i, map.get(keys[i]), table.get(keys[i]), kEpsilon);
+      if (i < keys.length - 1) {
+        for (double t = .05; t < 1; t += .1) {
+          double key = keys[i] + (keys[i + 1] - keys[i]) * t;
+          assertEquals("At " + key, map.get(key), table.get(key), kEpsilon);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void linearMatchesTreeMap() {
+    var random = new Random(8696);
+    var keys = new double[20];
+    var values = new double[20];
+    double key = -3;
+    for (int i = 0; i < keys.length; i++) {
+      key += .01 + random.nextDouble();
+      keys[i] = key;
+      values[i] = random.nextGaussian() * 10;
+    }
+    var map = new InterpolatingDoubleTreeMap();
+    var table = build(keys, values, Interpolation.LINEAR, map);
+    assertFalse(table.isUniform());
+    assertMatches(map, table, keys);
+  }
+
+  @Test
+  public void singleEntryReturnsItsValue() {
+    var table = InterpolatingDoubleTable.builder().put(2, 5).build();
+    assertEquals(5, table.get(-1), 0);
+    assertEquals(5, table.get(2), 0);
+    assertEquals(5, table.get(3), 0);
+  }
+
+  @Test
+  public void uniformKeysMatchTreeMapAtSegmentBoundaries() {
+    // Tenths don't add up exactly in binary, so the keys are only evenly spaced to within rounding,
+    // and dividing by the spacing can land a key on either side of a boundary.
+    var keys = new double[31];
+    var values = new double[31];
+    double key = -1.5;
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = key;
+      values[i] = Math.sin(i) * 3 + i;
+      key += .1;
+    }
+    var map = new InterpolatingDoubleTreeMap();
+    var table = build(keys, values, Interpolation.LINEAR, map);
+    assertTrue(table.isUniform());
+    assertMatches(map, table, keys);
+
+    // Either side of every boundary is interpolated from the right segment.
+    for (int i = 1; i < keys.length - 1; i++) {
+      double below = Math.nextDown(keys[i]);
+      double above = Math.nextUp(keys[i]);
+      assertEquals("Below key " + i, map.get(below), table.get(below), kEpsilon);
+      assertEquals("Above key " + i, map.get(above), table.get(above), kEpsilon);
+      assertEquals("At key " + i, values[i], table.get(keys[i]), kEpsilon);
+    }
+  }
+
+  @Test
+  public void pchipPassesThroughEveryEntry() {
+    double[] keys = {0, .5, 1.5, 2, 4, 4.5};
+    double[] values = {1, 3, 2, 2, 7, -1};
+    var table = build(keys, values, Interpolation.PCHIP, null);
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals("At key " + i, values[i], table.get(keys[i]), kEpsilon);
+    }
+    assertEquals(values[0], table.get(-1), 0);
+    assertEquals(values[values.length - 1], table.get(10), 0);
+  }
+
+  @Test
+  public void pchipIsMonotoneOnMonotoneData() {
+    // Uneven steps, a flat stretch, and a sharp jump, where an ordinary cubic spline overshoots.
+    double[] keys = {0, .2, 1, 1.1, 2, 3, 3.05, 5};
+    double[] values = {0, .1, .1, .1, 4, 4.2, 9, 9.5};
+    var increasing = build(keys, values, Interpolation.PCHIP, null);
+    var negated = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      negated[i] = -values[i];
+    }
+    var decreasing = build(keys, negated, Interpolation.PCHIP, null);
+
+    double lastIncreasing = increasing.get(keys[0]);
+    double lastDecreasing = decreasing.get(keys[0]);
+    for (double key = keys[0]; key <= keys[keys.length - 1]; key += 1E-3) {
+      double value = increasing.get(key);
+      assertTrue("Decreased at " + key, value >= lastIncreasing - kEpsilon);
+      lastIncreasing = value;
+      value = decreasing.get(key);
+      assertTrue("Increased at " + key, value <= lastDecreasing + kEpsilon);
+      lastDecreasing = value;
+    }
+
+    // Between equal values it stays flat, and elsewhere it stays between the values either side.
+    for (int i = 0; i < keys.length - 1; i++) {
+      double low = Math.min(values[i], values[i + 1]);
+      double high = Math.max(values[i], values[i + 1]);
+      for (double t = .05; t < 1; t += .1) {
+        double value = increasing.get(keys[i] + (keys[i + 1] - keys[i]) * t);
+        assertTrue("Segment " + i + ": " + value, value >= low - kEpsilon);
+        assertTrue("Segment " + i + ": " + value, value <= high + kEpsilon);
+      }
+    }
+  }
+}
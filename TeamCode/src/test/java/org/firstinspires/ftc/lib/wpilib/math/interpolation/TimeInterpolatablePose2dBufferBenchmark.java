@@ -0,0 +1,123 @@
+// Copyright (c) 2025-2026 FTC 8696
+// All rights reserved.
+
+package org.firstinspires.ftc.lib.wpilib.math.interpolation;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Pose2d;
+import org.firstinspires.ftc.lib.wpilib.math.geometry.Rotation2d;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link TimeInterpolatablePose2dBuffer} against the {@link java.util.TreeMap} backed
+ * {@link TimeInterpolatableBuffer} it replaced in the pose estimators, holding 1.5 seconds of
+ * history at odometry rates from 200 to 1000 Hz.
+ *
+ * <p>Both buffers are filled to their steady state size before measuring. {@code add} appends the
+ * next odometry sample, which also evicts the oldest one, and {@code sample} interpolates the pose
+ * at a random time within the history, as a vision measurement does. Run {@link #main} on a desktop
+ * JVM, and run with {@code -prof gc} to see the allocation rate of each as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeInterpolatablePose2dBufferBenchmark {
+  private static final double kHistorySeconds = 1.5;
+  // A power of 2, so indices can wrap with a mask.
+  private static final int kPrecomputed = 1024;
+
+  @Param({"200", "500", "1000"})
+  public int odometryHz;
+
+  private TimeInterpolatablePose2dBuffer flatBuffer;
+  private TimeInterpolatableBuffer<Pose2d> treeMapBuffer;
+
+  // Poses along a path for the samples, and ages within the history to sample at.
+  private final Pose2d[] poses = new Pose2d[kPrecomputed];
+  private final double[] sampleAges = new double[kPrecomputed];
+  private final double[] sampledPose = new double[3];
+  private double period;
+  private double time;
+  private int index;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    var random = new Random(8696);
+    for (int i = 0; i < kPrecomputed; i++) {
+      double t = i * 0.01;
+      poses[i] = new Pose2d(Math.cos(t) * 2, Math.sin(2 * t), new Rotation2d(t));
+      sampleAges[i] = random.nextDouble() * kHistorySeconds;
+    }
+    period = 1.0 / odometryHz;
+
+    flatBuffer = TimeInterpolatablePose2dBuffer.createBuffer(kHistorySeconds);
+    treeMapBuffer = TimeInterpolatableBuffer.createBuffer(kHistorySeconds);
+    // Twice the history, so both buffers have grown to size and are evicting every sample.
+    int fillSamples = (int) (2 * kHistorySeconds * odometryHz);
+    time = 0;
+    index = 0;
+    for (int i = 0; i < fillSamples; i++) {
+      addToBoth();
+    }
+  }
+
+  private void addToBoth() {
+    time += period;
+    var pose = poses[index++ & (kPrecomputed - 1)];
+    flatBuffer.addSample(time, pose.getX(), pose.getY(), pose.getRotation().getRadians());
+    treeMapBuffer.addSample(time, pose);
+  }
+
+  @Benchmark
+  public void addFlat() {
+    time += period;
+    var pose = poses[index++ & (kPrecomputed - 1)];
+    flatBuffer.addSample(time, pose.getX(), pose.getY(), pose.getRotation().getRadians());
+  }
+
+  @Benchmark
+  public void addTreeMap() {
+    time += period;
+    treeMapBuffer.addSample(time, poses[index++ & (kPrecomputed - 1)]);
+  }
+
+  @Benchmark
+  public double[] sampleFlat() {
+    double age = sampleAges[index++ & (kPrecomputed - 1)];
+    flatBuffer.getSample(flatBuffer.getNewestTimestamp() - age, sampledPose);
+    return sampledPose;
+  }
+
+  @Benchmark
+  public Optional<Pose2d> sampleTreeMap() {
+    double age = sampleAges[index++ & (kPrecomputed - 1)];
+    return treeMapBuffer.getSample(treeMapBuffer.getInternalBuffer().lastKey() - age);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(TimeInterpolatablePose2dBufferBenchmark.class.getSimpleName())
+                .build())
+        .run();
+  }
+}